@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.bench;
+
+import cl.ucn.disc.pa.bibliotech.services.Bitacora;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Banco de prueba JMH del registro de un prestamo en la bitacora, con y sin fsync (los bancos del Sistema corren sin
+ * fsync), desde un hilo y desde varios a la vez (donde el group commit reparte cada fsync entre varias operaciones).
+ * Usa una bitacora propia, no la del Sistema.
+ *
+ * @author Programacion Avanzada.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BitacoraBenchmark {
+
+    /**
+     * Operaciones entre cada fsync (0 = sin fsync).
+     */
+    @Param({"0", "1", "16"})
+    public int operacionesPorSincronizacion;
+
+    /**
+     * Archivo de la bitacora.
+     */
+    private Path archivo;
+
+    /**
+     * La bitacora.
+     */
+    private Bitacora bitacora;
+
+    /**
+     * Libros a registrar.
+     */
+    private String[] isbns;
+
+    /**
+     * Siguiente libro a registrar.
+     */
+    private int siguiente;
+
+    /**
+     * Abre una bitacora vacia.
+     *
+     * @throws IOException en caso de algun error.
+     */
+    @Setup(Level.Trial)
+    public void abrir() throws IOException {
+        this.archivo = Files.createTempFile(Path.of("."), "banco-bitacora", ".log");
+        this.bitacora = new Bitacora(this.archivo, this.operacionesPorSincronizacion);
+        this.isbns = DatosBanco.isbnsLibres(DatosBanco.generador(DatosBanco.MUESTRA * 2));
+    }
+
+    /**
+     * Cierra y elimina la bitacora.
+     *
+     * @throws IOException en caso de algun error.
+     */
+    @TearDown(Level.Trial)
+    public void cerrar() throws IOException {
+        this.bitacora.close();
+        Files.deleteIfExists(this.archivo);
+    }
+
+    /**
+     * Registro de un prestamo.
+     *
+     * @return la bitacora.
+     * @throws IOException en caso de algun error.
+     */
+    @Benchmark
+    public Bitacora registrar() throws IOException {
+        String isbn = this.isbns[this.siguiente++ & (DatosBanco.MUESTRA - 1)];
+        this.bitacora.registrar(Bitacora.Operacion.PRESTAMO, "1", isbn);
+        return this.bitacora;
+    }
+
+    /**
+     * Registro de un prestamo desde 8 hilos a la vez (el siguiente libro se elige sin sincronizar: da lo mismo cual).
+     *
+     * @return la bitacora.
+     * @throws IOException en caso de algun error.
+     */
+    @Benchmark
+    @Threads(8)
+    public Bitacora registrarConcurrente() throws IOException {
+        return this.registrar();
+    }
+}
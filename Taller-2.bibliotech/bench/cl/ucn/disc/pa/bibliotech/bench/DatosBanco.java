@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.bench;
+
+import cl.ucn.disc.pa.bibliotech.services.GeneradorDatos;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Catalogos sinteticos de los bancos de prueba. Cada tamanio se genera una sola vez en {@code catalogo-<tamanio>/}
+ * (dentro del directorio de trabajo de JMH, bench-datos/) y cada fork lo copia al directorio de trabajo, donde el
+ * Sistema lee y escribe sus archivos.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class DatosBanco {
+
+    /**
+     * Cantidad de socios de los catalogos sinteticos.
+     */
+    public static final int SOCIOS = 8;
+
+    /**
+     * Cantidad de datos distintos que recorren las operaciones repetidas (potencia de 2).
+     */
+    public static final int MUESTRA = 4096;
+
+    /**
+     * Semilla de los datos aleatorios, para medir siempre lo mismo.
+     */
+    private static final long SEMILLA = 42;
+
+    /**
+     * Iteraciones de los hash de las contrasenias de los catalogos sinteticos.
+     */
+    private static final int ITERACIONES = 1000;
+
+    /**
+     * Archivos que el Sistema crea en el directorio de trabajo (se borran al copiar otro catalogo).
+     */
+    private static final List<String> ARCHIVOS_SISTEMA = List.of("bitacora.log", "bitacora.anterior.log",
+            "bibliotech.bin", "metricas.txt");
+
+    /**
+     * Constructor privado: nadie puede instanciar esta clase.
+     */
+    private DatosBanco() {
+        // nothing here
+    }
+
+    /**
+     * @param tamanio cantidad de libros.
+     * @return el generador del catalogo sintetico del tamanio.
+     */
+    public static GeneradorDatos generador(final int tamanio) {
+        return new GeneradorDatos(SEMILLA, tamanio, SOCIOS, ITERACIONES, LocalDate.now());
+    }
+
+    /**
+     * Deja en el directorio de trabajo libros.json y socios.json del catalogo sintetico del tamanio (generandolo si
+     * no existe), sin los demas archivos de una ejecucion anterior del Sistema.
+     *
+     * @param tamanio cantidad de libros.
+     * @return el generador del catalogo.
+     * @throws IOException en caso de algun error.
+     */
+    public static GeneradorDatos preparar(final int tamanio) throws IOException {
+        GeneradorDatos generador = generador(tamanio);
+        Path origen = Path.of("catalogo-" + tamanio);
+        // socios.json se escribe al final: si existe, el catalogo esta completo.
+        if (!Files.exists(origen.resolve("socios.json"))) {
+            Files.createDirectories(origen);
+            generador.escribirJson(origen);
+        }
+        for (String archivo : ARCHIVOS_SISTEMA) {
+            Files.deleteIfExists(Path.of(archivo));
+        }
+        Files.copy(origen.resolve("libros.json"), Path.of("libros.json"), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(origen.resolve("socios.json"), Path.of("socios.json"), StandardCopyOption.REPLACE_EXISTING);
+        return generador;
+    }
+
+    /**
+     * @param generador del catalogo.
+     * @return {@link #MUESTRA} ISBN de libros que ningun socio tiene en prestamo.
+     */
+    public static String[] isbnsLibres(final GeneradorDatos generador) {
+        SplittableRandom random = new SplittableRandom(SEMILLA);
+        int libres = generador.getLibros() - generador.getPrimerLibroLibre();
+        String[] isbns = new String[MUESTRA];
+        for (int i = 0; i < MUESTRA; i++) {
+            isbns[i] = generador.isbn(generador.getPrimerLibroLibre() + random.nextInt(libres));
+        }
+        return isbns;
+    }
+
+    /**
+     * @return {@link #MUESTRA} correos validos.
+     */
+    public static String[] correos() {
+        SplittableRandom random = new SplittableRandom(SEMILLA);
+        String[] correos = new String[MUESTRA];
+        for (int i = 0; i < MUESTRA; i++) {
+            correos[i] = "socio." + random.nextInt(1_000_000) + "@alumnos.ucn.cl";
+        }
+        return correos;
+    }
+}
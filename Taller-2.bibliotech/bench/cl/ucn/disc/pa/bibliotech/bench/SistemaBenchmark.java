@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.bench;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+import cl.ucn.disc.pa.bibliotech.services.Catalogo;
+import cl.ucn.disc.pa.bibliotech.services.GeneradorDatos;
+import cl.ucn.disc.pa.bibliotech.services.Sesion;
+import cl.ucn.disc.pa.bibliotech.services.Sistema;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bancos de prueba JMH de las operaciones frecuentes del Sistema, sobre catalogos sinteticos de 1.000, 100.000 y
+ * 1.000.000 de libros (ver {@link DatosBanco}), solo a traves de la API publica.
+ * <p>
+ * Los forks corren sin fsync de la bitacora (su costo se mide en {@link BitacoraBenchmark}) y sin compactaciones en
+ * segundo plano que compitan con las mediciones. Para comparar con una ejecucion anterior, se guardan los resultados
+ * con {@code -rf json -rff resultados.json}.
+ * <pre>
+ * mvn -B -Pjmh test-compile exec:exec -Djmh.args="SistemaBenchmark -p tamanio=1000,100000"
+ * </pre>
+ *
+ * @author Programacion Avanzada.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dbibliotech.bitacora.fsync=0",
+        "-Dbibliotech.bitacora.compactacion=2147483647"})
+public class SistemaBenchmark {
+
+    /**
+     * Los archivos de un catalogo sintetico, sin un Sistema abierto (para medir la carga).
+     */
+    @State(Scope.Benchmark)
+    public static class Archivos {
+
+        /**
+         * Cantidad de libros del catalogo.
+         */
+        @Param({"1000", "100000", "1000000"})
+        public int tamanio;
+
+        /**
+         * Copia el catalogo al directorio de trabajo.
+         *
+         * @throws IOException en caso de algun error.
+         */
+        @Setup(Level.Trial)
+        public void preparar() throws IOException {
+            DatosBanco.preparar(this.tamanio);
+        }
+    }
+
+    /**
+     * Un Sistema abierto sobre un catalogo sintetico, con la sesion de un socio.
+     */
+    @State(Scope.Benchmark)
+    public static class Abierto {
+
+        /**
+         * Cantidad de libros del catalogo.
+         */
+        @Param({"1000", "100000", "1000000"})
+        public int tamanio;
+
+        /**
+         * El Sistema.
+         */
+        private Sistema sistema;
+
+        /**
+         * Sesion del socio 1.
+         */
+        private Sesion sesion;
+
+        /**
+         * Libros que ningun socio tiene en prestamo.
+         */
+        private String[] isbns;
+
+        /**
+         * Contrasenias de los socios, por numero de socio.
+         */
+        private String[] contrasenias;
+
+        /**
+         * Siguiente dato a usar.
+         */
+        private int siguiente;
+
+        /**
+         * Copia el catalogo al directorio de trabajo y abre el Sistema.
+         *
+         * @throws IOException en caso de algun error.
+         */
+        @Setup(Level.Trial)
+        public void abrir() throws IOException {
+            GeneradorDatos generador = DatosBanco.preparar(this.tamanio);
+            this.isbns = DatosBanco.isbnsLibres(generador);
+            this.contrasenias = new String[DatosBanco.SOCIOS + 1];
+            this.sistema = new Sistema();
+            // cada socio verifica su contrasenia una vez antes (la derivacion inicial no es el camino frecuente).
+            for (int i = 1; i <= DatosBanco.SOCIOS; i++) {
+                this.contrasenias[i] = GeneradorDatos.contrasenia(i);
+                this.sistema.iniciarSession(i, this.contrasenias[i]);
+            }
+            this.sesion = this.sistema.iniciarSession(1, this.contrasenias[1]);
+        }
+
+        /**
+         * Cierra el Sistema.
+         *
+         * @throws IOException en caso de algun error.
+         */
+        @TearDown(Level.Trial)
+        public void cerrar() throws IOException {
+            this.sistema.cerrar();
+        }
+
+        /**
+         * @return el siguiente ISBN de la muestra.
+         */
+        private String siguienteIsbn() {
+            return this.isbns[this.siguiente++ & (DatosBanco.MUESTRA - 1)];
+        }
+    }
+
+    /**
+     * El indice por ISBN del catalogo (lo que usa Sistema.buscarLibro), sin el resto del Sistema.
+     */
+    @State(Scope.Benchmark)
+    public static class Indice {
+
+        /**
+         * Cantidad de libros del catalogo.
+         */
+        @Param({"1000", "100000", "1000000"})
+        public int tamanio;
+
+        /**
+         * El catalogo.
+         */
+        private Catalogo catalogo;
+
+        /**
+         * Libros a buscar.
+         */
+        private String[] isbns;
+
+        /**
+         * Siguiente libro a buscar.
+         */
+        private int siguiente;
+
+        /**
+         * Llena el catalogo con los libros del catalogo sintetico.
+         */
+        @Setup(Level.Trial)
+        public void llenar() {
+            GeneradorDatos generador = DatosBanco.generador(this.tamanio);
+            this.catalogo = new Catalogo();
+            for (int i = 0; i < this.tamanio; i++) {
+                this.catalogo.agregar(generador.libro(i));
+            }
+            this.isbns = DatosBanco.isbnsLibres(generador);
+        }
+    }
+
+    /**
+     * Busqueda de un libro por ISBN.
+     *
+     * @param indice del catalogo.
+     * @return el libro.
+     */
+    @Benchmark
+    public Libro buscarLibro(final Indice indice) {
+        return indice.catalogo.buscar(indice.isbns[indice.siguiente++ & (DatosBanco.MUESTRA - 1)]);
+    }
+
+    /**
+     * Inicio de sesion de un socio que ya verifico su contrasenia.
+     *
+     * @param abierto el Sistema.
+     * @return la sesion.
+     */
+    @Benchmark
+    public Sesion iniciarSession(final Abierto abierto) {
+        int numero = 1 + abierto.siguiente++ % DatosBanco.SOCIOS;
+        return abierto.sistema.iniciarSession(numero, abierto.contrasenias[numero]);
+    }
+
+    /**
+     * Prestamo y devolucion de un libro (la devolucion deja el libro disponible para el siguiente prestamo).
+     *
+     * @param abierto el Sistema.
+     * @throws IOException en caso de algun error.
+     */
+    @Benchmark
+    public void realizarPrestamoLibro(final Abierto abierto) throws IOException {
+        String isbn = abierto.siguienteIsbn();
+        abierto.sesion.realizarPrestamoLibro(isbn);
+        abierto.sesion.devolverLibro(isbn);
+    }
+
+    /**
+     * Calificacion de un libro.
+     *
+     * @param abierto el Sistema.
+     * @throws IOException en caso de algun error.
+     */
+    @Benchmark
+    public void calificarLibro(final Abierto abierto) throws IOException {
+        abierto.sesion.calificarLibro(abierto.siguienteIsbn(), 1 + abierto.siguiente % 5);
+    }
+
+    /**
+     * El listado completo de los libros disponibles.
+     *
+     * @param abierto el Sistema.
+     * @return el listado.
+     * @throws IOException en caso de algun error.
+     */
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public String obtegerCatalogoLibros(final Abierto abierto) throws IOException {
+        return abierto.sistema.obtegerCatalogoLibros();
+    }
+
+    /**
+     * Guardado de los libros modificados (libros.json y la instantanea binaria completos) despues de una
+     * calificacion, que cuesta microsegundos frente a los milisegundos del guardado.
+     *
+     * @param abierto el Sistema.
+     * @throws IOException en caso de algun error.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public void guardarInformacion(final Abierto abierto) throws IOException {
+        abierto.sesion.calificarLibro(abierto.siguienteIsbn(), 3);
+        abierto.sistema.esperarGuardado();
+    }
+
+    /**
+     * Carga completa del Sistema (la primera, de calentamiento, tambien crea la instantanea binaria).
+     *
+     * @param archivos del catalogo.
+     * @return el Sistema cargado (ya cerrado).
+     * @throws IOException en caso de algun error.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public Sistema cargarInformacion(final Archivos archivos) throws IOException {
+        Sistema sistema = new Sistema();
+        sistema.cerrar();
+        return sistema;
+    }
+}
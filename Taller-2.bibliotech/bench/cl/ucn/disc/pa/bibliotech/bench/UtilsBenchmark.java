@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.bench;
+
+import cl.ucn.disc.pa.bibliotech.services.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bancos de prueba JMH de {@link Utils} (la validacion de correos esta en EmailBenchmark).
+ *
+ * @author Programacion Avanzada.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilsBenchmark {
+
+    /**
+     * Un arreglo del tamanio de un catalogo.
+     */
+    @State(Scope.Benchmark)
+    public static class Arreglo {
+
+        /**
+         * Cantidad de elementos del arreglo.
+         */
+        @Param({"1000", "100000", "1000000"})
+        public int tamanio;
+
+        /**
+         * El arreglo.
+         */
+        private String[] arreglo;
+
+        /**
+         * Crea el arreglo.
+         */
+        @Setup(Level.Trial)
+        public void crear() {
+            this.arreglo = new String[this.tamanio];
+        }
+    }
+
+    /**
+     * Agregar un elemento al final de un arreglo (copiandolo), con el metodo deprecado.
+     *
+     * @param arreglo donde agregar.
+     * @return el arreglo nuevo.
+     */
+    @Benchmark
+    @SuppressWarnings("deprecation")
+    public String[] append(final Arreglo arreglo) {
+        return Utils.append(arreglo.arreglo, "libro");
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.bench.DatosBanco;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Banco de prueba JMH de la validacion de correos: {@link Utils#esEmailValido(String)} frente a la expresion regular
+ * original ({@link UtilsTest#EMAIL_PATTERN}), con correos validos (el caso de un registro o cambio de correo).
+ * <pre>
+ * mvn -B -Pjmh test-compile exec:exec -Djmh.args="EmailBenchmark"
+ * </pre>
+ *
+ * @author Programacion Avanzada.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmailBenchmark {
+
+    /**
+     * Los correos.
+     */
+    private final String[] correos = DatosBanco.correos();
+
+    /**
+     * Siguiente correo a validar.
+     */
+    private int siguiente;
+
+    /**
+     * @return el siguiente correo.
+     */
+    private String siguiente() {
+        return this.correos[this.siguiente++ & (DatosBanco.MUESTRA - 1)];
+    }
+
+    /**
+     * Validacion con el validador del Sistema.
+     *
+     * @return si el correo es valido.
+     */
+    @Benchmark
+    public boolean esEmailValido() {
+        return Utils.esEmailValido(this.siguiente());
+    }
+
+    /**
+     * Validacion con la expresion regular original.
+     *
+     * @return si el correo es valido.
+     */
+    @Benchmark
+    public boolean expresionRegular() {
+        return UtilsTest.EMAIL_PATTERN.matcher(this.siguiente()).matches();
+    }
+}
@@ -4,12 +4,23 @@
 
 package cl.ucn.disc.pa.bibliotech;
 
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+import cl.ucn.disc.pa.bibliotech.services.CatalogoColumnar;
+import cl.ucn.disc.pa.bibliotech.services.GeneradorDatos;
+import cl.ucn.disc.pa.bibliotech.services.ImportadorLibros;
+import cl.ucn.disc.pa.bibliotech.services.PaginadorCatalogo;
+import cl.ucn.disc.pa.bibliotech.services.Sesion;
 import cl.ucn.disc.pa.bibliotech.services.Sistema;
 import cl.ucn.disc.pa.bibliotech.services.Utils;
 import edu.princeton.cs.stdlib.StdIn;
 import edu.princeton.cs.stdlib.StdOut;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.Objects;
 
 /**
@@ -19,6 +30,17 @@ import java.util.Objects;
  */
 public final class Main {
 
+    /**
+     * Cantidad de libros por pagina del catalogo.
+     */
+    private static final int LIBROS_POR_PAGINA = 10;
+
+    /**
+     * Salida para escribir el catalogo directamente (sin construir un String).
+     */
+    private static final PrintWriter SALIDA = new PrintWriter(
+            new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+
     /**
      * The main.
      *
@@ -27,17 +49,36 @@ public final class Main {
      */
     public static void main(final String[] args) throws Exception {
 
+        // estadisticas del catalogo en formato columnar, sin cargar el sistema: estadisticas [libros.json]
+        if (args.length > 0 && args[0].equals("estadisticas")) {
+            mostrarEstadisticas(args.length > 1 ? args[1] : "libros.json");
+            return;
+        }
+
+        // datos sinteticos, sin cargar el sistema: generar <libros> <socios> [semilla] [formatos]
+        if (args.length > 2 && args[0].equals("generar")) {
+            generarDatos(args);
+            return;
+        }
+
         // inicializacion del sistema.
         Sistema sistema = new Sistema();
 
-        StdOut.println(sistema.obtegerCatalogoLibros());
+        // importacion masiva: importar <archivo> [reporte]
+        if (args.length > 1 && args[0].equals("importar")) {
+            importarLibros(sistema, args);
+            sistema.cerrar();
+            return;
+        }
+
+        mostrarCatalogo(sistema, null, 0.0, PaginadorCatalogo.Orden.INGRESO, 0, -1);
 
         String opcion = null;
         while (!Objects.equals(opcion, "2")) {
 
             StdOut.println("""
                     [*] Bienvenido a BiblioTech [*]
-                                    
+
                     [1] Iniciar Sesion
                     [2] Salir
                     """);
@@ -50,6 +91,84 @@ public final class Main {
                 default -> StdOut.println("Opcion no valida, intente nuevamente");
             }
         }
+
+        // guardo la informacion pendiente.
+        sistema.cerrar();
+    }
+
+    /**
+     * Importa los libros de un archivo CSV o JSON lines.
+     *
+     * @param sistema a utilizar.
+     * @param args    importar, el archivo y opcionalmente el reporte de errores.
+     */
+    private static void importarLibros(final Sistema sistema, final String[] args) {
+        Path archivo = Path.of(args[1]);
+        Path reporte = Path.of(args.length > 2 ? args[2] : args[1] + ".errores");
+        try {
+            ImportadorLibros.Resultado resultado = sistema.importarLibros(archivo, reporte);
+            StdOut.println("Lineas leidas: " + resultado.leidos() + ", libros importados: " + resultado.importados()
+                    + ", rechazados: " + resultado.rechazados() + " (ver " + reporte + ")");
+        } catch (IOException ex) {
+            StdOut.println("Ocurrio un error en la importacion: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Genera datos sinteticos en el directorio de trabajo, en los formatos indicados (json por defecto). Los socios
+     * tienen la contrasenia socio-numero; las iteraciones de sus hash se configuran con
+     * -Dbibliotech.generador.iteraciones (0 = texto plano).
+     *
+     * @param args generar, la cantidad de libros y de socios, y opcionalmente la semilla y los formatos.
+     */
+    private static void generarDatos(final String[] args) {
+        long semilla = args.length > 3 ? Long.parseLong(args[3]) : 0L;
+        String[] formatos = (args.length > 4 ? args[4] : "json").split(",");
+        GeneradorDatos generador = new GeneradorDatos(semilla, Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Integer.getInteger("bibliotech.generador.iteraciones", 1000), LocalDate.now());
+        Path directorio = Path.of(".");
+        try {
+            for (String formato : formatos) {
+                switch (formato.trim()) {
+                    case "json" -> generador.escribirJson(directorio);
+                    case "instantanea" -> generador.escribirInstantanea(directorio);
+                    case "fragmentos" -> generador.escribirFragmentos(directorio,
+                            Integer.getInteger("bibliotech.fragmentos", 64));
+                    case "csv" -> generador.escribirCsv(directorio.resolve("libros.csv"));
+                    case "jsonl" -> generador.escribirJsonLineas(directorio.resolve("libros.jsonl"));
+                    default -> throw new IllegalArgumentException("Formato no valido: " + formato);
+                }
+                StdOut.println("Generado " + formato.trim() + ": " + generador.getLibros() + " libros, "
+                        + generador.getSocios() + " socios (semilla " + semilla + ")");
+            }
+        } catch (IOException ex) {
+            StdOut.println("Ocurrio un error al generar los datos: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Muestra la cantidad de libros y los libros calificados con 4.0 o mas de cada categoria, leyendo el archivo de
+     * libros en un {@link CatalogoColumnar}.
+     *
+     * @param archivo de libros.
+     */
+    private static void mostrarEstadisticas(final String archivo) {
+        CatalogoColumnar catalogo;
+        try {
+            catalogo = CatalogoColumnar.leer(archivo);
+        } catch (IOException ex) {
+            StdOut.println("Ocurrio un error al leer " + archivo + ": " + ex.getMessage());
+            return;
+        }
+        String[] categorias = catalogo.obtenerCategorias();
+        int[] cantidades = catalogo.contarPorCategoria();
+        for (int i = 0; i < categorias.length; i++) {
+            SALIDA.println(categorias[i] + ": " + cantidades[i] + " libros, " + catalogo.contar(categorias[i], 4.0)
+                    + " con calificacion 4.0 o mas");
+        }
+        SALIDA.println("Total: " + catalogo.getCantidad() + " libros en " + categorias.length + " categorias ("
+                + catalogo.getBytesColumnas() / 1024 + " KB en columnas)");
+        SALIDA.flush();
     }
 
     /**
@@ -67,8 +186,9 @@ public final class Main {
         String contrasenia = StdIn.readLine();
 
         // intento el inicio de session
+        Sesion sesion;
         try {
-            sistema.iniciarSession(numeroSocio, contrasenia);
+            sesion = sistema.iniciarSession(numeroSocio, contrasenia);
         } catch (IllegalArgumentException ex) {
             StdOut.println("Ocurrio un error: " + ex.getMessage());
             return;
@@ -76,68 +196,230 @@ public final class Main {
 
 
         // mostrar menu principal
-        menuPrincipal(sistema);
+        menuPrincipal(sistema, sesion);
     }
 
-    private static void menuPrincipal(final Sistema sistema) throws Exception {
+    private static void menuPrincipal(final Sistema sistema, final Sesion sesion) throws Exception {
         String opcion = null;
-        while (!Objects.equals(opcion, "4")) {
+        while (!Objects.equals(opcion, "8")) {
             StdOut.println("""
                     [*] BiblioTech [*]
-                                        
+
                     [1] Prestamo de un libro
-                    [2] Editar información
-                    [3] Calificar libro
-                                        
-                    [4] Cerrar sesion
+                    [2] Devolucion de un libro
+                    [3] Renovar un prestamo
+                    [4] Buscar libros
+                    [5] Mejores libros
+                    [6] Editar información
+                    [7] Calificar libro
+
+                    [8] Cerrar sesion
                     """);
 
             StdOut.print("Escoja una opcion: ");
             opcion = StdIn.readLine();
 
             switch (opcion) {
-                case "1" -> menuPrestamo(sistema);
-                case "2" -> editarInformacion(sistema);
-                case "3" -> Calificacion(sistema);
-                case "4" -> sistema.cerrarSession();
+                case "1" -> menuPrestamo(sistema, sesion);
+                case "2" -> menuDevolucion(sesion);
+                case "3" -> menuRenovacion(sesion);
+                case "4" -> buscarLibros(sistema);
+                case "5" -> mejoresLibros(sistema);
+                case "6" -> editarInformacion(sesion);
+                case "7" -> Calificacion(sesion);
+                case "8" -> sesion.cerrar();
                 default -> StdOut.println("Opcion no valida, intente nuevamente");
             }
         }
     }
 
-    private static void menuPrestamo(Sistema sistema) {
+    private static void menuPrestamo(Sistema sistema, Sesion sesion) throws IOException {
         StdOut.println("[*] Préstamo de un Libro [*]");
-        StdOut.println(sistema.obtegerCatalogoLibros());
 
-        StdOut.print("Ingrese el ISBN del libro a tomar prestado: ");
+        // recorro el catalogo por paginas hasta que el socio ingrese un ISBN.
+        String categoria = null;
+        double calificacionMinima = 0.0;
+        PaginadorCatalogo.Orden orden = PaginadorCatalogo.Orden.INGRESO;
+        int pagina = 0;
+        // con filtros, los libros se cuentan solo al cambiar el filtro o el orden (contarlos recorre el catalogo).
+        int total = -1;
+        while (true) {
+            total = mostrarCatalogo(sistema, categoria, calificacionMinima, orden, pagina, total);
+            int paginas = (total + LIBROS_POR_PAGINA - 1) / LIBROS_POR_PAGINA;
+
+            StdOut.println("[s] Siguiente pagina  [a] Pagina anterior  [f] Filtrar  [o] Ordenar");
+            StdOut.print("Ingrese una opcion o el ISBN del libro a tomar prestado: ");
+            String opcion = StdIn.readLine();
+
+            switch (opcion) {
+                case "s" -> pagina = Math.min(pagina + 1, Math.max(paginas - 1, 0));
+                case "a" -> pagina = Math.max(pagina - 1, 0);
+                case "f" -> {
+                    StdOut.print("Categoria (vacio para todas): ");
+                    String texto = StdIn.readLine();
+                    categoria = texto.isBlank() ? null : texto;
+                    StdOut.print("Calificacion minima (vacio para ninguna): ");
+                    texto = StdIn.readLine();
+                    try {
+                        calificacionMinima = texto.isBlank() ? 0.0 : Double.parseDouble(texto);
+                    } catch (NumberFormatException ex) {
+                        StdOut.println("Calificacion no valida, se muestran todas");
+                        calificacionMinima = 0.0;
+                    }
+                    pagina = 0;
+                    total = -1;
+                }
+                case "o" -> {
+                    StdOut.print("Ordenar por [1] ingreso [2] titulo [3] autor [4] calificacion: ");
+                    orden = switch (StdIn.readLine()) {
+                        case "2" -> PaginadorCatalogo.Orden.TITULO;
+                        case "3" -> PaginadorCatalogo.Orden.AUTOR;
+                        case "4" -> PaginadorCatalogo.Orden.CALIFICACION;
+                        default -> PaginadorCatalogo.Orden.INGRESO;
+                    };
+                    pagina = 0;
+                    total = -1;
+                }
+                default -> {
+                    try {
+                        sesion.realizarPrestamoLibro(opcion);
+                    } catch (IOException | IllegalArgumentException ex) {
+                        StdOut.println("Ocurrio un error, intente nuevamente: " + ex.getMessage());
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Muestra una pagina del catalogo de libros disponibles.
+     *
+     * @param sistema            a utilizar.
+     * @param categoria          de los libros (null para todas).
+     * @param calificacionMinima de los libros.
+     * @param orden              de los libros.
+     * @param pagina             a mostrar (desde 0).
+     * @param contados           libros que cumplen los filtros, ya contados (-1 para contarlos).
+     * @return la cantidad de libros que cumplen los filtros.
+     * @throws IOException en caso de un error al escribir.
+     */
+    private static int mostrarCatalogo(final Sistema sistema, final String categoria, final double calificacionMinima,
+                                       final PaginadorCatalogo.Orden orden, final int pagina, final int contados)
+            throws IOException {
+        int total = sistema.escribirCatalogo(SALIDA, categoria, calificacionMinima, orden, pagina, LIBROS_POR_PAGINA,
+                contados < 0);
+        if (total < 0) {
+            total = contados;
+        }
+        SALIDA.flush();
+        int paginas = (total + LIBROS_POR_PAGINA - 1) / LIBROS_POR_PAGINA;
+        StdOut.println("Pagina " + (pagina + 1) + " de " + Math.max(paginas, 1) + " (" + total + " libros disponibles)");
+        return total;
+    }
+
+    /**
+     * metodo para devolver un libro en prestamo
+     *
+     * @param sesion a utilizar
+     */
+    private static void menuDevolucion(Sesion sesion) {
+        StdOut.println("[*] Devolución de un Libro [*]");
+        StdOut.println(sesion.obtenerDatosSocio());
+
+        StdOut.print("Ingrese el ISBN del libro a devolver: ");
         String isbn = StdIn.readLine();
 
         try {
-            sistema.realizarPrestamoLibro(isbn);
-        } catch (IOException ex) {
+            sesion.devolverLibro(isbn);
+        } catch (IOException | IllegalArgumentException ex) {
             StdOut.println("Ocurrio un error, intente nuevamente: " + ex.getMessage());
+            return;
+        }
+        StdOut.println("Libro devuelto");
+    }
+
+    /**
+     * metodo para renovar un libro en prestamo
+     *
+     * @param sesion a utilizar
+     */
+    private static void menuRenovacion(Sesion sesion) {
+        StdOut.println("[*] Renovación de un Préstamo [*]");
+        StdOut.println(sesion.obtenerDatosSocio());
+
+        StdOut.print("Ingrese el ISBN del libro a renovar: ");
+        String isbn = StdIn.readLine();
+
+        try {
+            StdOut.println("Prestamo renovado hasta el " + sesion.renovarPrestamo(isbn));
+        } catch (IOException | IllegalArgumentException ex) {
+            StdOut.println("Ocurrio un error, intente nuevamente: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * metodo para buscar libros por titulo, autor o categoria
+     *
+     * @param sistema a utilizar
+     * @throws IOException si el catalogo no se pudo cargar
+     */
+    private static void buscarLibros(Sistema sistema) throws IOException {
+        StdOut.print("Ingrese las palabras a buscar: ");
+        String consulta = StdIn.readLine();
+
+        Libro[] libros = sistema.buscarLibros(consulta, 20);
+        if (libros.length == 0) {
+            StdOut.println("No se encontraron libros");
+            return;
+        }
+        for (Libro libro : libros) {
+            StdOut.println(libro.getIsbn() + " | " + libro.getTitulo() + " | " + libro.getAutor() + " | "
+                    + libro.getCategoria() + " | " + libro.getCalificacion());
+        }
+    }
+
+    /**
+     * metodo para mostrar los libros mejor calificados de una categoria
+     *
+     * @param sistema a utilizar
+     * @throws IOException si el catalogo no se pudo cargar
+     */
+    private static void mejoresLibros(Sistema sistema) throws IOException {
+        StdOut.println("Categorias: " + String.join(", ", sistema.obtenerCategorias()));
+        StdOut.print("Ingrese la categoria (vacio para todas): ");
+        String categoria = StdIn.readLine();
+
+        Libro[] libros = sistema.obtenerMejoresLibros(categoria.isBlank() ? null : categoria, 20);
+        if (libros.length == 0) {
+            StdOut.println("No se encontraron libros");
+            return;
+        }
+        for (Libro libro : libros) {
+            StdOut.println(libro.getCalificacion() + " | " + libro.getIsbn() + " | " + libro.getTitulo() + " | "
+                    + libro.getAutor());
         }
     }
 
-    private static void editarInformacion(Sistema sistema) {
+    private static void editarInformacion(Sesion sesion) {
 
         String opcion = null;
         while (!Objects.equals(opcion, "3")) {
 
             StdOut.println("[*] Editar Perfil [*]");
-            StdOut.println(sistema.obtenerDatosSocioLogeado());
-            StdOut.println("""               
+            StdOut.println(sesion.obtenerDatosSocio());
+            StdOut.println("""
                     [1] Editar correo Electronico
                     [2] Editar Contraseña
-                                        
+
                     [3] Volver atrás
                     """);
             StdOut.print("Escoja una opción: ");
             opcion = StdIn.readLine();
 
             switch (opcion) {
-                case "1" -> editarCorreo(sistema);
-                case "2" -> cambiarContrasenia(sistema);
+                case "1" -> editarCorreo(sesion);
+                case "2" -> cambiarContrasenia(sesion);
                 case "3" -> StdOut.println("Volviendo al menú anterior...");
                 default -> StdOut.println("Opcion no valida, intente nuevamente");
             }
@@ -147,36 +429,62 @@ public final class Main {
     /**
      * metodo para cambiar la contrasenia del usuario
      *
-     * @param sistema a utilizar
+     * @param sesion a utilizar
      */
-    public static void cambiarContrasenia(Sistema sistema) {
+    public static void cambiarContrasenia(Sesion sesion) {
         StdOut.print("Ingrese la contraseña nueva:");
         String contraseniaNueva = StdIn.readLine();
-        sistema.cambiarContrasenia(contraseniaNueva);
+        try {
+            sesion.cambiarContrasenia(contraseniaNueva);
+        } catch (IOException ex) {
+            StdOut.println("Ocurrio un error, intente nuevamente: " + ex.getMessage());
+            return;
+        }
         System.out.println("Contraseña actualizada");
     }
 
     /**
      * metodo para cambiar el correo del usuario
      *
-     * @param sistema a utilizar
+     * @param sesion a utilizar
      */
-    private static void editarCorreo(Sistema sistema) {
+    private static void editarCorreo(Sesion sesion) {
         System.out.println("Ingrese el correo nuevo: ");
         String correo = StdIn.readLine();
         Utils.validarEmail(correo);
-        sistema.cambiarCorreo(correo);
+        try {
+            sesion.cambiarCorreo(correo);
+        } catch (IOException ex) {
+            StdOut.println("Ocurrio un error, intente nuevamente: " + ex.getMessage());
+        }
     }
 
     /**
      * metodo para agregar una calificacion a algun libro
      *
-     * @param sistema a  utilizar
-     * @throws Exception por si no encuentro el ISBN solicitado
+     * @param sesion a  utilizar
+     * @throws Exception por si la calificacion no es un numero
      */
-    private static void Calificacion(Sistema sistema) throws Exception {
+    private static void Calificacion(Sesion sesion) throws Exception {
         System.out.print("Ingresa el ISBN del libro a calificar: ");
         String isbnString = StdIn.readLine();
-        sistema.calificarLibro(isbnString);
+
+        // solicito el dato desde pantalla
+        System.out.print("Ingresa un número del 1 al 5: ");
+        String numeroString = StdIn.readLine();
+        double numero;
+        try {
+            numero = Double.parseDouble(numeroString);
+            // si el dato no es un valor numerico lanzo una excepsion
+        } catch (NumberFormatException e) {
+            throw new Exception("El valor \"" + numeroString + "\" no es un número válido.");
+        }
+
+        try {
+            sesion.calificarLibro(isbnString, numero);
+            System.out.println("Gracias por darnos tu opinion");
+        } catch (IOException | IllegalArgumentException ex) {
+            StdOut.println("Ocurrio un error: " + ex.getMessage());
+        }
     }
 }
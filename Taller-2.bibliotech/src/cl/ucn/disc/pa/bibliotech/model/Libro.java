@@ -4,6 +4,9 @@
 
 package cl.ucn.disc.pa.bibliotech.model;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
 /**
  * Clase que representa un Libro.
  *
@@ -11,6 +14,21 @@ package cl.ucn.disc.pa.bibliotech.model;
  */
 public final class Libro {
 
+    /**
+     * Bits del acumulado para la cantidad de calificaciones (los bits bajos); la suma ocupa los bits altos.
+     */
+    private static final int BITS_VOTOS = 26;
+
+    /**
+     * Maxima cantidad de calificaciones de un libro (67.108.863).
+     */
+    public static final long MAXIMO_VOTOS = (1L << BITS_VOTOS) - 1;
+
+    /**
+     * Maxima suma de calificaciones de un libro, en centesimas (alcanza para el maximo de votos con 5.0).
+     */
+    public static final long MAXIMA_SUMA_CENTESIMAS = (1L << (Long.SIZE - BITS_VOTOS)) - 1;
+
     /**
      * The ISBN.
      */
@@ -32,12 +50,14 @@ public final class Libro {
     private String categoria;
 
     /**
-     * The Calificacion.
+     * Acumulado de las calificaciones: la suma en centesimas (punto fijo: es exacta) en los bits altos y la cantidad
+     * en los bits bajos. Al estar en una sola variable, el promedio siempre se calcula con una suma y una cantidad
+     * del mismo instante.
      */
-    private double calificacion;
+    private final AtomicLong acumulado = new AtomicLong();
 
     /**
-     * The Constructor.
+     * The Constructor: una calificacion mayor a 0.0 cuenta como una calificacion recibida.
      *
      * @param isbn         del libro.
      * @param titulo       del libro.
@@ -46,6 +66,21 @@ public final class Libro {
      * @param calificacion del libro
      */
     public Libro(final String isbn, final String titulo, final String autor, final String categoria, final double calificacion) {
+        this(isbn, titulo, autor, categoria, calificacion, calificacion > 0.0 ? 1 : 0);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param isbn         del libro.
+     * @param titulo       del libro.
+     * @param autor        del libro
+     * @param categoria    del libro.
+     * @param calificacion promedio del libro
+     * @param votos        cantidad de calificaciones que forman el promedio
+     */
+    public Libro(final String isbn, final String titulo, final String autor, final String categoria, final double calificacion,
+                 final long votos) {
 
         // validacion del ISBN
         if (isbn.length() < 10) {
@@ -76,7 +111,38 @@ public final class Libro {
         if (calificacion < 0.0) {
             throw new IllegalArgumentException("Solo numeros sobre 0.0!");
         }
-        this.calificacion = calificacion;
+        if (votos < 0) {
+            throw new IllegalArgumentException("La cantidad de calificaciones no puede ser negativa!");
+        }
+        // el json guarda el promedio: la suma en centesimas es la mas cercana a promedio * votos (exacta para los
+        // promedios que escribe el sistema; los promedios antiguos con mas decimales se redondean a centesimas).
+        this.establecerCalificacion(Math.round(calificacion * votos * 100), votos);
+    }
+
+    /**
+     * @return una copia del Libro con las calificaciones que tiene ahora.
+     */
+    public Libro copiar() {
+        Libro copia = new Libro(this.isbn, this.titulo, this.autor, this.categoria, 0.0, 0);
+        long acumulado = this.acumulado.get();
+        copia.establecerCalificacion(sumaCentesimas(acumulado), votos(acumulado));
+        return copia;
+    }
+
+    /**
+     * Reemplaza el autor y la categoria por las instancias compartidas de un pool: se repiten en muchos libros, por
+     * lo que el catalogo guarda una sola instancia de cada valor.
+     *
+     * @param pool que entrega una instancia igual a la cadena recibida.
+     */
+    public void compartirCadenas(final UnaryOperator<String> pool) {
+        String autor = pool.apply(this.autor);
+        String categoria = pool.apply(this.categoria);
+        if (!autor.equals(this.autor) || !categoria.equals(this.categoria)) {
+            throw new IllegalArgumentException("El pool debe entregar cadenas iguales a las recibidas!");
+        }
+        this.autor = autor;
+        this.categoria = categoria;
     }
 
     /**
@@ -108,17 +174,95 @@ public final class Libro {
     }
 
     /**
-     * @return la calificacion
+     * @return el promedio exacto de las calificaciones (0.0 si no tiene calificaciones)
      */
     public double getCalificacion() {
-        return calificacion;
+        return promedio(this.acumulado.get());
     }
 
     /**
+     * @return la cantidad de calificaciones recibidas
+     */
+    public long getVotos() {
+        return votos(this.acumulado.get());
+    }
+
+    /**
+     * @return la suma de las calificaciones recibidas, en centesimas
+     */
+    public long getSumaCentesimas() {
+        return sumaCentesimas(this.acumulado.get());
+    }
+
+    /**
+     * @return el acumulado de las calificaciones (suma y cantidad de un mismo instante), para leerlo con
+     * {@link #sumaCentesimas(long)}, {@link #votos(long)} y {@link #promedio(long)}
+     */
+    public long getAcumulado() {
+        return this.acumulado.get();
+    }
+
+    /**
+     * @param acumulado de las calificaciones de un libro.
+     * @return la suma de las calificaciones, en centesimas
+     */
+    public static long sumaCentesimas(final long acumulado) {
+        return acumulado >>> BITS_VOTOS;
+    }
+
+    /**
+     * @param acumulado de las calificaciones de un libro.
+     * @return la cantidad de calificaciones
+     */
+    public static long votos(final long acumulado) {
+        return acumulado & MAXIMO_VOTOS;
+    }
+
+    /**
+     * @param acumulado de las calificaciones de un libro.
+     * @return el promedio exacto de las calificaciones (0.0 si no tiene calificaciones)
+     */
+    public static double promedio(final long acumulado) {
+        long votos = votos(acumulado);
+        return votos == 0 ? 0.0 : sumaCentesimas(acumulado) / (votos * 100.0);
+    }
+
+    /**
+     * Agrega una calificacion al promedio, sin bloqueos (compare-and-set de la suma y la cantidad juntas): varios
+     * socios pueden calificar el mismo libro a la vez. La suma se guarda en centesimas, por lo que no se aceptan
+     * calificaciones con mas de 2 decimales (se rechazan en vez de redondearlas).
+     *
      * @param calificacion a agregar a algun libro
      */
     public void setCalificacion(double calificacion) {
-        double calificacionActual = getCalificacion();
-        this.calificacion = (calificacionActual + calificacion) / 2;
+        if (calificacion < 0.0) {
+            throw new IllegalArgumentException("Solo numeros sobre 0.0!");
+        }
+        long centesimas = Math.round(calificacion * 100);
+        if (centesimas / 100.0 != calificacion) {
+            throw new IllegalArgumentException("La calificacion no puede tener mas de 2 decimales!");
+        }
+        long actual;
+        long nuevo;
+        do {
+            actual = this.acumulado.get();
+            if (votos(actual) == MAXIMO_VOTOS || sumaCentesimas(actual) > MAXIMA_SUMA_CENTESIMAS - centesimas) {
+                throw new IllegalStateException("El libro alcanzo el maximo de calificaciones!");
+            }
+            nuevo = actual + (centesimas << BITS_VOTOS) + 1;
+        } while (!this.acumulado.compareAndSet(actual, nuevo));
+    }
+
+    /**
+     * Reemplaza el acumulado de calificaciones (por ejemplo, al reproducir la bitacora).
+     *
+     * @param sumaCentesimas suma de las calificaciones, en centesimas
+     * @param votos          cantidad de calificaciones
+     */
+    public void establecerCalificacion(final long sumaCentesimas, final long votos) {
+        if (sumaCentesimas < 0 || sumaCentesimas > MAXIMA_SUMA_CENTESIMAS || votos < 0 || votos > MAXIMO_VOTOS) {
+            throw new IllegalArgumentException("Acumulado de calificaciones no valido!");
+        }
+        this.acumulado.set(sumaCentesimas << BITS_VOTOS | votos);
     }
 }
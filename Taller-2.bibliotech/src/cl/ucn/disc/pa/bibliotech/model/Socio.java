@@ -6,6 +6,8 @@ package cl.ucn.disc.pa.bibliotech.model;
 
 import cl.ucn.disc.pa.bibliotech.services.Utils;
 
+import java.time.LocalDate;
+
 /**
  * Clase que representa a un Socio.
  *
@@ -18,6 +20,11 @@ public final class Socio {
      */
     private static final int NUMERO_LIBROS_MAXIMO = 5;
 
+    /**
+     * Plazo de un prestamo (y de cada renovacion), en dias.
+     */
+    public static final int PLAZO_PRESTAMO_DIAS = 14;
+
     /**
      * Nombre del socio.
      */
@@ -39,14 +46,25 @@ public final class Socio {
     private int numeroDeSocio;
 
     /**
-     * Contrasenia del socio.
+     * Hash de la contrasenia del socio (ver VerificadorContrasenias; texto plano en archivos antiguos).
      */
     private String contrasenia;
 
     /**
-     * Libros que el Socio tiene en prestamo (maximo 10).
+     * Casillas de los libros que el Socio tiene en prestamo (null = casilla libre). Tiene capacidad fija, por lo que
+     * prestar, devolver y renovar no crean objetos.
+     */
+    private final Libro[] librosEnPrestamo = new Libro[NUMERO_LIBROS_MAXIMO];
+
+    /**
+     * Fecha de vencimiento (dia epoch) del prestamo en cada casilla.
+     */
+    private final long[] vencimientos = new long[NUMERO_LIBROS_MAXIMO];
+
+    /**
+     * Cantidad de casillas ocupadas.
      */
-    private Libro[] librosEnPrestamo = new Libro[0];
+    private int cantidadLibrosEnPrestamo;
 
     /**
      * The Constructor.
@@ -94,6 +112,29 @@ public final class Socio {
         this.contrasenia = contrasenia;
     }
 
+    /**
+     * Constructor de copia (sin validar: el original ya es valido).
+     *
+     * @param original a copiar.
+     */
+    private Socio(final Socio original) {
+        this.nombre = original.nombre;
+        this.apellido = original.apellido;
+        this.correoElectronico = original.correoElectronico;
+        this.numeroDeSocio = original.numeroDeSocio;
+        this.contrasenia = original.contrasenia;
+        System.arraycopy(original.librosEnPrestamo, 0, this.librosEnPrestamo, 0, NUMERO_LIBROS_MAXIMO);
+        System.arraycopy(original.vencimientos, 0, this.vencimientos, 0, NUMERO_LIBROS_MAXIMO);
+        this.cantidadLibrosEnPrestamo = original.cantidadLibrosEnPrestamo;
+    }
+
+    /**
+     * @return una copia del Socio y sus prestamos (comparte las instancias de los libros).
+     */
+    public Socio copiar() {
+        return new Socio(this);
+    }
+
     /**
      * @return el nombre del Socio.
      */
@@ -130,30 +171,131 @@ public final class Socio {
     }
 
     /**
-     * @return la contrasenia del Socio.
+     * @return el hash de la contrasenia del Socio.
      */
     public String getContrasenia() {
         return this.contrasenia;
     }
 
     /**
-     * Agrega un libro en prestamo al Socio.
+     * @return los libros que el Socio tiene en prestamo.
+     */
+    public Libro[] getLibrosEnPrestamo() {
+        Libro[] libros = new Libro[this.cantidadLibrosEnPrestamo];
+        int n = 0;
+        for (Libro libro : this.librosEnPrestamo) {
+            if (libro != null) {
+                libros[n++] = libro;
+            }
+        }
+        return libros;
+    }
+
+    /**
+     * @return la cantidad de libros que el Socio tiene en prestamo.
+     */
+    public int getCantidadLibrosEnPrestamo() {
+        return this.cantidadLibrosEnPrestamo;
+    }
+
+    /**
+     * @param isbn del libro.
+     * @return la fecha de vencimiento del prestamo o null si el Socio no tiene el libro.
+     */
+    public LocalDate getVencimiento(final String isbn) {
+        int casilla = this.buscarCasilla(isbn);
+        return casilla < 0 ? null : LocalDate.ofEpochDay(this.vencimientos[casilla]);
+    }
+
+    /**
+     * @param isbn del libro.
+     * @return true si el Socio tiene el libro en prestamo.
+     */
+    public boolean tieneLibro(final String isbn) {
+        return this.buscarCasilla(isbn) >= 0;
+    }
+
+    /**
+     * Agrega un libro en prestamo al Socio, con el plazo de prestamo a partir de hoy.
      *
      * @param libro a agregar.
      */
     public void agregarLibro(final Libro libro) {
+        this.agregarLibro(libro, LocalDate.now().plusDays(PLAZO_PRESTAMO_DIAS));
+    }
+
+    /**
+     * Agrega un libro en prestamo al Socio.
+     *
+     * @param libro       a agregar.
+     * @param vencimiento del prestamo.
+     */
+    public void agregarLibro(final Libro libro, final LocalDate vencimiento) {
         // validacion
-        if (this.librosEnPrestamo.length == NUMERO_LIBROS_MAXIMO) {
+        if (this.cantidadLibrosEnPrestamo == NUMERO_LIBROS_MAXIMO) {
             throw new IllegalArgumentException("El Socio ya tiene la maxima cantidad de libros en prestamo: " + NUMERO_LIBROS_MAXIMO);
         }
-        // agrego el libro
-        Utils.append(this.librosEnPrestamo, libro);
+        if (this.tieneLibro(libro.getIsbn())) {
+            throw new IllegalArgumentException("El Socio ya tiene en prestamo el libro con isbn " + libro.getIsbn());
+        }
+        // agrego el libro en la primera casilla libre
+        int casilla = this.buscarCasilla(null);
+        this.librosEnPrestamo[casilla] = libro;
+        this.vencimientos[casilla] = vencimiento.toEpochDay();
+        this.cantidadLibrosEnPrestamo++;
+    }
+
+    /**
+     * Quita un libro de los libros en prestamo del Socio.
+     *
+     * @param isbn del libro a devolver.
+     * @return el libro devuelto o null si el Socio no lo tenia.
+     */
+    public Libro devolverLibro(final String isbn) {
+        int casilla = this.buscarCasilla(isbn);
+        if (casilla < 0) {
+            return null;
+        }
+        Libro libro = this.librosEnPrestamo[casilla];
+        this.librosEnPrestamo[casilla] = null;
+        this.cantidadLibrosEnPrestamo--;
+        return libro;
+    }
+
+    /**
+     * Cambia la fecha de vencimiento de un prestamo.
+     *
+     * @param isbn        del libro a renovar.
+     * @param vencimiento nuevo del prestamo.
+     * @return true si el Socio tenia el libro.
+     */
+    public boolean renovarLibro(final String isbn, final LocalDate vencimiento) {
+        int casilla = this.buscarCasilla(isbn);
+        if (casilla < 0) {
+            return false;
+        }
+        this.vencimientos[casilla] = vencimiento.toEpochDay();
+        return true;
+    }
+
+    /**
+     * @param isbn del libro a buscar (null para buscar una casilla libre).
+     * @return la casilla del libro o -1 si no esta.
+     */
+    private int buscarCasilla(final String isbn) {
+        for (int i = 0; i < NUMERO_LIBROS_MAXIMO; i++) {
+            Libro libro = this.librosEnPrestamo[i];
+            if (isbn == null ? libro == null : libro != null && libro.getIsbn().equals(isbn)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
      * Seteo la contrasenia del usuario
      *
-     * @param contrasenia nueva del usuario
+     * @param contrasenia hash de la nueva contrasenia del usuario
      */
     public void setContrasenia(String contrasenia) {
         this.contrasenia = contrasenia;
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import java.util.Arrays;
+
+/**
+ * Arreglo que crece a medida que se le agregan elementos: al llenarse duplica su capacidad, por lo que agregar
+ * cuesta O(1) amortizado (en lugar de copiar el arreglo completo en cada insercion, como el deprecado
+ * {@link Utils#append}). Los elementos son objetos: para ids y contadores sin boxing estan {@link ArregloEnteros} y
+ * {@link ArregloLargos}.
+ * <p>
+ * No es seguro para uso concurrente.
+ *
+ * @param <T> tipo de los elementos.
+ * @author Programacion Avanzada.
+ */
+public final class ArregloDinamico<T> {
+
+    /**
+     * Capacidad por defecto.
+     */
+    private static final int CAPACIDAD_INICIAL = 16;
+
+    /**
+     * Los elementos (solo las primeras cantidad casillas estan ocupadas).
+     */
+    private Object[] elementos;
+
+    /**
+     * Cantidad de elementos.
+     */
+    private int cantidad;
+
+    /**
+     * The Constructor.
+     */
+    public ArregloDinamico() {
+        this(CAPACIDAD_INICIAL);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param capacidad inicial (si se conoce la cantidad de elementos se evita crecer).
+     */
+    public ArregloDinamico(final int capacidad) {
+        if (capacidad < 0) {
+            throw new IllegalArgumentException("Capacidad no valida: " + capacidad);
+        }
+        this.elementos = new Object[capacidad];
+    }
+
+    /**
+     * Agrega un elemento al final.
+     *
+     * @param elemento a agregar.
+     */
+    public void agregar(final T elemento) {
+        if (this.cantidad == this.elementos.length) {
+            this.asegurarCapacidad(this.cantidad + 1);
+        }
+        this.elementos[this.cantidad++] = elemento;
+    }
+
+    /**
+     * Agrega todos los elementos de un arreglo al final, con a lo mas un crecimiento.
+     *
+     * @param nuevos elementos a agregar.
+     */
+    public void agregarTodos(final T[] nuevos) {
+        this.asegurarCapacidad(this.cantidad + nuevos.length);
+        System.arraycopy(nuevos, 0, this.elementos, this.cantidad, nuevos.length);
+        this.cantidad += nuevos.length;
+    }
+
+    /**
+     * @param posicion del elemento.
+     * @return el elemento.
+     */
+    @SuppressWarnings("unchecked")
+    public T obtener(final int posicion) {
+        if (posicion < 0 || posicion >= this.cantidad) {
+            throw new IndexOutOfBoundsException("Posicion " + posicion + " fuera de rango: " + this.cantidad);
+        }
+        return (T) this.elementos[posicion];
+    }
+
+    /**
+     * @return la cantidad de elementos.
+     */
+    public int getCantidad() {
+        return this.cantidad;
+    }
+
+    /**
+     * Asegura espacio para una cantidad de elementos sin volver a crecer.
+     *
+     * @param capacidad minima.
+     */
+    public void asegurarCapacidad(final int capacidad) {
+        if (capacidad > this.elementos.length) {
+            // crecimiento geometrico: cada elemento se copia O(1) veces en promedio.
+            int nueva = Math.max(capacidad, Math.max(CAPACIDAD_INICIAL, this.elementos.length * 2));
+            this.elementos = Arrays.copyOf(this.elementos, nueva);
+        }
+    }
+
+    /**
+     * @param vacio arreglo de largo 0 del tipo de los elementos.
+     * @return un arreglo con los elementos, del largo exacto.
+     */
+    @SuppressWarnings("unchecked")
+    public T[] aArreglo(final T[] vacio) {
+        return (T[]) Arrays.copyOf(this.elementos, this.cantidad, vacio.getClass());
+    }
+}
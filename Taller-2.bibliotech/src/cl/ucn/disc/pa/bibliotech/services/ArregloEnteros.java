@@ -0,0 +1,138 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import java.util.Arrays;
+
+/**
+ * Version de {@link ArregloDinamico} para ints (ids y posiciones): guarda los valores en un int[] sin boxing, con el
+ * mismo crecimiento geometrico (agregar cuesta O(1) amortizado).
+ * <p>
+ * No es seguro para uso concurrente.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class ArregloEnteros {
+
+    /**
+     * Capacidad por defecto.
+     */
+    private static final int CAPACIDAD_INICIAL = 16;
+
+    /**
+     * Los valores (solo las primeras cantidad casillas estan ocupadas).
+     */
+    private int[] valores;
+
+    /**
+     * Cantidad de valores.
+     */
+    private int cantidad;
+
+    /**
+     * The Constructor.
+     */
+    public ArregloEnteros() {
+        this(CAPACIDAD_INICIAL);
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param capacidad inicial (si se conoce la cantidad de valores se evita crecer).
+     */
+    public ArregloEnteros(final int capacidad) {
+        if (capacidad < 0) {
+            throw new IllegalArgumentException("Capacidad no valida: " + capacidad);
+        }
+        this.valores = new int[capacidad];
+    }
+
+    /**
+     * Agrega un valor al final.
+     *
+     * @param valor a agregar.
+     */
+    public void agregar(final int valor) {
+        if (this.cantidad == this.valores.length) {
+            this.asegurarCapacidad(this.cantidad + 1);
+        }
+        this.valores[this.cantidad++] = valor;
+    }
+
+    /**
+     * Agrega todos los valores de un arreglo al final, con a lo mas un crecimiento.
+     *
+     * @param nuevos valores a agregar.
+     */
+    public void agregarTodos(final int[] nuevos) {
+        this.asegurarCapacidad(this.cantidad + nuevos.length);
+        System.arraycopy(nuevos, 0, this.valores, this.cantidad, nuevos.length);
+        this.cantidad += nuevos.length;
+    }
+
+    /**
+     * @param posicion del valor.
+     * @return el valor.
+     */
+    public int obtener(final int posicion) {
+        this.validarPosicion(posicion);
+        return this.valores[posicion];
+    }
+
+    /**
+     * Reemplaza un valor.
+     *
+     * @param posicion del valor.
+     * @param valor    nuevo.
+     */
+    public void establecer(final int posicion, final int valor) {
+        this.validarPosicion(posicion);
+        this.valores[posicion] = valor;
+    }
+
+    /**
+     * @return la cantidad de valores.
+     */
+    public int getCantidad() {
+        return this.cantidad;
+    }
+
+    /**
+     * @return la cantidad de valores que caben sin crecer.
+     */
+    public int getCapacidad() {
+        return this.valores.length;
+    }
+
+    /**
+     * Asegura espacio para una cantidad de valores sin volver a crecer.
+     *
+     * @param capacidad minima.
+     */
+    public void asegurarCapacidad(final int capacidad) {
+        if (capacidad > this.valores.length) {
+            // crecimiento geometrico: cada valor se copia O(1) veces en promedio.
+            int nueva = Math.max(capacidad, Math.max(CAPACIDAD_INICIAL, this.valores.length * 2));
+            this.valores = Arrays.copyOf(this.valores, nueva);
+        }
+    }
+
+    /**
+     * @return un arreglo con los valores, del largo exacto.
+     */
+    public int[] aArreglo() {
+        return Arrays.copyOf(this.valores, this.cantidad);
+    }
+
+    /**
+     * @param posicion a validar.
+     */
+    private void validarPosicion(final int posicion) {
+        if (posicion < 0 || posicion >= this.cantidad) {
+            throw new IndexOutOfBoundsException("Posicion " + posicion + " fuera de rango: " + this.cantidad);
+        }
+    }
+}
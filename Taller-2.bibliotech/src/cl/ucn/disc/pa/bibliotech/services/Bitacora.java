@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * Bitacora (write-ahead journal) de solo-agregar con las operaciones que modifican el Sistema.
+ * <p>
+ * Cada operacion es una linea de texto UTF-8 con campos separados por tabulador y terminada con el CRC32 de la
+ * linea, para descartar una escritura interrumpida. Las operaciones registran el estado resultante (no la
+ * diferencia), por lo que reproducirlas sobre una instantanea que ya las contiene es idempotente.
+ * <p>
+ * El fsync se hace fuera del monitor de la bitacora, con group commit: la operacion que debe quedar en el disco espera
+ * a que un fsync posterior a su escritura termine, y un solo fsync sirve a todas las operaciones escritas antes de
+ * comenzar (mientras un hilo sincroniza, los demas siguen escribiendo y esperan el siguiente). Con N operaciones por
+ * sincronizacion solo espera una de cada N: ante una caida del sistema operativo se pueden perder las ultimas N - 1.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class Bitacora implements Closeable {
+
+    /**
+     * Tipos de operacion registrados en la bitacora.
+     */
+    public enum Operacion {
+        /**
+         * Prestamo de un libro: numero de socio, isbn, vencimiento (ISO-8601; ausente en bitacoras antiguas).
+         */
+        PRESTAMO,
+        /**
+         * Devolucion de un libro: numero de socio, isbn.
+         */
+        DEVOLUCION,
+        /**
+         * Renovacion de un prestamo: numero de socio, isbn, nuevo vencimiento (ISO-8601).
+         */
+        RENOVACION,
+        /**
+         * Calificacion resultante de un libro: isbn, suma de calificaciones (centesimas), cantidad de calificaciones.
+         */
+        CALIFICACION,
+        /**
+         * Nuevo correo de un socio: numero de socio, correo.
+         */
+        CORREO,
+        /**
+         * Nueva contrasenia de un socio: numero de socio, hash de la contrasenia (texto plano en bitacoras antiguas).
+         */
+        CONTRASENIA
+    }
+
+    /**
+     * Aplica una operacion leida desde la bitacora.
+     */
+    @FunctionalInterface
+    public interface Aplicador {
+
+        /**
+         * @param operacion a aplicar.
+         * @param campos    de la operacion.
+         * @throws IOException en caso de un error al aplicar la operacion.
+         */
+        void aplicar(Operacion operacion, String[] campos) throws IOException;
+    }
+
+    /**
+     * El archivo de la bitacora.
+     */
+    private final Path archivo;
+
+    /**
+     * Cantidad de operaciones entre cada fsync (0 = el sistema operativo decide; 1 = cada operacion espera su fsync).
+     */
+    private final int operacionesPorSincronizacion;
+
+    /**
+     * El canal de escritura.
+     */
+    private final FileChannel canal;
+
+    /**
+     * Operaciones escritas desde la ultima que espero un fsync.
+     */
+    private int pendientes;
+
+    /**
+     * Numero de la ultima operacion escrita (se escribe con el monitor de la bitacora y se lee sin tomarlo).
+     */
+    private volatile long escritas;
+
+    /**
+     * Candado del group commit: protege las operaciones sincronizadas y quien esta sincronizando (se toma sin tener
+     * el monitor de la bitacora o despues de el, nunca al reves).
+     */
+    private final ReentrantLock candadoSincronizacion = new ReentrantLock();
+
+    /**
+     * Avisa a los hilos que esperan un fsync que uno termino.
+     */
+    private final Condition sincronizada = this.candadoSincronizacion.newCondition();
+
+    /**
+     * Numero de la ultima operacion que ya esta en el disco.
+     */
+    private long sincronizadas;
+
+    /**
+     * Si algun hilo esta haciendo un fsync.
+     */
+    private boolean sincronizando;
+
+    /**
+     * Operaciones escritas desde la ultima compactacion.
+     */
+    private int operaciones;
+
+    /**
+     * Bytes escritos desde que se abrio la bitacora (se lee sin tomar el monitor de la bitacora).
+     */
+    private final LongAdder bytesEscritos = new LongAdder();
+
+    /**
+     * The Constructor: abre (o crea) la bitacora para agregar operaciones.
+     *
+     * @param archivo                      de la bitacora.
+     * @param operacionesPorSincronizacion cantidad de operaciones entre cada fsync (0 = nunca forzar; 1 = cada
+     *                                     operacion espera a estar en el disco).
+     * @throws IOException en caso de algun error.
+     */
+    public Bitacora(final Path archivo, final int operacionesPorSincronizacion) throws IOException {
+        if (operacionesPorSincronizacion < 0) {
+            throw new IllegalArgumentException("Las operaciones por sincronizacion no pueden ser negativas!");
+        }
+        this.archivo = archivo;
+        this.operacionesPorSincronizacion = operacionesPorSincronizacion;
+        this.canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.pendientes = 0;
+        this.operaciones = 0;
+    }
+
+    /**
+     * Lee la bitacora y aplica cada operacion en orden.
+     *
+     * @param archivo   de la bitacora.
+     * @param aplicador de las operaciones.
+     * @return la cantidad de operaciones aplicadas.
+     * @throws IOException en caso de algun error de lectura.
+     */
+    public static int reproducir(final Path archivo, final Aplicador aplicador) throws IOException {
+        int cantidad = 0;
+        try (BufferedReader reader = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            String linea;
+            while ((linea = reader.readLine()) != null) {
+                if (linea.isEmpty()) {
+                    continue;
+                }
+                // separo el contenido del CRC32.
+                int separador = linea.lastIndexOf('\t');
+                if (separador < 0 || !linea.substring(separador + 1).equals(crc(linea.substring(0, separador)))) {
+                    // escritura interrumpida: las operaciones siguientes no son confiables.
+                    break;
+                }
+                String[] campos = linea.substring(0, separador).split("\t", -1);
+                Operacion operacion = Operacion.valueOf(campos[0]);
+                String[] argumentos = new String[campos.length - 1];
+                for (int i = 1; i < campos.length; i++) {
+                    argumentos[i - 1] = desescapar(campos[i]);
+                }
+                aplicador.aplicar(operacion, argumentos);
+                cantidad++;
+            }
+        } catch (NoSuchFileException ex) {
+            // no hay bitacora: nada que reproducir.
+            return 0;
+        }
+        return cantidad;
+    }
+
+    /**
+     * Agrega una operacion al final de la bitacora.
+     *
+     * @param operacion a registrar.
+     * @param campos    de la operacion.
+     * @throws IOException en caso de algun error.
+     */
+    public void registrar(final Operacion operacion, final String... campos) throws IOException {
+        this.registrar(operacion, () -> campos);
+    }
+
+    /**
+     * Agrega una operacion al final de la bitacora, obteniendo sus campos mientras se tiene el candado de la
+     * bitacora: dos operaciones sobre el mismo dato quedan en el mismo orden en que se leyo su estado resultante.
+     * Si le corresponde un fsync, lo espera despues de soltar el candado (group commit).
+     *
+     * @param operacion a registrar.
+     * @param campos    proveedor de los campos de la operacion.
+     * @throws IOException en caso de algun error.
+     */
+    public void registrar(final Operacion operacion, final Supplier<String[]> campos) throws IOException {
+        long numero = this.escribir(operacion, campos);
+        if (numero > 0) {
+            this.esperarSincronizacion(numero);
+        }
+    }
+
+    /**
+     * Escribe una operacion al final de la bitacora.
+     *
+     * @param operacion a escribir.
+     * @param campos    proveedor de los campos de la operacion.
+     * @return el numero de la operacion si debe esperar un fsync, 0 si no.
+     * @throws IOException en caso de algun error.
+     */
+    private synchronized long escribir(final Operacion operacion, final Supplier<String[]> campos)
+            throws IOException {
+        StringBuilder sb = new StringBuilder(64).append(operacion.name());
+        for (String campo : campos.get()) {
+            sb.append('\t');
+            escapar(campo, sb);
+        }
+        String crc = crc(sb);
+        sb.append('\t').append(crc).append('\n');
+
+        ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            this.canal.write(buffer);
+        }
+        this.operaciones++;
+        this.bytesEscritos.add(buffer.limit());
+        this.escritas++;
+
+        // fsync por lotes: solo una de cada N operaciones lo espera.
+        if (this.operacionesPorSincronizacion > 0 && ++this.pendientes >= this.operacionesPorSincronizacion) {
+            this.pendientes = 0;
+            return this.escritas;
+        }
+        return 0;
+    }
+
+    /**
+     * Fuerza al disco todas las operaciones escritas hasta ahora.
+     *
+     * @throws IOException en caso de algun error.
+     */
+    public void sincronizar() throws IOException {
+        this.esperarSincronizacion(this.escritas);
+    }
+
+    /**
+     * Espera a que una operacion este en el disco. Si nadie esta sincronizando, este hilo hace el fsync (sin tener
+     * ningun candado) para todas las operaciones escritas hasta ese momento; si no, espera a que termine el fsync en
+     * curso y vuelve a revisar.
+     *
+     * @param numero de la operacion.
+     * @throws IOException si el fsync fallo.
+     */
+    private void esperarSincronizacion(final long numero) throws IOException {
+        this.candadoSincronizacion.lock();
+        try {
+            while (this.sincronizadas < numero) {
+                if (this.sincronizando) {
+                    this.sincronizada.awaitUninterruptibly();
+                    continue;
+                }
+                this.sincronizando = true;
+                // las operaciones hasta aqui ya se escribieron: el fsync las incluye.
+                long hasta = this.escritas;
+                this.candadoSincronizacion.unlock();
+                boolean sincronizado = false;
+                try {
+                    this.canal.force(false);
+                    sincronizado = true;
+                } finally {
+                    this.candadoSincronizacion.lock();
+                    this.sincronizando = false;
+                    if (sincronizado) {
+                        this.sincronizadas = Math.max(this.sincronizadas, hasta);
+                    }
+                    this.sincronizada.signalAll();
+                }
+            }
+        } finally {
+            this.candadoSincronizacion.unlock();
+        }
+    }
+
+    /**
+     * Vacia la bitacora; se debe llamar despues de guardar una instantanea que contiene todas sus operaciones.
+     *
+     * @throws IOException en caso de algun error.
+     */
+    public synchronized void truncar() throws IOException {
+        this.canal.truncate(0);
+        this.canal.force(true);
+        this.pendientes = 0;
+        this.operaciones = 0;
+    }
+
+    /**
+     * Traspasa las operaciones de la bitacora al final de otro archivo (creandolo si no existe) y luego vacia la
+     * bitacora. Permite compactar en segundo plano: las operaciones traspasadas se siguen reproduciendo al cargar
+     * hasta que la instantanea que las contiene queda guardada y el archivo se elimina.
+     *
+     * @param anterior archivo que recibe las operaciones.
+     * @throws IOException en caso de algun error (la bitacora no se vacia).
+     */
+    public synchronized void rotar(final Path anterior) throws IOException {
+        try (FileChannel origen = FileChannel.open(this.archivo, StandardOpenOption.READ);
+             FileChannel destino = FileChannel.open(anterior, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.APPEND)) {
+            long largo = origen.size();
+            long copiados = 0;
+            while (copiados < largo) {
+                copiados += origen.transferTo(copiados, largo - copiados, destino);
+            }
+            destino.force(true);
+        }
+        this.truncar();
+    }
+
+    /**
+     * @return las operaciones registradas desde la ultima compactacion.
+     */
+    public synchronized int getOperaciones() {
+        return this.operaciones;
+    }
+
+    /**
+     * @return los bytes escritos desde que se abrio la bitacora (sin contar las rotaciones).
+     */
+    public long getBytesEscritos() {
+        return this.bytesEscritos.sum();
+    }
+
+    /**
+     * @return el archivo de la bitacora.
+     */
+    public Path getArchivo() {
+        return this.archivo;
+    }
+
+    /**
+     * Sincroniza y cierra la bitacora.
+     *
+     * @throws IOException en caso de algun error.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.canal.isOpen()) {
+            this.sincronizar();
+            this.canal.close();
+        }
+    }
+
+    /**
+     * @param contenido de la linea.
+     * @return el CRC32 del contenido en hexadecimal.
+     */
+    private static String crc(final CharSequence contenido) {
+        CRC32 crc = new CRC32();
+        crc.update(contenido.toString().getBytes(StandardCharsets.UTF_8));
+        return Long.toHexString(crc.getValue());
+    }
+
+    /**
+     * Escapa los caracteres que separan campos y lineas.
+     *
+     * @param campo a escapar.
+     * @param sb    destino.
+     */
+    private static void escapar(final String campo, final StringBuilder sb) {
+        for (int i = 0; i < campo.length(); i++) {
+            char c = campo.charAt(i);
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * Revierte {@link #escapar(String, StringBuilder)}.
+     *
+     * @param campo a desescapar.
+     * @return el campo original.
+     */
+    private static String desescapar(final String campo) {
+        if (campo.indexOf('\\') < 0) {
+            return campo;
+        }
+        StringBuilder sb = new StringBuilder(campo.length());
+        for (int i = 0; i < campo.length(); i++) {
+            char c = campo.charAt(i);
+            if (c == '\\' && i + 1 < campo.length()) {
+                char siguiente = campo.charAt(++i);
+                switch (siguiente) {
+                    case 't' -> sb.append('\t');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    default -> sb.append(siguiente);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
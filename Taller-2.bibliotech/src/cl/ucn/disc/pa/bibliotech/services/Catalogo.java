@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Catalogo de libros indexado por ISBN.
+ * <p>
+ * Cada libro tiene una posicion fija (id denso) y su disponibilidad (ejemplares disponibles y en prestamo) se
+ * guarda empaquetada en un long que se modifica con compare-and-set, por lo que un prestamo o una devolucion no
+ * toman ningun candado. Ademas, un mapa de bits por id (1 = tiene ejemplares disponibles) permite recorrer los
+ * libros disponibles de a 64 por palabra; marcar un libro prestado o devuelto es O(1) y no copia nada.
+ * <p>
+ * Es seguro para uso concurrente: las busquedas son lecturas optimistas (sin bloqueo) y solo los cambios
+ * estructurales toman el candado de escritura, por el tiempo que toma mover una referencia.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class Catalogo {
+
+    /**
+     * Capacidad inicial del arreglo de libros.
+     */
+    private static final int CAPACIDAD_INICIAL = 16;
+
+    /**
+     * Bits del tamanio de cada segmento de disponibilidad.
+     */
+    private static final int BITS_SEGMENTO = 10;
+
+    /**
+     * Tamanio de cada segmento de disponibilidad.
+     */
+    private static final int TAMANIO_SEGMENTO = 1 << BITS_SEGMENTO;
+
+    /**
+     * Una unidad en la parte alta (ejemplares en prestamo) de la disponibilidad empaquetada.
+     */
+    private static final long UN_PRESTAMO = 1L << 32;
+
+    /**
+     * Los libros del catalogo; la posicion de cada libro es su id denso (las posiciones 0..cantidad-1 estan ocupadas).
+     */
+    private Libro[] libros;
+
+    /**
+     * Cantidad de libros en el catalogo.
+     */
+    private int cantidad;
+
+    /**
+     * Indice ISBN normalizado -> posicion en el arreglo de libros.
+     */
+    private final Map<String, Integer> indice;
+
+    /**
+     * Disponibilidad de cada libro: ejemplares en prestamo en los 32 bits altos y ejemplares disponibles en los 32
+     * bits bajos. Se divide en segmentos que nunca se copian al crecer, para que ningun compare-and-set se pierda.
+     */
+    private volatile AtomicLongArray[] disponibilidad;
+
+    /**
+     * Mapa de bits de los libros con ejemplares disponibles, segmentado igual que la disponibilidad.
+     */
+    private volatile AtomicLongArray[] disponibles;
+
+    /**
+     * Cantidad de bits encendidos en el mapa de bits (libros con ejemplares disponibles).
+     */
+    private final AtomicInteger cantidadDisponibles = new AtomicInteger();
+
+    /**
+     * Candado para los cambios estructurales del arreglo y del indice.
+     */
+    private final StampedLock candado = new StampedLock();
+
+    /**
+     * Pool de los autores y categorias de los libros del catalogo.
+     */
+    private final PoolCadenas cadenas;
+
+    /**
+     * The Constructor: el catalogo tiene su propio pool de cadenas.
+     */
+    public Catalogo() {
+        this(new PoolCadenas());
+    }
+
+    /**
+     * The Constructor.
+     *
+     * @param cadenas pool donde se comparten los autores y categorias de los libros agregados.
+     */
+    public Catalogo(final PoolCadenas cadenas) {
+        this.cadenas = cadenas;
+        this.libros = new Libro[CAPACIDAD_INICIAL];
+        this.cantidad = 0;
+        this.indice = new ConcurrentHashMap<>();
+        this.disponibilidad = new AtomicLongArray[0];
+        this.disponibles = new AtomicLongArray[0];
+    }
+
+    /**
+     * Construye el catalogo a partir de un arreglo de libros.
+     *
+     * @param libros a indexar.
+     */
+    public Catalogo(final Libro[] libros) {
+        this.cadenas = new PoolCadenas();
+        this.libros = new Libro[Math.max(CAPACIDAD_INICIAL, libros.length)];
+        this.cantidad = 0;
+        this.indice = new ConcurrentHashMap<>(Math.max(CAPACIDAD_INICIAL, libros.length));
+        this.disponibilidad = new AtomicLongArray[0];
+        this.disponibles = new AtomicLongArray[0];
+        for (Libro libro : libros) {
+            this.agregar(libro);
+        }
+    }
+
+    /**
+     * @return el pool donde se comparten los autores y categorias de los libros del catalogo.
+     */
+    public PoolCadenas getCadenas() {
+        return this.cadenas;
+    }
+
+    /**
+     * Normaliza un ISBN: elimina guiones y espacios y deja la X de control en mayuscula.
+     *
+     * @param isbn a normalizar.
+     * @return el ISBN normalizado o null si el ISBN es null.
+     */
+    public static String normalizarIsbn(final String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+        StringBuilder sb = null;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            boolean ignorar = c == '-' || c == ' ';
+            if ((ignorar || c == 'x') && sb == null) {
+                // recien aqui el ISBN difiere de su forma normalizada.
+                sb = new StringBuilder(isbn.length());
+                sb.append(isbn, 0, i);
+            }
+            if (sb != null && !ignorar) {
+                sb.append(c == 'x' ? 'X' : c);
+            }
+        }
+        return sb == null ? isbn : sb.toString();
+    }
+
+    /**
+     * Agrega un libro al catalogo con un ejemplar disponible.
+     *
+     * @param libro a agregar.
+     */
+    public void agregar(final Libro libro) {
+        this.agregar(libro, 1);
+    }
+
+    /**
+     * Agrega un libro al catalogo; su autor y su categoria pasan a ser las instancias del pool del catalogo.
+     *
+     * @param libro      a agregar.
+     * @param ejemplares disponibles del libro.
+     */
+    public void agregar(final Libro libro, final int ejemplares) {
+        if (ejemplares < 0) {
+            throw new IllegalArgumentException("La cantidad de ejemplares no puede ser negativa!");
+        }
+        String isbn = normalizarIsbn(libro.getIsbn());
+        libro.compartirCadenas(this.cadenas);
+        long stamp = this.candado.writeLock();
+        try {
+            if (this.indice.containsKey(isbn)) {
+                throw new IllegalArgumentException("El libro con isbn " + libro.getIsbn() + " ya existe en el catalogo!");
+            }
+            this.insertar(isbn, libro, ejemplares);
+        } finally {
+            this.candado.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Agrega un lote de libros al catalogo, cada uno con un ejemplar disponible, tomando el candado una sola vez.
+     * Si alguno de los libros ya existe (o esta repetido en el lote) no se agrega ninguno.
+     *
+     * @param lote de libros a agregar.
+     */
+    public void agregarTodos(final Libro[] lote) {
+        String[] isbns = new String[lote.length];
+        for (int i = 0; i < lote.length; i++) {
+            isbns[i] = normalizarIsbn(lote[i].getIsbn());
+            lote[i].compartirCadenas(this.cadenas);
+        }
+        long stamp = this.candado.writeLock();
+        try {
+            Set<String> vistos = new HashSet<>();
+            for (int i = 0; i < lote.length; i++) {
+                if (this.indice.containsKey(isbns[i]) || !vistos.add(isbns[i])) {
+                    throw new IllegalArgumentException("El libro con isbn " + lote[i].getIsbn() + " ya existe en el catalogo!");
+                }
+            }
+            if (this.cantidad + lote.length > this.libros.length) {
+                this.libros = Arrays.copyOf(this.libros, Math.max(this.cantidad + lote.length, this.libros.length * 2));
+            }
+            for (int i = 0; i < lote.length; i++) {
+                this.insertar(isbns[i], lote[i], 1);
+            }
+        } finally {
+            this.candado.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Inserta un libro con el candado de escritura tomado.
+     *
+     * @param isbn       normalizado del libro.
+     * @param libro      a insertar.
+     * @param ejemplares disponibles del libro.
+     */
+    private void insertar(final String isbn, final Libro libro, final int ejemplares) {
+        if (this.cantidad == this.libros.length) {
+            this.libros = Arrays.copyOf(this.libros, this.libros.length * 2);
+        }
+        int id = this.cantidad;
+        int segmento = id >>> BITS_SEGMENTO;
+        if (segmento == this.disponibilidad.length) {
+            AtomicLongArray[] segmentos = Arrays.copyOf(this.disponibilidad, segmento + 1);
+            segmentos[segmento] = new AtomicLongArray(TAMANIO_SEGMENTO);
+            AtomicLongArray[] bits = Arrays.copyOf(this.disponibles, segmento + 1);
+            bits[segmento] = new AtomicLongArray(TAMANIO_SEGMENTO / Long.SIZE);
+            this.disponibles = bits;
+            this.disponibilidad = segmentos;
+        }
+        this.disponibilidad[segmento].set(id & (TAMANIO_SEGMENTO - 1), ejemplares);
+        this.actualizarBit(id);
+        this.libros[id] = libro;
+        this.indice.put(isbn, id);
+        this.cantidad++;
+    }
+
+    /**
+     * Busca un libro por su ISBN.
+     *
+     * @param isbn a buscar.
+     * @return el libro o null si no fue encontrado.
+     */
+    public Libro buscar(final String isbn) {
+        String llave = normalizarIsbn(isbn);
+
+        // lectura optimista: se valida que ningun cambio estructural haya ocurrido durante la lectura.
+        long stamp = this.candado.tryOptimisticRead();
+        Libro libro = this.leer(llave);
+        if (!this.candado.validate(stamp)) {
+            stamp = this.candado.readLock();
+            try {
+                libro = this.leer(llave);
+            } finally {
+                this.candado.unlockRead(stamp);
+            }
+        }
+        return libro;
+    }
+
+    /**
+     * @param llave ISBN normalizado.
+     * @return el libro en la posicion indexada o null (sin sincronizacion).
+     */
+    private Libro leer(final String llave) {
+        Integer posicion = this.indice.get(llave);
+        Libro[] libros = this.libros;
+        return posicion == null || posicion >= libros.length ? null : libros[posicion];
+    }
+
+    /**
+     * Presta un ejemplar del libro: un unico compare-and-set que gana o falla de inmediato si no quedan ejemplares.
+     *
+     * @param isbn del libro a prestar.
+     * @return true si se presto un ejemplar, false si el libro no existe o no quedan ejemplares disponibles.
+     */
+    public boolean prestar(final String isbn) {
+        Integer id = this.indice.get(normalizarIsbn(isbn));
+        if (id == null) {
+            return false;
+        }
+        AtomicLongArray segmento = this.disponibilidad[id >>> BITS_SEGMENTO];
+        int i = id & (TAMANIO_SEGMENTO - 1);
+        long actual;
+        do {
+            actual = segmento.get(i);
+            if ((int) actual == 0) {
+                return false;
+            }
+        } while (!segmento.compareAndSet(i, actual, actual + UN_PRESTAMO - 1));
+
+        // si era el ultimo ejemplar, el libro deja de estar disponible.
+        if ((int) actual == 1) {
+            this.actualizarBit(id);
+        }
+        return true;
+    }
+
+    /**
+     * Devuelve un ejemplar del libro.
+     *
+     * @param isbn del libro a devolver.
+     * @return true si se devolvio un ejemplar, false si el libro no existe o no tenia ejemplares en prestamo.
+     */
+    public boolean devolver(final String isbn) {
+        Integer id = this.indice.get(normalizarIsbn(isbn));
+        if (id == null) {
+            return false;
+        }
+        AtomicLongArray segmento = this.disponibilidad[id >>> BITS_SEGMENTO];
+        int i = id & (TAMANIO_SEGMENTO - 1);
+        long actual;
+        do {
+            actual = segmento.get(i);
+            if ((actual >>> 32) == 0) {
+                return false;
+            }
+        } while (!segmento.compareAndSet(i, actual, actual - UN_PRESTAMO + 1));
+
+        // si no quedaban ejemplares, el libro vuelve a estar disponible.
+        if ((int) actual == 0) {
+            this.actualizarBit(id);
+        }
+        return true;
+    }
+
+    /**
+     * Deja el bit del libro igual a su disponibilidad. Si otro hilo cambia la disponibilidad mientras tanto, se vuelve
+     * a revisar: el ultimo hilo en revisar deja el bit correcto.
+     *
+     * @param id del libro.
+     */
+    private void actualizarBit(final int id) {
+        AtomicLongArray segmento = this.disponibilidad[id >>> BITS_SEGMENTO];
+        AtomicLongArray bits = this.disponibles[id >>> BITS_SEGMENTO];
+        int i = id & (TAMANIO_SEGMENTO - 1);
+        int palabra = i >>> 6;
+        long mascara = 1L << i;
+        boolean disponible;
+        do {
+            disponible = (int) segmento.get(i) > 0;
+            long actual;
+            long nuevo;
+            do {
+                actual = bits.get(palabra);
+                nuevo = disponible ? actual | mascara : actual & ~mascara;
+            } while (actual != nuevo && !bits.compareAndSet(palabra, actual, nuevo));
+            if (actual != nuevo) {
+                this.cantidadDisponibles.addAndGet(disponible ? 1 : -1);
+            }
+        } while (disponible != (int) segmento.get(i) > 0);
+    }
+
+    /**
+     * Busca el siguiente libro con ejemplares disponibles, recorriendo el mapa de bits de a 64 libros.
+     *
+     * @param desde id desde el cual buscar (inclusive).
+     * @return el id del siguiente libro disponible o -1 si no hay mas.
+     */
+    public int siguienteDisponible(final int desde) {
+        AtomicLongArray[] bits = this.disponibles;
+        int id = Math.max(0, desde);
+        while ((id >>> BITS_SEGMENTO) < bits.length) {
+            AtomicLongArray segmento = bits[id >>> BITS_SEGMENTO];
+            int i = id & (TAMANIO_SEGMENTO - 1);
+            long palabra = segmento.get(i >>> 6) & (-1L << i);
+            if (palabra != 0) {
+                return (id & ~63) + Long.numberOfTrailingZeros(palabra);
+            }
+            id = (id & ~63) + 64;
+        }
+        return -1;
+    }
+
+    /**
+     * @param id del libro.
+     * @return el libro con ese id.
+     */
+    public Libro obtener(final int id) {
+        long stamp = this.candado.tryOptimisticRead();
+        Libro libro = this.libros[id];
+        if (!this.candado.validate(stamp)) {
+            stamp = this.candado.readLock();
+            try {
+                libro = this.libros[id];
+            } finally {
+                this.candado.unlockRead(stamp);
+            }
+        }
+        return libro;
+    }
+
+    /**
+     * @param isbn del libro.
+     * @return el id (posicion) del libro en el catalogo o -1 si no existe.
+     */
+    public int buscarId(final String isbn) {
+        Integer id = this.indice.get(normalizarIsbn(isbn));
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * @param id del libro.
+     * @return true si el libro tiene al menos un ejemplar disponible.
+     */
+    public boolean estaDisponible(final int id) {
+        AtomicLongArray[] bits = this.disponibles;
+        int i = id & (TAMANIO_SEGMENTO - 1);
+        return (id >>> BITS_SEGMENTO) < bits.length && (bits[id >>> BITS_SEGMENTO].get(i >>> 6) & (1L << i)) != 0;
+    }
+
+    /**
+     * @param isbn del libro.
+     * @return los ejemplares disponibles del libro (0 si no existe).
+     */
+    public int getEjemplaresDisponibles(final String isbn) {
+        Integer id = this.indice.get(normalizarIsbn(isbn));
+        return id == null ? 0 : (int) this.disponibilidad[id >>> BITS_SEGMENTO].get(id & (TAMANIO_SEGMENTO - 1));
+    }
+
+    /**
+     * @param isbn del libro.
+     * @return los ejemplares del libro en prestamo (0 si no existe).
+     */
+    public int getEjemplaresEnPrestamo(final String isbn) {
+        Integer id = this.indice.get(normalizarIsbn(isbn));
+        return id == null ? 0
+                : (int) (this.disponibilidad[id >>> BITS_SEGMENTO].get(id & (TAMANIO_SEGMENTO - 1)) >>> 32);
+    }
+
+    /**
+     * @return la cantidad de libros en el catalogo.
+     */
+    public int getCantidad() {
+        long stamp = this.candado.readLock();
+        try {
+            return this.cantidad;
+        } finally {
+            this.candado.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return la cantidad de libros con al menos un ejemplar disponible (sin recorrer el catalogo).
+     */
+    public int getCantidadDisponibles() {
+        return this.cantidadDisponibles.get();
+    }
+
+    /**
+     * @return una copia de los libros del catalogo (disponibles o no).
+     */
+    public Libro[] obtenerLibros() {
+        long stamp = this.candado.readLock();
+        try {
+            return Arrays.copyOf(this.libros, this.cantidad);
+        } finally {
+            this.candado.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return los libros que tienen al menos un ejemplar disponible.
+     */
+    public Libro[] obtenerLibrosDisponibles() {
+        long stamp = this.candado.readLock();
+        try {
+            Libro[] disponibles = new Libro[this.cantidad];
+            int n = 0;
+            for (int id = this.siguienteDisponible(0); id >= 0; id = this.siguienteDisponible(id + 1)) {
+                disponibles[n++] = this.libros[id];
+            }
+            return Arrays.copyOf(disponibles, n);
+        } finally {
+            this.candado.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,609 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Catalogo compacto por columnas, para catalogos de millones de libros que se recorren mas de lo que se modifican.
+ * <p>
+ * En lugar de un objeto {@link Libro} por libro, cada campo es un arreglo primitivo ({@link ArregloEnteros} o
+ * {@link ArregloLargos}) indexado por el id del libro: el ISBN (normalizado) empaquetado en un long, el titulo como
+ * bytes UTF-8 en un solo bloque, el autor y la categoria como ids de un diccionario y la calificacion como suma
+ * (centesimas) y cantidad de calificaciones. Un recorrido (por ejemplo, contar los libros de una categoria sobre
+ * cierta calificacion) lee arreglos contiguos y compara enteros.
+ * Los indices tambien son tablas hash de llaves long primitivas, sin boxing ni nodos por entrada.
+ * <p>
+ * Los libros se entregan como un {@link Libro} construido al pedirlo (una vista desconectada: calificarla no cambia
+ * el catalogo; para eso esta {@link #calificar(int, double)}). No es seguro para uso concurrente.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class CatalogoColumnar {
+
+    /**
+     * Capacidad inicial de las columnas.
+     */
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    /**
+     * ISBN que no se pudo empaquetar (se guarda como texto).
+     */
+    private static final long SIN_EMPAQUE = -1L;
+
+    /**
+     * Bit que marca, en {@link #isbns} y en las llaves del indice, un ISBN guardado como texto (un ISBN empaquetado
+     * nunca lo tiene).
+     */
+    private static final long BIT_TEXTO = Long.MIN_VALUE;
+
+    /**
+     * Maxima cantidad de digitos de un ISBN empaquetado.
+     */
+    private static final int DIGITOS_MAXIMOS = 17;
+
+    /**
+     * Bit que indica un digito de control X al final del ISBN empaquetado.
+     */
+    private static final long BIT_X = 1L << 57;
+
+    /**
+     * Posicion del largo del ISBN en el long empaquetado.
+     */
+    private static final int BITS_LARGO = 58;
+
+    /**
+     * Cantidad de libros.
+     */
+    private int cantidad;
+
+    /**
+     * ISBN empaquetado de cada libro o, si no se pudo empaquetar, {@link #BIT_TEXTO} mas su posicion en
+     * {@link #isbnsTexto}.
+     */
+    private final ArregloLargos isbns = new ArregloLargos(CAPACIDAD_INICIAL);
+
+    /**
+     * Los ISBN que no se pudieron empaquetar (normalizados, en UTF-8), uno despues del otro.
+     */
+    private byte[] isbnsTexto = new byte[0];
+
+    /**
+     * Posicion en {@link #isbnsTexto} donde termina cada ISBN (comienza donde termina el anterior).
+     */
+    private final ArregloEnteros finIsbnsTexto = new ArregloEnteros(0);
+
+    /**
+     * Id de cada libro por su ISBN empaquetado o, si no se pudo empaquetar, por {@link #BIT_TEXTO} mas el hash de su
+     * texto.
+     */
+    private final TablaIds indice = new TablaIds();
+
+    /**
+     * Los titulos en UTF-8, uno despues del otro.
+     */
+    private byte[] titulos = new byte[CAPACIDAD_INICIAL * 32];
+
+    /**
+     * Bytes ocupados de {@link #titulos}.
+     */
+    private int largoTitulos;
+
+    /**
+     * Posicion en {@link #titulos} donde termina el titulo de cada libro (comienza donde termina el anterior).
+     */
+    private final ArregloEnteros finTitulos = new ArregloEnteros(CAPACIDAD_INICIAL);
+
+    /**
+     * Id en el diccionario del autor de cada libro.
+     */
+    private final ArregloEnteros autores = new ArregloEnteros(CAPACIDAD_INICIAL);
+
+    /**
+     * Id en el diccionario de la categoria de cada libro.
+     */
+    private final ArregloEnteros categorias = new ArregloEnteros(CAPACIDAD_INICIAL);
+
+    /**
+     * Suma de las calificaciones de cada libro, en centesimas.
+     */
+    private final ArregloLargos sumasCentesimas = new ArregloLargos(CAPACIDAD_INICIAL);
+
+    /**
+     * Cantidad de calificaciones de cada libro.
+     */
+    private final ArregloLargos votos = new ArregloLargos(CAPACIDAD_INICIAL);
+
+    /**
+     * Diccionario de los autores.
+     */
+    private final Diccionario diccionarioAutores = new Diccionario();
+
+    /**
+     * Diccionario de las categorias.
+     */
+    private final Diccionario diccionarioCategorias = new Diccionario();
+
+    /**
+     * Lee un catalogo desde un archivo de libros (libros.json), de forma incremental.
+     *
+     * @param archivo a leer.
+     * @return el catalogo.
+     * @throws IOException en caso de algun error.
+     */
+    public static CatalogoColumnar leer(final String archivo) throws IOException {
+        CatalogoColumnar catalogo = new CatalogoColumnar();
+        LectorJson.leerLibros(archivo, catalogo::agregar);
+        return catalogo;
+    }
+
+    /**
+     * Agrega un libro (ya validado por su constructor) al catalogo.
+     *
+     * @param libro a agregar.
+     * @return el id del libro.
+     */
+    public int agregar(final Libro libro) {
+        String isbn = libro.getIsbn();
+        if (this.buscarId(isbn) >= 0) {
+            throw new IllegalArgumentException("El libro con isbn " + isbn + " ya existe en el catalogo!");
+        }
+        int id = this.cantidad;
+
+        String normalizado = Catalogo.normalizarIsbn(isbn);
+        long empaquetado = empaquetar(normalizado);
+        if (empaquetado == SIN_EMPAQUE) {
+            this.isbns.agregar(BIT_TEXTO | this.agregarIsbnTexto(normalizado));
+            this.indice.agregar(llaveTexto(normalizado), id);
+        } else {
+            this.isbns.agregar(empaquetado);
+            this.indice.agregar(empaquetado, id);
+        }
+
+        byte[] titulo = libro.getTitulo().getBytes(StandardCharsets.UTF_8);
+        if (this.largoTitulos + titulo.length > this.titulos.length) {
+            this.titulos = Arrays.copyOf(this.titulos, Math.max(this.largoTitulos + titulo.length,
+                    this.titulos.length * 2));
+        }
+        System.arraycopy(titulo, 0, this.titulos, this.largoTitulos, titulo.length);
+        this.largoTitulos += titulo.length;
+        this.finTitulos.agregar(this.largoTitulos);
+
+        this.autores.agregar(this.diccionarioAutores.id(libro.getAutor()));
+        this.categorias.agregar(this.diccionarioCategorias.id(libro.getCategoria()));
+        long acumulado = libro.getAcumulado();
+        this.sumasCentesimas.agregar(Libro.sumaCentesimas(acumulado));
+        this.votos.agregar(Libro.votos(acumulado));
+
+        this.cantidad++;
+        return id;
+    }
+
+    /**
+     * Agrega un ISBN que no se pudo empaquetar a {@link #isbnsTexto}.
+     *
+     * @param isbn normalizado.
+     * @return la posicion del ISBN.
+     */
+    private int agregarIsbnTexto(final String isbn) {
+        byte[] bytes = isbn.getBytes(StandardCharsets.UTF_8);
+        int posicion = this.finIsbnsTexto.getCantidad();
+        int inicio = posicion == 0 ? 0 : this.finIsbnsTexto.obtener(posicion - 1);
+        if (inicio + bytes.length > this.isbnsTexto.length) {
+            this.isbnsTexto = Arrays.copyOf(this.isbnsTexto, Math.max(inicio + bytes.length,
+                    this.isbnsTexto.length * 2));
+        }
+        System.arraycopy(bytes, 0, this.isbnsTexto, inicio, bytes.length);
+        this.finIsbnsTexto.agregar(inicio + bytes.length);
+        return posicion;
+    }
+
+    /**
+     * @param posicion del ISBN en {@link #isbnsTexto}.
+     * @return el ISBN.
+     */
+    private String isbnTexto(final int posicion) {
+        int inicio = posicion == 0 ? 0 : this.finIsbnsTexto.obtener(posicion - 1);
+        return new String(this.isbnsTexto, inicio, this.finIsbnsTexto.obtener(posicion) - inicio,
+                StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return la cantidad de libros.
+     */
+    public int getCantidad() {
+        return this.cantidad;
+    }
+
+    /**
+     * @param isbn del libro.
+     * @return el id del libro o -1 si no existe.
+     */
+    public int buscarId(final String isbn) {
+        String normalizado = Catalogo.normalizarIsbn(isbn);
+        long empaquetado = empaquetar(normalizado);
+        if (empaquetado != SIN_EMPAQUE) {
+            // un ISBN empaquetado identifica al libro: la llave no se repite.
+            return this.indice.buscar(empaquetado, id -> true);
+        }
+        return this.indice.buscar(llaveTexto(normalizado),
+                id -> this.isbnTexto((int) (this.isbns.obtener(id) & ~BIT_TEXTO)).equals(normalizado));
+    }
+
+    /**
+     * @param isbn del libro.
+     * @return la vista del libro o null si no existe.
+     */
+    public Libro buscar(final String isbn) {
+        int id = this.buscarId(isbn);
+        return id < 0 ? null : this.obtener(id);
+    }
+
+    /**
+     * Construye la vista de un libro.
+     *
+     * @param id del libro.
+     * @return el libro (desconectado del catalogo).
+     */
+    public Libro obtener(final int id) {
+        this.validarId(id);
+        Libro libro = new Libro(this.getIsbn(id), this.getTitulo(id),
+                this.diccionarioAutores.valor(this.autores.obtener(id)),
+                this.diccionarioCategorias.valor(this.categorias.obtener(id)), 0.0, 0);
+        libro.establecerCalificacion(this.sumasCentesimas.obtener(id), this.votos.obtener(id));
+        return libro;
+    }
+
+    /**
+     * @param id del libro.
+     * @return el ISBN (normalizado) del libro.
+     */
+    public String getIsbn(final int id) {
+        this.validarId(id);
+        long empaquetado = this.isbns.obtener(id);
+        return (empaquetado & BIT_TEXTO) != 0 ? this.isbnTexto((int) (empaquetado & ~BIT_TEXTO))
+                : desempaquetar(empaquetado);
+    }
+
+    /**
+     * @param id del libro.
+     * @return el titulo del libro.
+     */
+    public String getTitulo(final int id) {
+        this.validarId(id);
+        int inicio = id == 0 ? 0 : this.finTitulos.obtener(id - 1);
+        return new String(this.titulos, inicio, this.finTitulos.obtener(id) - inicio, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param id del libro.
+     * @return la categoria del libro.
+     */
+    public String getCategoria(final int id) {
+        this.validarId(id);
+        return this.diccionarioCategorias.valor(this.categorias.obtener(id));
+    }
+
+    /**
+     * @param id del libro.
+     * @return la calificacion promedio del libro (0.0 si no tiene calificaciones).
+     */
+    public double getCalificacion(final int id) {
+        this.validarId(id);
+        long votos = this.votos.obtener(id);
+        return votos == 0 ? 0.0 : this.sumasCentesimas.obtener(id) / 100.0 / votos;
+    }
+
+    /**
+     * Agrega una calificacion a un libro.
+     *
+     * @param id           del libro.
+     * @param calificacion recibida.
+     */
+    public void calificar(final int id, final double calificacion) {
+        this.validarId(id);
+        this.sumasCentesimas.establecer(id, this.sumasCentesimas.obtener(id) + Math.round(calificacion * 100));
+        this.votos.establecer(id, this.votos.obtener(id) + 1);
+    }
+
+    /**
+     * Cuenta los libros de una categoria con al menos cierta calificacion, recorriendo solo las columnas de
+     * categoria y calificacion.
+     *
+     * @param categoria          de los libros (null para todas).
+     * @param calificacionMinima de los libros.
+     * @return la cantidad de libros.
+     */
+    public int contar(final String categoria, final double calificacionMinima) {
+        int buscada = categoria == null ? -1 : this.diccionarioCategorias.buscar(categoria);
+        if (categoria != null && buscada < 0) {
+            return 0;
+        }
+        long minimaCentesimas = Math.round(calificacionMinima * 100);
+        int total = 0;
+        for (int id = 0; id < this.cantidad; id++) {
+            if (buscada >= 0 && this.categorias.obtener(id) != buscada) {
+                continue;
+            }
+            // promedio >= minima, sin dividir: suma >= minima * votos.
+            long votos = this.votos.obtener(id);
+            if (minimaCentesimas <= 0 || votos > 0 && this.sumasCentesimas.obtener(id) >= minimaCentesimas * votos) {
+                total++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return los nombres de las categorias, en el orden de sus ids.
+     */
+    public String[] obtenerCategorias() {
+        return this.diccionarioCategorias.valores.aArreglo(new String[0]);
+    }
+
+    /**
+     * @return la cantidad de libros de cada categoria, en el orden de {@link #obtenerCategorias()}.
+     */
+    public int[] contarPorCategoria() {
+        int[] cuenta = new int[this.diccionarioCategorias.valores.getCantidad()];
+        for (int id = 0; id < this.cantidad; id++) {
+            cuenta[this.categorias.obtener(id)]++;
+        }
+        return cuenta;
+    }
+
+    /**
+     * @return una estimacion de los bytes ocupados por las columnas y los indices (sin los strings de los
+     * diccionarios).
+     */
+    public long getBytesColumnas() {
+        return (long) this.isbns.getCapacidad() * (Long.BYTES * 3 + Integer.BYTES * 3) + this.titulos.length
+                + this.isbnsTexto.length + (long) this.finIsbnsTexto.getCapacidad() * Integer.BYTES
+                + this.indice.getBytes() + this.diccionarioAutores.getBytes() + this.diccionarioCategorias.getBytes();
+    }
+
+    /**
+     * @param id a validar.
+     */
+    private void validarId(final int id) {
+        if (id < 0 || id >= this.cantidad) {
+            throw new IndexOutOfBoundsException("Libro " + id + " fuera de rango: " + this.cantidad);
+        }
+    }
+
+    /**
+     * Empaqueta un ISBN de hasta 17 digitos (el ultimo puede ser X) en un long: el largo en los bits 58 a 63, la X en
+     * el bit 57 y los digitos como numero en el resto.
+     *
+     * @param isbn a empaquetar.
+     * @return el ISBN empaquetado o {@link #SIN_EMPAQUE} si el ISBN no se puede empaquetar.
+     */
+    static long empaquetar(final String isbn) {
+        int largo = isbn.length();
+        if (largo == 0 || largo > DIGITOS_MAXIMOS) {
+            return SIN_EMPAQUE;
+        }
+        boolean x = isbn.charAt(largo - 1) == 'X';
+        long numero = 0;
+        for (int i = 0; i < (x ? largo - 1 : largo); i++) {
+            char c = isbn.charAt(i);
+            if (c < '0' || c > '9') {
+                return SIN_EMPAQUE;
+            }
+            numero = numero * 10 + (c - '0');
+        }
+        return (long) largo << BITS_LARGO | (x ? BIT_X : 0) | numero;
+    }
+
+    /**
+     * @param texto a dispersar.
+     * @return un hash de 64 bits del texto.
+     */
+    private static long hash(final String texto) {
+        long h = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            h = h * 31 + texto.charAt(i);
+        }
+        return h;
+    }
+
+    /**
+     * @param isbn normalizado que no se pudo empaquetar.
+     * @return la llave del ISBN en el indice.
+     */
+    private static long llaveTexto(final String isbn) {
+        return BIT_TEXTO | hash(isbn);
+    }
+
+    /**
+     * @param empaquetado ISBN empaquetado por {@link #empaquetar(String)}.
+     * @return el ISBN.
+     */
+    static String desempaquetar(final long empaquetado) {
+        int largo = (int) (empaquetado >>> BITS_LARGO);
+        boolean x = (empaquetado & BIT_X) != 0;
+        long numero = empaquetado & (BIT_X - 1);
+        char[] digitos = new char[largo];
+        int i = largo - 1;
+        if (x) {
+            digitos[i--] = 'X';
+        }
+        for (; i >= 0; i--) {
+            digitos[i] = (char) ('0' + numero % 10);
+            numero /= 10;
+        }
+        return new String(digitos);
+    }
+
+    /**
+     * Diccionario de strings repetidos: cada valor distinto tiene un id entero.
+     */
+    private static final class Diccionario {
+
+        /**
+         * Los valores, por id.
+         */
+        private final ArregloDinamico<String> valores = new ArregloDinamico<>();
+
+        /**
+         * El id de cada valor, por el hash del valor.
+         */
+        private final TablaIds ids = new TablaIds();
+
+        /**
+         * @param valor a buscar o agregar.
+         * @return el id del valor.
+         */
+        private int id(final String valor) {
+            int id = this.buscar(valor);
+            if (id < 0) {
+                id = this.valores.getCantidad();
+                this.valores.agregar(valor);
+                this.ids.agregar(hash(valor), id);
+            }
+            return id;
+        }
+
+        /**
+         * @param valor a buscar.
+         * @return el id del valor o -1 si no esta.
+         */
+        private int buscar(final String valor) {
+            return this.ids.buscar(hash(valor), id -> this.valores.obtener(id).equals(valor));
+        }
+
+        /**
+         * @return los bytes ocupados por el indice de los valores.
+         */
+        private long getBytes() {
+            return this.ids.getBytes();
+        }
+
+        /**
+         * @param id del valor.
+         * @return el valor.
+         */
+        private String valor(final int id) {
+            return this.valores.obtener(id);
+        }
+    }
+
+    /**
+     * Tabla hash de direccionamiento abierto (sondeo lineal) de llaves long a ids, como {@link IndiceSocios}. Una
+     * llave (un hash) se puede repetir: quien busca decide cual de los ids con esa llave es el suyo.
+     */
+    private static final class TablaIds {
+
+        /**
+         * Capacidad minima de la tabla (potencia de 2).
+         */
+        private static final int CAPACIDAD_MINIMA = 16;
+
+        /**
+         * Las llaves de cada casilla.
+         */
+        private long[] llaves = new long[CAPACIDAD_MINIMA];
+
+        /**
+         * El id mas 1 de cada casilla (0 = casilla vacia).
+         */
+        private int[] valores = new int[CAPACIDAD_MINIMA];
+
+        /**
+         * Cantidad de ids en la tabla.
+         */
+        private int cantidad;
+
+        /**
+         * Dispersa la llave para que llaves consecutivas no queden en casillas consecutivas.
+         *
+         * @param llave   a dispersar.
+         * @param mascara de la tabla (capacidad - 1).
+         * @return la casilla inicial de la llave.
+         */
+        private static int casilla(final long llave, final int mascara) {
+            long h = llave * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mascara;
+        }
+
+        /**
+         * Agrega un id (sin revisar si la llave ya estaba).
+         *
+         * @param llave del id.
+         * @param id    a agregar.
+         */
+        private void agregar(final long llave, final int id) {
+            // factor de carga maximo de 0.5.
+            if ((this.cantidad + 1) * 2 > this.llaves.length) {
+                this.crecer();
+            }
+            this.ubicar(llave, id + 1);
+            this.cantidad++;
+        }
+
+        /**
+         * @param llave    a buscar.
+         * @param coincide decide si un id con la llave es el buscado.
+         * @return el primer id con la llave que coincide o -1 si no hay.
+         */
+        private int buscar(final long llave, final IntPredicate coincide) {
+            long[] llaves = this.llaves;
+            int[] valores = this.valores;
+            int mascara = llaves.length - 1;
+            int i = casilla(llave, mascara);
+            int valor;
+            while ((valor = valores[i]) != 0) {
+                if (llaves[i] == llave && coincide.test(valor - 1)) {
+                    return valor - 1;
+                }
+                i = (i + 1) & mascara;
+            }
+            return -1;
+        }
+
+        /**
+         * @return los bytes ocupados por la tabla.
+         */
+        private long getBytes() {
+            return (long) this.llaves.length * (Long.BYTES + Integer.BYTES);
+        }
+
+        /**
+         * Pone un valor en la primera casilla vacia desde la casilla de su llave.
+         *
+         * @param llave del valor.
+         * @param valor id mas 1.
+         */
+        private void ubicar(final long llave, final int valor) {
+            int mascara = this.llaves.length - 1;
+            int i = casilla(llave, mascara);
+            while (this.valores[i] != 0) {
+                i = (i + 1) & mascara;
+            }
+            this.llaves[i] = llave;
+            this.valores[i] = valor;
+        }
+
+        /**
+         * Duplica la capacidad de la tabla y reubica todos los ids.
+         */
+        private void crecer() {
+            long[] llavesAnteriores = this.llaves;
+            int[] valoresAnteriores = this.valores;
+            this.llaves = new long[llavesAnteriores.length * 2];
+            this.valores = new int[valoresAnteriores.length * 2];
+            for (int j = 0; j < valoresAnteriores.length; j++) {
+                if (valoresAnteriores[j] != 0) {
+                    this.ubicar(llavesAnteriores[j], valoresAnteriores[j]);
+                }
+            }
+        }
+    }
+}
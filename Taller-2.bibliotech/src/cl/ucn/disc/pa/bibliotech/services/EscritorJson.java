@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+import cl.ucn.disc.pa.bibliotech.model.Socio;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.IntFunction;
+
+/**
+ * Escritor incremental de libros.json y socios.json con un {@link JsonWriter}, en el mismo formato que
+ * lee {@link LectorJson}. Los archivos se reemplazan de forma atomica ({@link EscrituraAtomica}).
+ *
+ * @author Programacion Avanzada.
+ */
+public final class EscritorJson {
+
+    /**
+     * Tamanio del buffer de escritura.
+     */
+    private static final int TAMANIO_BUFFER = 64 * 1024;
+
+    /**
+     * Constructor privado: nadie puede instanciar esta clase.
+     */
+    private EscritorJson() {
+        // nothing here
+    }
+
+    /**
+     * Escribe los libros en un archivo.
+     *
+     * @param archivo destino.
+     * @param libros  a escribir.
+     * @throws IOException en caso de algun error.
+     */
+    public static void escribirLibros(final String archivo, final Libro[] libros) throws IOException {
+        escribirLibros(Path.of(archivo), libros.length, i -> libros[i]);
+    }
+
+    /**
+     * Escribe los libros en un archivo, pidiendolos uno a uno (no necesitan estar todos en memoria).
+     *
+     * @param archivo  destino.
+     * @param cantidad de libros.
+     * @param libros   entrega el libro de cada posicion.
+     * @throws IOException en caso de algun error.
+     */
+    static void escribirLibros(final Path archivo, final int cantidad, final IntFunction<Libro> libros)
+            throws IOException {
+        EscrituraAtomica.escribir(archivo, out -> {
+            try (JsonWriter writer = abrir(out)) {
+                writer.beginArray();
+                for (int i = 0; i < cantidad; i++) {
+                    escribirLibro(writer, libros.apply(i), null);
+                }
+                writer.endArray();
+            }
+        });
+    }
+
+    /**
+     * Escribe los socios en un archivo.
+     *
+     * @param archivo destino.
+     * @param socios  a escribir.
+     * @throws IOException en caso de algun error.
+     */
+    public static void escribirSocios(final String archivo, final Socio[] socios) throws IOException {
+        escribirSocios(Path.of(archivo), socios.length, i -> socios[i]);
+    }
+
+    /**
+     * Escribe los socios en un archivo, pidiendolos uno a uno (no necesitan estar todos en memoria).
+     *
+     * @param archivo  destino.
+     * @param cantidad de socios.
+     * @param socios   entrega el socio de cada posicion.
+     * @throws IOException en caso de algun error.
+     */
+    static void escribirSocios(final Path archivo, final int cantidad, final IntFunction<Socio> socios)
+            throws IOException {
+        EscrituraAtomica.escribir(archivo, out -> {
+            try (JsonWriter writer = abrir(out)) {
+                writer.beginArray();
+                for (int i = 0; i < cantidad; i++) {
+                    Socio socio = socios.apply(i);
+                    writer.beginObject();
+                    writer.name("nombre").value(socio.getNombre());
+                    writer.name("apellido").value(socio.getApellido());
+                    writer.name("correoElectronico").value(socio.getCorreoElectronico());
+                    writer.name("numeroDeSocio").value(socio.getNumeroDeSocio());
+                    writer.name("contrasenia").value(socio.getContrasenia());
+                    writer.name("librosEnPrestamo").beginArray();
+                    for (Libro libro : socio.getLibrosEnPrestamo()) {
+                        escribirLibro(writer, libro, socio.getVencimiento(libro.getIsbn()).toString());
+                    }
+                    writer.endArray();
+                    writer.endObject();
+                }
+                writer.endArray();
+            }
+        });
+    }
+
+    /**
+     * Escribe los libros en formato JSON lines (un objeto por linea, sin indentar), el que lee
+     * {@link ImportadorLibros}.
+     *
+     * @param archivo  destino.
+     * @param cantidad de libros.
+     * @param libros   entrega el libro de cada posicion.
+     * @throws IOException en caso de algun error.
+     */
+    static void escribirJsonLineas(final Path archivo, final int cantidad, final IntFunction<Libro> libros)
+            throws IOException {
+        EscrituraAtomica.escribir(archivo, out -> {
+            BufferedWriter lineas = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                    TAMANIO_BUFFER);
+            // el JsonWriter escribe directo en el BufferedWriter: los saltos de linea quedan entre los objetos.
+            try (JsonWriter writer = new JsonWriter(lineas)) {
+                writer.setLenient(true);
+                for (int i = 0; i < cantidad; i++) {
+                    escribirLibro(writer, libros.apply(i), null);
+                    lineas.write('\n');
+                }
+            }
+        });
+    }
+
+    /**
+     * Abre un escritor incremental, con el mismo formato indentado que Gson.
+     *
+     * @param out donde escribir.
+     * @return el escritor.
+     */
+    private static JsonWriter abrir(final OutputStream out) {
+        JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                TAMANIO_BUFFER));
+        writer.setIndent("  ");
+        return writer;
+    }
+
+    /**
+     * Escribe un objeto libro.
+     *
+     * @param writer      a utilizar.
+     * @param libro       a escribir.
+     * @param vencimiento del prestamo del libro (null si no esta en prestamo).
+     * @throws IOException en caso de algun error.
+     */
+    private static void escribirLibro(final JsonWriter writer, final Libro libro, final String vencimiento)
+            throws IOException {
+        writer.beginObject();
+        writer.name("isbn").value(libro.getIsbn());
+        writer.name("titulo").value(libro.getTitulo());
+        writer.name("autor").value(libro.getAutor());
+        writer.name("categoria").value(libro.getCategoria());
+        long acumulado = libro.getAcumulado();
+        writer.name("calificacion").value(Libro.promedio(acumulado));
+        writer.name("votos").value(Libro.votos(acumulado));
+        if (vencimiento != null) {
+            writer.name("vencimiento").value(vencimiento);
+        }
+        writer.endObject();
+    }
+}
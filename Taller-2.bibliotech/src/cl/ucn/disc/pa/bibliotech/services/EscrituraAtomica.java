@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reemplaza un archivo de forma atomica: escribe un archivo temporal en el mismo directorio, lo fuerza al disco
+ * (fsync) y lo renombra sobre el destino. Una caida a mitad de la escritura deja el archivo anterior intacto.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class EscrituraAtomica {
+
+    /**
+     * Escribe el contenido de un archivo.
+     */
+    @FunctionalInterface
+    public interface Contenido {
+
+        /**
+         * @param out donde escribir (cerrarlo solo lo vacia: el archivo se fuerza y se renombra al terminar).
+         * @throws IOException en caso de algun error.
+         */
+        void escribir(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Constructor privado: nadie puede instanciar esta clase.
+     */
+    private EscrituraAtomica() {
+        // nothing here
+    }
+
+    /**
+     * Reemplaza un archivo con el contenido indicado.
+     *
+     * @param archivo   a reemplazar.
+     * @param contenido a escribir.
+     * @throws IOException en caso de algun error (el archivo anterior queda intacto).
+     */
+    public static void escribir(final Path archivo, final Contenido contenido) throws IOException {
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            OutputStream out = new FilterOutputStream(Channels.newOutputStream(canal)) {
+                @Override
+                public void write(final byte[] b, final int off, final int len) throws IOException {
+                    this.out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    // el canal se cierra despues del fsync.
+                    this.flush();
+                }
+            };
+            contenido.escribir(out);
+            out.flush();
+            canal.force(true);
+        } catch (IOException | RuntimeException ex) {
+            Files.deleteIfExists(temporal);
+            throw ex;
+        }
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        sincronizarDirectorio(archivo);
+    }
+
+    /**
+     * Fuerza al disco el directorio del archivo, para que el renombre sobreviva a una caida. No todos los sistemas
+     * permiten abrir un directorio: en ese caso el renombre queda en manos del sistema operativo.
+     *
+     * @param archivo renombrado.
+     */
+    private static void sincronizarDirectorio(final Path archivo) {
+        Path directorio = archivo.toAbsolutePath().getParent();
+        if (directorio == null) {
+            return;
+        }
+        try (FileChannel canal = FileChannel.open(directorio, StandardOpenOption.READ)) {
+            canal.force(true);
+        } catch (IOException ex) {
+            // no soportado (por ejemplo, en Windows).
+        }
+    }
+}
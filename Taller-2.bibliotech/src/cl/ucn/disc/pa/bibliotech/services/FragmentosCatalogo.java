@@ -0,0 +1,428 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * Catalogo guardado en fragmentos: los libros se reparten por el hash de su ISBN en varios archivos binarios, que se
+ * cargan recien cuando se necesita un libro del fragmento (o todos en paralelo, cuando se recorre el catalogo).
+ * <p>
+ * Formato de cada fragmento (big-endian): cabecera (numero magico, version, cantidad de fragmentos, numero del
+ * fragmento, cantidad de libros, largo y CRC32 del contenido) y luego el contenido: la tabla de strings repetidos y
+ * los libros, con la misma codificacion de {@link InstantaneaBinaria}. Un fragmento que no existe esta vacio.
+ * <p>
+ * Los fragmentos aun no tienen un indice de posiciones por ISBN: un fragmento siempre se carga completo en el
+ * {@link Catalogo}, que es el indice en memoria, incluso para buscar un solo libro o un ISBN que no existe.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class FragmentosCatalogo {
+
+    /**
+     * Numero magico: "BTFR".
+     */
+    private static final int MAGICO = 0x42544652;
+
+    /**
+     * Version del formato.
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * Tamanio de la cabecera, en bytes.
+     */
+    private static final int TAMANIO_CABECERA = 4 + 2 + 4 + 4 + 4 + 4 + 8;
+
+    /**
+     * Posicion en la cabecera de la cantidad de libros del fragmento (despues de magico, version, cantidad y numero).
+     */
+    private static final int POSICION_LIBROS = 4 + 2 + 4 + 4;
+
+    /**
+     * Tamanio del buffer de escritura.
+     */
+    private static final int TAMANIO_BUFFER = 64 * 1024;
+
+    /**
+     * Directorio de los fragmentos.
+     */
+    private final Path directorio;
+
+    /**
+     * Cantidad de fragmentos.
+     */
+    private final int cantidad;
+
+    /**
+     * Si los fragmentos ya existian al abrirlos.
+     */
+    private final boolean existian;
+
+    /**
+     * Recibe los libros de cada fragmento cargado (puede recibir fragmentos distintos desde varios hilos a la vez).
+     */
+    private final Consumer<Libro[]> cargador;
+
+    /**
+     * Si cada fragmento ya esta cargado (1) o no (0).
+     */
+    private final AtomicIntegerArray cargados;
+
+    /**
+     * Cantidad de fragmentos que faltan por cargar.
+     */
+    private final AtomicInteger faltantes;
+
+    /**
+     * Candado de cada fragmento, para cargarlo una sola vez.
+     */
+    private final Object[] candados;
+
+    /**
+     * Bytes leidos de los fragmentos.
+     */
+    private final LongAdder bytesLeidos = new LongAdder();
+
+    /**
+     * Bytes escritos en los fragmentos.
+     */
+    private final LongAdder bytesEscritos = new LongAdder();
+
+    /**
+     * The Constructor. Si el directorio ya tiene fragmentos se usa la cantidad con que fueron creados y se cargan a
+     * medida que se piden; si no, se considera que todos los libros ya estan en memoria (y se deben guardar).
+     *
+     * @param directorio de los fragmentos.
+     * @param cantidad   de fragmentos, si aun no existen (se ignora si ya existen).
+     * @param cargador   de los libros de cada fragmento.
+     * @throws IOException si un fragmento existente no se puede leer.
+     */
+    public FragmentosCatalogo(final Path directorio, final int cantidad, final Consumer<Libro[]> cargador)
+            throws IOException {
+        this.directorio = directorio;
+        this.cargador = cargador;
+
+        Path primero = archivo(directorio, 0);
+        this.existian = Files.exists(primero);
+        if (!this.existian && cantidad <= 0) {
+            throw new IllegalArgumentException("La cantidad de fragmentos debe ser positiva!");
+        }
+        this.cantidad = this.existian ? leerCabecera(primero).getInt(6) : cantidad;
+        if (this.cantidad <= 0) {
+            throw new IOException("Fragmento corrupto: " + primero);
+        }
+
+        this.cargados = new AtomicIntegerArray(this.cantidad);
+        this.candados = new Object[this.cantidad];
+        for (int i = 0; i < this.cantidad; i++) {
+            this.candados[i] = new Object();
+            if (!this.existian) {
+                this.cargados.set(i, 1);
+            }
+        }
+        this.faltantes = new AtomicInteger(this.existian ? this.cantidad : 0);
+    }
+
+    /**
+     * @param directorio de los fragmentos.
+     * @return true si el directorio tiene fragmentos.
+     */
+    public static boolean existen(final Path directorio) {
+        return Files.exists(archivo(directorio, 0));
+    }
+
+    /**
+     * @return true si los fragmentos ya existian al abrirlos (y se cargan a medida que se piden).
+     */
+    public boolean existian() {
+        return this.existian;
+    }
+
+    /**
+     * @return la cantidad de fragmentos.
+     */
+    public int getCantidad() {
+        return this.cantidad;
+    }
+
+    /**
+     * @return la cantidad de fragmentos ya cargados.
+     */
+    public int getCargados() {
+        return this.cantidad - this.faltantes.get();
+    }
+
+    /**
+     * @return los bytes leidos de los fragmentos.
+     */
+    public long getBytesLeidos() {
+        return this.bytesLeidos.sum();
+    }
+
+    /**
+     * @return los bytes escritos en los fragmentos.
+     */
+    public long getBytesEscritos() {
+        return this.bytesEscritos.sum();
+    }
+
+    /**
+     * @param isbn de un libro.
+     * @return el fragmento del libro.
+     */
+    public int fragmento(final String isbn) {
+        int h = Catalogo.normalizarIsbn(isbn).hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), this.cantidad);
+    }
+
+    /**
+     * Carga el fragmento de un libro, si aun no esta cargado.
+     *
+     * @param isbn del libro.
+     * @throws IOException si el fragmento no se pudo leer.
+     */
+    public void asegurar(final String isbn) throws IOException {
+        this.asegurar(this.fragmento(isbn));
+    }
+
+    /**
+     * Carga todos los fragmentos que faltan, en paralelo.
+     *
+     * @throws IOException si algun fragmento no se pudo leer.
+     */
+    public void asegurarTodos() throws IOException {
+        if (this.faltantes.get() == 0) {
+            return;
+        }
+        try {
+            IntStream.range(0, this.cantidad).parallel().forEach(fragmento -> {
+                try {
+                    this.asegurar(fragmento);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Carga un fragmento, si aun no esta cargado.
+     *
+     * @param fragmento a cargar (entre 0 y la cantidad de fragmentos).
+     * @throws IOException si el fragmento no se pudo leer.
+     */
+    public void asegurar(final int fragmento) throws IOException {
+        if (this.cargados.get(fragmento) == 1) {
+            return;
+        }
+        synchronized (this.candados[fragmento]) {
+            if (this.cargados.get(fragmento) == 1) {
+                return;
+            }
+            this.cargador.accept(this.leer(fragmento));
+            this.cargados.set(fragmento, 1);
+            this.faltantes.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param fragmento a revisar.
+     * @return true si el fragmento ya esta cargado.
+     */
+    public boolean estaCargado(final int fragmento) {
+        return this.cargados.get(fragmento) == 1;
+    }
+
+    /**
+     * Cuenta los libros de los fragmentos que aun no estan cargados, leyendo solo sus cabeceras.
+     *
+     * @return la cantidad de libros sin cargar.
+     * @throws IOException si algun fragmento no es valido.
+     */
+    public long contarSinCargar() throws IOException {
+        long libros = 0;
+        for (int fragmento = 0; fragmento < this.cantidad; fragmento++) {
+            Path archivo = this.archivo(fragmento);
+            if (!this.estaCargado(fragmento) && Files.exists(archivo)) {
+                libros += leerCabecera(archivo).getInt(POSICION_LIBROS);
+            }
+        }
+        return libros;
+    }
+
+    /**
+     * Lee los libros de un fragmento.
+     *
+     * @param fragmento a leer.
+     * @return los libros del fragmento (vacio si el archivo no existe).
+     * @throws IOException si el fragmento esta corrupto.
+     */
+    private Libro[] leer(final int fragmento) throws IOException {
+        // TODO: agregar un indice (ISBN -> posicion del libro) despues de la tabla de strings, en una version 2 del
+        //  formato, para leer un libro o rechazar un ISBN que no existe sin decodificar todo el fragmento.
+        Path archivo = this.archivo(fragmento);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(archivo);
+        } catch (NoSuchFileException ex) {
+            return new Libro[0];
+        }
+        this.bytesLeidos.add(bytes.length);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            if (buffer.getInt() != MAGICO) {
+                throw new IOException("El archivo no es un fragmento del catalogo: " + archivo);
+            }
+            short version = buffer.getShort();
+            if (version != VERSION) {
+                throw new IOException("Version de fragmento no soportada: " + version);
+            }
+            int cantidad = buffer.getInt();
+            int numero = buffer.getInt();
+            if (cantidad != this.cantidad || numero != fragmento) {
+                throw new IOException("Fragmento " + numero + " de " + cantidad + " fuera de lugar: " + archivo);
+            }
+            int libros = buffer.getInt();
+            int largo = buffer.getInt();
+            long crc = buffer.getLong();
+            if (largo != buffer.remaining() || crc(bytes, TAMANIO_CABECERA, largo) != crc) {
+                throw new IOException("Fragmento corrupto: " + archivo);
+            }
+
+            InstantaneaBinaria.Decodificador decodificador = new InstantaneaBinaria.Decodificador(buffer,
+                    InstantaneaBinaria.VERSION);
+            String[] tabla = new String[buffer.getInt()];
+            for (int i = 0; i < tabla.length; i++) {
+                tabla[i] = decodificador.leerCadena();
+            }
+            Libro[] leidos = new Libro[libros];
+            for (int i = 0; i < libros; i++) {
+                leidos[i] = decodificador.leerLibro(tabla);
+            }
+            return leidos;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+            throw new IOException("Fragmento corrupto: " + archivo, ex);
+        }
+    }
+
+    /**
+     * Reemplaza (de forma atomica) un fragmento con sus libros.
+     *
+     * @param fragmento a escribir.
+     * @param libros    del fragmento (todos deben pertenecer a el).
+     * @throws IOException en caso de algun error.
+     */
+    public void escribir(final int fragmento, final Libro[] libros) throws IOException {
+
+        // el contenido se arma en memoria para calcular su largo y CRC (un fragmento es una parte del catalogo).
+        Map<String, Integer> posiciones = new HashMap<>();
+        List<String> tabla = new ArrayList<>();
+        for (Libro libro : libros) {
+            if (this.fragmento(libro.getIsbn()) != fragmento) {
+                throw new IllegalArgumentException("El libro con isbn " + libro.getIsbn() + " no pertenece al fragmento "
+                        + fragmento);
+            }
+            InstantaneaBinaria.registrarCadena(libro.getAutor(), posiciones, tabla);
+            InstantaneaBinaria.registrarCadena(libro.getCategoria(), posiciones, tabla);
+        }
+        ByteArrayOutputStream contenido = new ByteArrayOutputStream(TAMANIO_BUFFER);
+        try (DataOutputStream out = new DataOutputStream(contenido)) {
+            out.writeInt(tabla.size());
+            for (String cadena : tabla) {
+                InstantaneaBinaria.escribirCadena(out, cadena);
+            }
+            for (Libro libro : libros) {
+                InstantaneaBinaria.escribirLibro(out, libro, posiciones);
+            }
+        }
+        byte[] bytes = contenido.toByteArray();
+
+        Files.createDirectories(this.directorio);
+        EscrituraAtomica.escribir(this.archivo(fragmento), destino -> {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(destino, TAMANIO_BUFFER))) {
+                out.writeInt(MAGICO);
+                out.writeShort(VERSION);
+                out.writeInt(this.cantidad);
+                out.writeInt(fragmento);
+                out.writeInt(libros.length);
+                out.writeInt(bytes.length);
+                out.writeLong(crc(bytes, 0, bytes.length));
+                out.write(bytes);
+            }
+        });
+        this.bytesEscritos.add(TAMANIO_CABECERA + bytes.length);
+    }
+
+    /**
+     * @param fragmento numero del fragmento.
+     * @return el archivo del fragmento.
+     */
+    private Path archivo(final int fragmento) {
+        return archivo(this.directorio, fragmento);
+    }
+
+    /**
+     * @param directorio de los fragmentos.
+     * @param fragmento  numero del fragmento.
+     * @return el archivo del fragmento.
+     */
+    private static Path archivo(final Path directorio, final int fragmento) {
+        return directorio.resolve(String.format("libros-%04d.bin", fragmento));
+    }
+
+    /**
+     * @param archivo de un fragmento.
+     * @return la cabecera del fragmento.
+     * @throws IOException si el archivo no es un fragmento.
+     */
+    private static ByteBuffer leerCabecera(final Path archivo) throws IOException {
+        byte[] cabecera;
+        try (InputStream in = Files.newInputStream(archivo)) {
+            cabecera = in.readNBytes(TAMANIO_CABECERA);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(cabecera);
+        if (cabecera.length < TAMANIO_CABECERA || buffer.getInt(0) != MAGICO) {
+            throw new IOException("El archivo no es un fragmento del catalogo: " + archivo);
+        }
+        return buffer;
+    }
+
+    /**
+     * @param bytes  a revisar.
+     * @param inicio del contenido.
+     * @param largo  del contenido.
+     * @return el CRC32 del contenido.
+     */
+    private static long crc(final byte[] bytes, final int inicio, final int largo) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, inicio, largo);
+        return crc.getValue();
+    }
+}
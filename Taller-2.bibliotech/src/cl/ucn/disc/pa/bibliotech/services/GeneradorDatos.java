@@ -0,0 +1,501 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+import cl.ucn.disc.pa.bibliotech.model.Socio;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Generador de datos sinteticos (libros y socios validos) para pruebas de carga y bancos de prueba, en todos los
+ * formatos que usa el sistema: libros.json y socios.json, la instantanea binaria, los fragmentos del catalogo y los
+ * formatos de importacion (CSV y JSON lines).
+ * <p>
+ * Es determinista: cada libro y cada socio se calcula solo desde la semilla y su posicion, por lo que la misma
+ * semilla (y fecha) produce siempre los mismos archivos, y los libros se pueden generar de nuevo en cada pasada en
+ * vez de guardarlos en memoria. Las distribuciones imitan un catalogo real:
+ * <ul>
+ *     <li>autores y categorias con distribucion de Zipf (pocos autores prolificos, pocas categorias grandes); cada
+ *     autor escribe casi siempre en su propia categoria;</li>
+ *     <li>popularidad sesgada: la cantidad de calificaciones decae como una potencia de la posicion del libro, y los
+ *     libros populares tienen un promedio algo mas alto;</li>
+ *     <li>los prestamos de los socios se concentran en los libros populares (sin repetir un ejemplar).</li>
+ * </ul>
+ *
+ * @author Programacion Avanzada.
+ */
+public final class GeneradorDatos {
+
+    /**
+     * Categorias, de la mas a la menos frecuente.
+     */
+    private static final String[] CATEGORIAS = {
+        "Novela", "Programming Languages", "Historia", "Ciencia Ficcion", "Fantasia", "Biografia", "Autoayuda",
+        "Infantil", "Poesia", "Ensayo", "Matematicas", "Fisica", "Economia", "Filosofia", "Cocina", "Viajes",
+        "Arte y Diseno", "Psicologia", "Derecho", "Medicina", "Bases de Datos", "Redes", "Teatro", "Comics"
+    };
+
+    /**
+     * Nombres de autores y socios.
+     */
+    private static final String[] NOMBRES = {
+        "Ana", "Benjamin", "Camila", "Diego", "Elena", "Felipe", "Gabriela", "Hector", "Isabel", "Javier",
+        "Karen", "Luis", "Maria", "Nicolas", "Olivia", "Pablo", "Rocio", "Sebastian", "Tomas", "Valentina",
+        "Andres", "Barbara", "Carlos", "Daniela", "Emilio", "Francisca", "Gonzalo", "Ignacia", "Joaquin", "Laura",
+        "Martin", "Natalia", "Oscar", "Paula", "Ricardo", "Sofia", "Tamara", "Vicente", "Ximena", "Kathy"
+    };
+
+    /**
+     * Apellidos de autores y socios.
+     */
+    private static final String[] APELLIDOS = {
+        "Gonzalez", "Munoz", "Rojas", "Diaz", "Perez", "Soto", "Contreras", "Silva", "Martinez", "Sepulveda",
+        "Morales", "Rodriguez", "Lopez", "Fuentes", "Hernandez", "Torres", "Araya", "Flores", "Espinoza", "Valenzuela",
+        "Castillo", "Tapia", "Reyes", "Gutierrez", "Castro", "Pizarro", "Alvarez", "Vasquez", "Sanchez", "Fernandez",
+        "Ramirez", "Carrasco", "Gomez", "Cortes", "Herrera", "Nunez", "Jara", "Vergara", "Rivera", "Bloch"
+    };
+
+    /**
+     * Palabras de los titulos.
+     */
+    private static final String[] PALABRAS = {
+        "casa", "tiempo", "mundo", "noche", "camino", "mar", "ciudad", "memoria", "sombra", "luz", "guerra", "amor",
+        "historia", "secreto", "jardin", "viaje", "silencio", "fuego", "invierno", "verano", "rio", "montana",
+        "sueno", "estrella", "puerta", "ventana", "libro", "voz", "nombre", "ultimo", "primer", "largo", "breve",
+        "perdido", "oculto", "eterno", "nuevo", "antiguo", "rojo", "azul", "java", "algoritmos", "datos", "codigo",
+        "sistemas", "redes", "manual", "guia", "introduccion", "fundamentos", "practica", "arte", "ciencia", "teoria"
+    };
+
+    /**
+     * Dominios de los correos de los socios, del mas al menos frecuente.
+     */
+    private static final String[] DOMINIOS = {"alumnos.ucn.cl", "ucn.cl", "gmail.com", "hotmail.com", "outlook.com"};
+
+    /**
+     * Cantidad maxima de prestamos de un socio.
+     */
+    private static final int MAXIMO_PRESTAMOS = 3;
+
+    /**
+     * Cantidad de libros por autor (en promedio).
+     */
+    private static final int LIBROS_POR_AUTOR = 10;
+
+    /**
+     * Exponente con que decae la cantidad de calificaciones segun la posicion del libro.
+     */
+    private static final double EXPONENTE_POPULARIDAD = 0.8;
+
+    /**
+     * Cantidad de ISBN distintos (los 9 digitos despues del prefijo 978).
+     */
+    private static final long ISBN_DISTINTOS = 1_000_000_000L;
+
+    /**
+     * Multiplicador primo relativo con {@link #ISBN_DISTINTOS}: reparte las posiciones en todo el rango de ISBN.
+     */
+    private static final long MULTIPLICADOR_ISBN = 736_481_113L;
+
+    /**
+     * Para separar las secuencias aleatorias de libros, autores y socios con la misma posicion.
+     */
+    private static final long SAL_LIBRO = 0x4C4942524FL;
+
+    /**
+     * Ver {@link #SAL_LIBRO}.
+     */
+    private static final long SAL_AUTOR = 0x4155544F52L;
+
+    /**
+     * Ver {@link #SAL_LIBRO}.
+     */
+    private static final long SAL_SOCIO = 0x534F43494FL;
+
+    /**
+     * Largo de la sal de los hash de contrasenia.
+     */
+    private static final int LARGO_SAL = 16;
+
+    /**
+     * Semilla de los datos.
+     */
+    private final long semilla;
+
+    /**
+     * Cantidad de libros.
+     */
+    private final int libros;
+
+    /**
+     * Cantidad de socios.
+     */
+    private final int socios;
+
+    /**
+     * Fecha de referencia para los vencimientos de los prestamos.
+     */
+    private final LocalDate hoy;
+
+    /**
+     * Cantidad de autores distintos.
+     */
+    private final int autores;
+
+    /**
+     * Cantidad de calificaciones (promedio) del libro mas popular.
+     */
+    private final double escalaVotos;
+
+    /**
+     * Genera los hash de las contrasenias (null = se guardan en texto plano).
+     */
+    private final VerificadorContrasenias verificador;
+
+    /**
+     * Los socios ya generados (son muchos menos que los libros: se generan una sola vez).
+     */
+    private Socio[] generados;
+
+    /**
+     * The Constructor.
+     *
+     * @param semilla     de los datos.
+     * @param libros      cantidad de libros (hasta mil millones).
+     * @param socios      cantidad de socios.
+     * @param iteraciones de PBKDF2 de las contrasenias (0 = texto plano, que el Sistema convierte al iniciar sesion).
+     * @param hoy         fecha de referencia para los vencimientos de los prestamos.
+     */
+    public GeneradorDatos(final long semilla, final int libros, final int socios, final int iteraciones,
+                          final LocalDate hoy) {
+        if (libros < 0 || libros > ISBN_DISTINTOS) {
+            throw new IllegalArgumentException("La cantidad de libros debe estar entre 0 y " + ISBN_DISTINTOS);
+        }
+        if (socios < 0) {
+            throw new IllegalArgumentException("La cantidad de socios no puede ser negativa!");
+        }
+        if (iteraciones < 0) {
+            throw new IllegalArgumentException("Las iteraciones no pueden ser negativas!");
+        }
+        this.semilla = semilla;
+        this.libros = libros;
+        this.socios = socios;
+        this.hoy = hoy;
+        this.autores = Math.max(1, libros / LIBROS_POR_AUTOR);
+        // el libro menos popular queda con cerca de media calificacion en promedio.
+        this.escalaVotos = 0.5 * Math.pow(Math.max(1, libros), EXPONENTE_POPULARIDAD);
+        this.verificador = iteraciones == 0 ? null : new VerificadorContrasenias(iteraciones, 0, Duration.ZERO);
+    }
+
+    /**
+     * @param numeroDeSocio del socio.
+     * @return la contrasenia (en texto plano) de un socio generado, para iniciar su sesion en las pruebas.
+     */
+    public static String contrasenia(final int numeroDeSocio) {
+        return "socio-" + numeroDeSocio;
+    }
+
+    /**
+     * @return la cantidad de libros.
+     */
+    public int getLibros() {
+        return this.libros;
+    }
+
+    /**
+     * @return la cantidad de socios.
+     */
+    public int getSocios() {
+        return this.socios;
+    }
+
+    /**
+     * @return la primera posicion de libro que ningun socio tiene en prestamo (ni las siguientes): los prestamos usan
+     * solo los libros mas populares.
+     */
+    public int getPrimerLibroLibre() {
+        return (int) Math.min(this.libros, (long) this.socios * MAXIMO_PRESTAMOS);
+    }
+
+    /**
+     * @param i posicion del libro (la posicion 0 es la mas popular).
+     * @return el ISBN-13 (con digito verificador) del libro; distinto para cada posicion.
+     */
+    public String isbn(final int i) {
+        long desplazamiento = Math.floorMod(this.semilla, ISBN_DISTINTOS);
+        long numero = (i * MULTIPLICADOR_ISBN + desplazamiento) % ISBN_DISTINTOS;
+        char[] digitos = new char[13];
+        digitos[0] = '9';
+        digitos[1] = '7';
+        digitos[2] = '8';
+        for (int d = 11; d >= 3; d--) {
+            digitos[d] = (char) ('0' + numero % 10);
+            numero /= 10;
+        }
+        int suma = 0;
+        for (int d = 0; d < 12; d++) {
+            suma += (digitos[d] - '0') * (d % 2 == 0 ? 1 : 3);
+        }
+        digitos[12] = (char) ('0' + (10 - suma % 10) % 10);
+        return new String(digitos);
+    }
+
+    /**
+     * @param i posicion del libro (la posicion 0 es la mas popular).
+     * @return el libro.
+     */
+    public Libro libro(final int i) {
+        SplittableRandom random = this.aleatorio(i, SAL_LIBRO);
+        int autor = zipf(random, this.autores);
+        String categoria = random.nextInt(5) == 0 ? CATEGORIAS[zipf(random, CATEGORIAS.length)]
+                : this.categoriaDeAutor(autor);
+
+        StringBuilder titulo = new StringBuilder();
+        int palabras = 1 + random.nextInt(4);
+        for (int p = 0; p < palabras; p++) {
+            String palabra = PALABRAS[zipf(random, PALABRAS.length)];
+            titulo.append(p == 0 ? Character.toUpperCase(palabra.charAt(0)) + palabra.substring(1) : " " + palabra);
+        }
+
+        // popularidad: las calificaciones decaen con la posicion, y los libros populares tienen mejor promedio.
+        long votos = (long) (this.escalaVotos / Math.pow(i + 1.0, EXPONENTE_POPULARIDAD) * (0.5 + random.nextDouble()));
+        double promedio = 3.4 + 0.35 * Math.log10(votos + 1.0) + 0.6 * gaussiana(random);
+        long centesimas = Math.round(Math.max(1.0, Math.min(5.0, promedio)) * 100);
+
+        Libro libro = new Libro(this.isbn(i), titulo.toString(), this.nombreAutor(autor), categoria, 0.0, 0);
+        libro.establecerCalificacion(centesimas * votos, votos);
+        return libro;
+    }
+
+    /**
+     * @param j posicion del socio (su numero de socio es j + 1).
+     * @return el socio, con sus prestamos.
+     */
+    public Socio socio(final int j) {
+        SplittableRandom random = this.aleatorio(j, SAL_SOCIO);
+        int numero = j + 1;
+        String nombre = NOMBRES[random.nextInt(NOMBRES.length)];
+        String apellido = APELLIDOS[random.nextInt(APELLIDOS.length)];
+        String correo = (nombre + "." + apellido + numero).toLowerCase(Locale.ROOT) + "@"
+                + DOMINIOS[zipf(random, DOMINIOS.length)];
+
+        String contrasenia = contrasenia(numero);
+        if (this.verificador != null) {
+            byte[] sal = new byte[LARGO_SAL];
+            for (int b = 0; b < LARGO_SAL; b++) {
+                sal[b] = (byte) random.nextInt(256);
+            }
+            contrasenia = this.verificador.generar(contrasenia, sal);
+        }
+        Socio socio = new Socio(nombre, apellido, correo, numero, contrasenia);
+
+        // cada socio tiene sus propias casillas de libros (las primeras son las mas populares): nunca se presta dos
+        // veces el mismo ejemplar.
+        int prestamos = random.nextInt(5) < 3 ? 0 : 1 + random.nextInt(MAXIMO_PRESTAMOS);
+        for (int k = 0; k < prestamos; k++) {
+            long casilla = (long) j * MAXIMO_PRESTAMOS + k;
+            if (casilla < this.libros) {
+                socio.agregarLibro(this.libro((int) casilla), this.hoy.plusDays(random.nextInt(-5, 15)));
+            }
+        }
+        return socio;
+    }
+
+    /**
+     * Escribe libros.json y socios.json en un directorio.
+     *
+     * @param directorio destino.
+     * @throws IOException en caso de algun error.
+     */
+    public void escribirJson(final Path directorio) throws IOException {
+        EscritorJson.escribirLibros(directorio.resolve("libros.json"), this.libros, this::libro);
+        this.escribirSocios(directorio);
+    }
+
+    /**
+     * Escribe la instantanea binaria (bibliotech.bin) en un directorio.
+     *
+     * @param directorio destino.
+     * @throws IOException en caso de algun error.
+     */
+    public void escribirInstantanea(final Path directorio) throws IOException {
+        Socio[] socios = this.generarSocios();
+        InstantaneaBinaria.escribir(directorio.resolve("bibliotech.bin"), this.libros, this::libro, socios.length,
+                j -> socios[j]);
+    }
+
+    /**
+     * Escribe el catalogo en fragmentos (en el subdirectorio libros) y socios.json, que es lo que lee el Sistema
+     * con el catalogo en fragmentos. Solo un fragmento a la vez esta en memoria.
+     *
+     * @param directorio destino.
+     * @param cantidad   de fragmentos.
+     * @throws IOException si ya existen fragmentos o en caso de algun error.
+     */
+    public void escribirFragmentos(final Path directorio, final int cantidad) throws IOException {
+        Path destino = directorio.resolve("libros");
+        if (FragmentosCatalogo.existen(destino)) {
+            throw new IOException("Ya existen fragmentos del catalogo en " + destino);
+        }
+        FragmentosCatalogo fragmentos = new FragmentosCatalogo(destino, cantidad, libros -> {
+        });
+
+        // el fragmento de cada libro se calcula una vez; luego cada fragmento genera solo sus libros.
+        int[] fragmentoDe = new int[this.libros];
+        int[] tamanios = new int[cantidad];
+        for (int i = 0; i < this.libros; i++) {
+            fragmentoDe[i] = fragmentos.fragmento(this.isbn(i));
+            tamanios[fragmentoDe[i]]++;
+        }
+        for (int f = 0; f < cantidad; f++) {
+            Libro[] fragmento = new Libro[tamanios[f]];
+            int n = 0;
+            for (int i = 0; i < this.libros; i++) {
+                if (fragmentoDe[i] == f) {
+                    fragmento[n++] = this.libro(i);
+                }
+            }
+            fragmentos.escribir(f, fragmento);
+        }
+        this.escribirSocios(directorio);
+    }
+
+    /**
+     * Escribe los libros en formato CSV con encabezado, para {@link ImportadorLibros}.
+     *
+     * @param archivo destino.
+     * @throws IOException en caso de algun error.
+     */
+    public void escribirCsv(final Path archivo) throws IOException {
+        EscrituraAtomica.escribir(archivo, out -> {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+                    64 * 1024)) {
+                writer.write("isbn,titulo,autor,categoria,calificacion,votos\n");
+                for (int i = 0; i < this.libros; i++) {
+                    Libro libro = this.libro(i);
+                    writer.write(libro.getIsbn());
+                    writer.write(',');
+                    writer.write(campoCsv(libro.getTitulo()));
+                    writer.write(',');
+                    writer.write(campoCsv(libro.getAutor()));
+                    writer.write(',');
+                    writer.write(campoCsv(libro.getCategoria()));
+                    writer.write(',');
+                    writer.write(Double.toString(libro.getCalificacion()));
+                    writer.write(',');
+                    writer.write(Long.toString(libro.getVotos()));
+                    writer.write('\n');
+                }
+            }
+        });
+    }
+
+    /**
+     * Escribe los libros en formato JSON lines, para {@link ImportadorLibros}.
+     *
+     * @param archivo destino.
+     * @throws IOException en caso de algun error.
+     */
+    public void escribirJsonLineas(final Path archivo) throws IOException {
+        EscritorJson.escribirJsonLineas(archivo, this.libros, this::libro);
+    }
+
+    /**
+     * Escribe socios.json en un directorio.
+     *
+     * @param directorio destino.
+     * @throws IOException en caso de algun error.
+     */
+    private void escribirSocios(final Path directorio) throws IOException {
+        Socio[] socios = this.generarSocios();
+        EscritorJson.escribirSocios(directorio.resolve("socios.json"), socios.length, j -> socios[j]);
+    }
+
+    /**
+     * @return los socios (generados la primera vez).
+     */
+    private Socio[] generarSocios() {
+        if (this.generados == null) {
+            Socio[] socios = new Socio[this.socios];
+            for (int j = 0; j < this.socios; j++) {
+                socios[j] = this.socio(j);
+            }
+            this.generados = socios;
+        }
+        return this.generados;
+    }
+
+    /**
+     * @param autor posicion del autor.
+     * @return el nombre del autor.
+     */
+    private String nombreAutor(final int autor) {
+        SplittableRandom random = this.aleatorio(autor, SAL_AUTOR);
+        return NOMBRES[random.nextInt(NOMBRES.length)] + " " + APELLIDOS[random.nextInt(APELLIDOS.length)] + " "
+                + APELLIDOS[random.nextInt(APELLIDOS.length)];
+    }
+
+    /**
+     * @param autor posicion del autor.
+     * @return la categoria en que escribe el autor.
+     */
+    private String categoriaDeAutor(final int autor) {
+        SplittableRandom random = this.aleatorio(autor, SAL_AUTOR);
+        // los mismos valores que nombreAutor, y luego la categoria.
+        random.nextInt(NOMBRES.length);
+        random.nextInt(APELLIDOS.length);
+        random.nextInt(APELLIDOS.length);
+        return CATEGORIAS[zipf(random, CATEGORIAS.length)];
+    }
+
+    /**
+     * @param posicion del dato.
+     * @param sal      del tipo de dato.
+     * @return la secuencia aleatoria del dato (depende solo de la semilla, la posicion y el tipo).
+     */
+    private SplittableRandom aleatorio(final long posicion, final long sal) {
+        return new SplittableRandom(this.semilla ^ sal * 0x9E3779B97F4A7C15L ^ posicion * 0xC2B2AE3D27D4EB4FL);
+    }
+
+    /**
+     * Elige una posicion con una distribucion de Zipf (exponente 1, aproximada por la inversa de su acumulada):
+     * la posicion 0 es la mas frecuente.
+     *
+     * @param random a utilizar.
+     * @param n      cantidad de posiciones.
+     * @return la posicion, entre 0 y n - 1.
+     */
+    private static int zipf(final SplittableRandom random, final int n) {
+        int posicion = (int) (Math.exp(random.nextDouble() * Math.log(n + 1.0)) - 1.0);
+        return Math.min(posicion, n - 1);
+    }
+
+    /**
+     * @param random a utilizar.
+     * @return un valor con distribucion normal estandar (Box-Muller).
+     */
+    private static double gaussiana(final SplittableRandom random) {
+        return Math.sqrt(-2.0 * Math.log(1.0 - random.nextDouble())) * Math.cos(2.0 * Math.PI * random.nextDouble());
+    }
+
+    /**
+     * @param campo a escribir.
+     * @return el campo entre comillas dobles si tiene comas, comillas o saltos de linea (RFC 4180).
+     */
+    private static String campoCsv(final String campo) {
+        if (campo.indexOf(',') < 0 && campo.indexOf('"') < 0 && campo.indexOf('\n') < 0) {
+            return campo;
+        }
+        return '"' + campo.replace("\"", "\"\"") + '"';
+    }
+}
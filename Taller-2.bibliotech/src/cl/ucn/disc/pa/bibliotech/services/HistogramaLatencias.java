@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias sin candados: cada cubeta es un contador repartido ({@link LongAdder}), por lo que los
+ * hilos que registran al mismo tiempo no compiten por la misma variable.
+ * <p>
+ * Las cubetas son log-lineales (como HdrHistogram): cada potencia de 2 se divide en 8 cubetas iguales, asi que un
+ * percentil tiene a lo mas un 12,5% de error relativo, para cualquier latencia (de nanosegundos a horas) y con una
+ * cantidad fija de memoria. Los percentiles se calculan al leer, no al registrar.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class HistogramaLatencias {
+
+    /**
+     * Resumen de las latencias registradas, en nanosegundos.
+     *
+     * @param cantidad registros.
+     * @param errores  registros de operaciones que fallaron.
+     * @param promedio latencia promedio.
+     * @param p50      mediana.
+     * @param p95      percentil 95.
+     * @param p99      percentil 99.
+     * @param maximo   latencia maxima.
+     */
+    public record Resumen(long cantidad, long errores, double promedio, long p50, long p95, long p99, long maximo) {
+    }
+
+    /**
+     * Bits de la mantisa: cada potencia de 2 se divide en 2^BITS_SUBCUBETAS cubetas.
+     */
+    private static final int BITS_SUBCUBETAS = 3;
+
+    /**
+     * Cubetas por potencia de 2.
+     */
+    private static final int SUBCUBETAS = 1 << BITS_SUBCUBETAS;
+
+    /**
+     * Cantidad de cubetas: alcanza para cualquier long positivo.
+     */
+    private static final int CUBETAS = (Long.SIZE - BITS_SUBCUBETAS) * SUBCUBETAS;
+
+    /**
+     * Registros por cubeta.
+     */
+    private final LongAdder[] cubetas = new LongAdder[CUBETAS];
+
+    /**
+     * Suma de las latencias.
+     */
+    private final LongAdder suma = new LongAdder();
+
+    /**
+     * Registros de operaciones que fallaron.
+     */
+    private final LongAdder errores = new LongAdder();
+
+    /**
+     * Latencia maxima.
+     */
+    private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+    /**
+     * The Constructor.
+     */
+    public HistogramaLatencias() {
+        for (int i = 0; i < CUBETAS; i++) {
+            this.cubetas[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Registra una latencia.
+     *
+     * @param nanos latencia (las negativas se registran como 0).
+     * @param exito si la operacion termino sin errores.
+     */
+    public void registrar(final long nanos, final boolean exito) {
+        long valor = Math.max(0, nanos);
+        this.cubetas[cubeta(valor)].increment();
+        this.suma.add(valor);
+        this.maximo.accumulate(valor);
+        if (!exito) {
+            this.errores.increment();
+        }
+    }
+
+    /**
+     * @return el resumen de las latencias registradas hasta ahora (los registros concurrentes pueden quedar o no).
+     */
+    public Resumen resumir() {
+        long[] cantidades = new long[CUBETAS];
+        long cantidad = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            cantidades[i] = this.cubetas[i].sum();
+            cantidad += cantidades[i];
+        }
+        if (cantidad == 0) {
+            return new Resumen(0, 0, 0.0, 0, 0, 0, 0);
+        }
+        long maximo = this.maximo.get();
+        return new Resumen(cantidad, this.errores.sum(), (double) this.suma.sum() / cantidad,
+                percentil(cantidades, cantidad, 0.50, maximo), percentil(cantidades, cantidad, 0.95, maximo),
+                percentil(cantidades, cantidad, 0.99, maximo), maximo);
+    }
+
+    /**
+     * @param valor latencia (no negativa).
+     * @return la cubeta de la latencia.
+     */
+    static int cubeta(final long valor) {
+        if (valor < SUBCUBETAS) {
+            return (int) valor;
+        }
+        int exponente = Long.SIZE - 1 - Long.numberOfLeadingZeros(valor);
+        int mantisa = (int) (valor >>> (exponente - BITS_SUBCUBETAS)) & (SUBCUBETAS - 1);
+        return (exponente - BITS_SUBCUBETAS + 1) * SUBCUBETAS + mantisa;
+    }
+
+    /**
+     * @param cubeta numero de la cubeta.
+     * @return la menor latencia de la cubeta.
+     */
+    static long inicio(final int cubeta) {
+        if (cubeta < SUBCUBETAS) {
+            return cubeta;
+        }
+        int exponente = cubeta / SUBCUBETAS + BITS_SUBCUBETAS - 1;
+        return (long) (SUBCUBETAS + cubeta % SUBCUBETAS) << (exponente - BITS_SUBCUBETAS);
+    }
+
+    /**
+     * @param cantidades registros por cubeta.
+     * @param cantidad   total de registros.
+     * @param fraccion   del percentil (entre 0 y 1).
+     * @param maximo     latencia maxima registrada.
+     * @return el percentil: el punto medio de la cubeta que lo contiene (a lo mas el maximo).
+     */
+    private static long percentil(final long[] cantidades, final long cantidad, final double fraccion,
+                                  final long maximo) {
+        long objetivo = Math.max(1, (long) Math.ceil(fraccion * cantidad));
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            acumulado += cantidades[i];
+            if (acumulado >= objetivo) {
+                long inicio = inicio(i);
+                long fin = i + 1 < CUBETAS ? inicio(i + 1) : Long.MAX_VALUE;
+                return Math.min(maximo, inicio + (fin - inicio) / 2);
+            }
+        }
+        return maximo;
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Importacion masiva de libros desde un archivo CSV (con encabezado) o JSON lines (un objeto libro por linea).
+ * <p>
+ * El archivo se lee por lotes: mientras un lote se valida en paralelo en un {@link ForkJoinPool} (con las mismas
+ * reglas del constructor de {@link Libro}), se lee el siguiente. Cada lote validado se deduplica por ISBN (gana la
+ * primera aparicion) y se confirma de una vez en el catalogo. Las lineas rechazadas se escriben en un reporte de
+ * errores con su numero de linea y el motivo.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class ImportadorLibros {
+
+    /**
+     * Cantidad de lineas por lote.
+     */
+    private static final int TAMANIO_LOTE = 8192;
+
+    /**
+     * Cantidad de lineas bajo la cual un lote se valida sin dividirlo mas.
+     */
+    private static final int UMBRAL_DIVISION = 512;
+
+    /**
+     * Columnas de un libro, en el orden de {@link #leerCampos(String, int[])}.
+     */
+    private static final String[] COLUMNAS = {"isbn", "titulo", "autor", "categoria", "calificacion", "votos"};
+
+    /**
+     * Cantidad de columnas obligatorias: las primeras de {@link #COLUMNAS}, hasta antes de la calificacion.
+     */
+    private static final int COLUMNAS_OBLIGATORIAS = Arrays.asList(COLUMNAS).indexOf("calificacion");
+
+    /**
+     * Resultado de una importacion.
+     *
+     * @param leidos     cantidad de lineas con datos leidas.
+     * @param importados cantidad de libros agregados al catalogo.
+     * @param rechazados cantidad de lineas escritas en el reporte de errores.
+     */
+    public record Resultado(int leidos, int importados, int rechazados) {
+    }
+
+    /**
+     * Confirma un lote de libros validos y sin repetir.
+     */
+    @FunctionalInterface
+    public interface Confirmador {
+
+        /**
+         * @param lote de libros a confirmar.
+         * @throws IOException en caso de algun error.
+         */
+        void confirmar(Libro[] lote) throws IOException;
+    }
+
+    /**
+     * Constructor privado: nadie puede instanciar esta clase.
+     */
+    private ImportadorLibros() {
+        // nothing here
+    }
+
+    /**
+     * Importa los libros de un archivo.
+     *
+     * @param archivo    a importar (.csv o JSON lines).
+     * @param reporte    donde escribir las lineas rechazadas.
+     * @param catalogo   para descartar los ISBN que ya existen.
+     * @param confirmador de cada lote.
+     * @return el resultado de la importacion.
+     * @throws IOException en caso de algun error.
+     */
+    public static Resultado importar(final Path archivo, final Path reporte, final Catalogo catalogo,
+                                     final Confirmador confirmador) throws IOException {
+
+        boolean csv = archivo.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try (BufferedReader reader = Files.newBufferedReader(archivo, StandardCharsets.UTF_8);
+             BufferedWriter errores = Files.newBufferedWriter(reporte, StandardCharsets.UTF_8)) {
+
+            // posicion de cada columna en el CSV (-1 si no viene).
+            int[] posiciones = null;
+            int numeroLinea = 0;
+            if (csv) {
+                String encabezado = reader.readLine();
+                numeroLinea++;
+                posiciones = leerEncabezado(encabezado);
+            }
+
+            Set<String> vistos = new HashSet<>();
+            int[] totales = new int[3];
+            Lote pendiente = null;
+            ForkJoinTask<Void> validacion = null;
+            while (true) {
+                // leo el siguiente lote mientras se valida el anterior.
+                Lote lote = new Lote(posiciones);
+                String linea;
+                while (lote.cantidad < TAMANIO_LOTE && (linea = reader.readLine()) != null) {
+                    numeroLinea++;
+                    if (!linea.isBlank()) {
+                        lote.agregar(numeroLinea, linea);
+                    }
+                }
+
+                if (validacion != null) {
+                    validacion.join();
+                    confirmar(pendiente, catalogo, confirmador, vistos, errores, totales);
+                }
+                if (lote.cantidad == 0) {
+                    break;
+                }
+                pendiente = lote;
+                validacion = pool.submit(new Validacion(lote, 0, lote.cantidad));
+            }
+            return new Resultado(totales[0], totales[1], totales[2]);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Deduplica un lote validado, lo confirma y escribe sus errores.
+     *
+     * @param lote        validado.
+     * @param catalogo    para descartar los ISBN que ya existen.
+     * @param confirmador del lote.
+     * @param vistos      ISBN normalizados ya importados desde el archivo.
+     * @param errores     reporte de errores.
+     * @param totales     leidos, importados y rechazados.
+     * @throws IOException en caso de algun error.
+     */
+    private static void confirmar(final Lote lote, final Catalogo catalogo, final Confirmador confirmador,
+                                  final Set<String> vistos, final BufferedWriter errores, final int[] totales)
+            throws IOException {
+
+        // libros validos y la posicion de su linea en el lote.
+        Libro[] validos = new Libro[lote.cantidad];
+        int[] lineas = new int[lote.cantidad];
+        int cantidad = 0;
+        for (int i = 0; i < lote.cantidad; i++) {
+            String error = lote.errores[i];
+            Libro libro = lote.libros[i];
+            if (error == null) {
+                String isbn = Catalogo.normalizarIsbn(libro.getIsbn());
+                if (!vistos.add(isbn)) {
+                    error = "ISBN repetido en el archivo";
+                } else if (catalogo.buscar(isbn) != null) {
+                    error = "ISBN ya existe en el catalogo";
+                }
+            }
+            if (error == null) {
+                validos[cantidad] = libro;
+                lineas[cantidad++] = i;
+            } else {
+                rechazar(lote, i, error, errores, totales);
+            }
+        }
+
+        // el lote se confirma completo o no se confirma: si otro hilo agrego uno de sus ISBN despues de revisarlo,
+        // se rechazan las lineas de los ISBN que ahora existen y se confirma el resto.
+        while (cantidad > 0) {
+            try {
+                confirmador.confirmar(Arrays.copyOf(validos, cantidad));
+                break;
+            } catch (IllegalArgumentException ex) {
+                int quedan = 0;
+                for (int v = 0; v < cantidad; v++) {
+                    if (catalogo.buscar(validos[v].getIsbn()) == null) {
+                        validos[quedan] = validos[v];
+                        lineas[quedan++] = lineas[v];
+                    } else {
+                        rechazar(lote, lineas[v], "ISBN ya existe en el catalogo", errores, totales);
+                    }
+                }
+                if (quedan == cantidad) {
+                    // el error no fue un ISBN repetido.
+                    throw ex;
+                }
+                cantidad = quedan;
+            }
+        }
+        totales[0] += lote.cantidad;
+        totales[1] += cantidad;
+    }
+
+    /**
+     * Escribe una linea rechazada en el reporte de errores.
+     *
+     * @param lote    de la linea.
+     * @param i       posicion de la linea en el lote.
+     * @param error   motivo del rechazo.
+     * @param errores reporte de errores.
+     * @param totales leidos, importados y rechazados.
+     * @throws IOException en caso de algun error.
+     */
+    private static void rechazar(final Lote lote, final int i, final String error, final BufferedWriter errores,
+                                 final int[] totales) throws IOException {
+        errores.write("linea " + lote.numeros[i] + ": " + error + "\t" + lote.lineas[i]);
+        errores.newLine();
+        totales[2]++;
+    }
+
+    /**
+     * @param encabezado del CSV.
+     * @return la posicion de cada columna de {@link #COLUMNAS} (-1 si no viene).
+     * @throws IOException si el encabezado no es valido.
+     */
+    private static int[] leerEncabezado(final String encabezado) throws IOException {
+        if (encabezado == null) {
+            throw new IOException("Archivo CSV sin encabezado");
+        }
+        String[] nombres = separarCsv(encabezado);
+        int[] posiciones = new int[COLUMNAS.length];
+        for (int c = 0; c < COLUMNAS.length; c++) {
+            posiciones[c] = -1;
+            for (int i = 0; i < nombres.length; i++) {
+                if (nombres[i].trim().equalsIgnoreCase(COLUMNAS[c])) {
+                    posiciones[c] = i;
+                }
+            }
+        }
+        // isbn, titulo, autor y categoria son obligatorias.
+        for (int c = 0; c < COLUMNAS_OBLIGATORIAS; c++) {
+            if (posiciones[c] < 0) {
+                throw new IOException("Falta la columna " + COLUMNAS[c] + " en el encabezado del CSV");
+            }
+        }
+        return posiciones;
+    }
+
+    /**
+     * Separa una linea CSV (RFC 4180: los campos pueden ir entre comillas dobles y una comilla se escribe "").
+     *
+     * @param linea a separar.
+     * @return los campos.
+     */
+    private static String[] separarCsv(final String linea) {
+        ArregloDinamico<String> campos = new ArregloDinamico<>(COLUMNAS.length);
+        StringBuilder sb = new StringBuilder();
+        boolean comillas = false;
+        for (int i = 0; i < linea.length(); i++) {
+            char c = linea.charAt(i);
+            if (comillas) {
+                if (c == '"' && i + 1 < linea.length() && linea.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    comillas = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                comillas = true;
+            } else if (c == ',') {
+                campos.agregar(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        if (comillas) {
+            throw new IllegalArgumentException("Comillas sin cerrar");
+        }
+        campos.agregar(sb.toString());
+        return campos.aArreglo(new String[0]);
+    }
+
+    /**
+     * Lee los campos de un libro desde una linea.
+     *
+     * @param linea      a leer.
+     * @param posiciones de las columnas del CSV (null si la linea es JSON).
+     * @return los campos en el orden de {@link #COLUMNAS} (null si no vienen).
+     */
+    private static String[] leerCampos(final String linea, final int[] posiciones) {
+        String[] campos = new String[COLUMNAS.length];
+        if (posiciones != null) {
+            String[] valores = separarCsv(linea);
+            for (int c = 0; c < COLUMNAS.length; c++) {
+                int p = posiciones[c];
+                if (p >= 0 && p < valores.length && !valores[p].isEmpty()) {
+                    campos[c] = valores[p];
+                }
+            }
+            return campos;
+        }
+
+        try (JsonReader reader = new JsonReader(new StringReader(linea))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String nombre = reader.nextName();
+                int c = 0;
+                while (c < COLUMNAS.length && !COLUMNAS[c].equals(nombre)) {
+                    c++;
+                }
+                if (c == COLUMNAS.length || reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                } else {
+                    campos[c] = reader.nextString();
+                }
+            }
+            reader.endObject();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IllegalArgumentException("Contenido despues del objeto");
+            }
+        } catch (IOException | IllegalStateException ex) {
+            throw new IllegalArgumentException("JSON no valido: " + ex.getMessage());
+        }
+        return campos;
+    }
+
+    /**
+     * Construye un libro desde una linea, con las validaciones del constructor de {@link Libro}.
+     *
+     * @param linea      a convertir.
+     * @param posiciones de las columnas del CSV (null si la linea es JSON).
+     * @return el libro.
+     */
+    private static Libro crearLibro(final String linea, final int[] posiciones) {
+        String[] campos = leerCampos(linea, posiciones);
+        for (int c = 0; c < COLUMNAS_OBLIGATORIAS; c++) {
+            if (campos[c] == null) {
+                throw new IllegalArgumentException("Falta el campo " + COLUMNAS[c]);
+            }
+        }
+        double calificacion = campos[4] == null ? 0.0 : Double.parseDouble(campos[4]);
+        if (campos[5] == null) {
+            return new Libro(campos[0], campos[1], campos[2], campos[3], calificacion);
+        }
+        return new Libro(campos[0], campos[1], campos[2], campos[3], calificacion, Long.parseLong(campos[5]));
+    }
+
+    /**
+     * Lote de lineas leidas y el resultado de su validacion.
+     */
+    private static final class Lote {
+
+        /**
+         * Posicion de las columnas del CSV (null si las lineas son JSON).
+         */
+        private final int[] posiciones;
+
+        /**
+         * Numero de cada linea en el archivo.
+         */
+        private final int[] numeros = new int[TAMANIO_LOTE];
+
+        /**
+         * Las lineas.
+         */
+        private final String[] lineas = new String[TAMANIO_LOTE];
+
+        /**
+         * Libro valido de cada linea.
+         */
+        private final Libro[] libros = new Libro[TAMANIO_LOTE];
+
+        /**
+         * Motivo del rechazo de cada linea (null si es valida).
+         */
+        private final String[] errores = new String[TAMANIO_LOTE];
+
+        /**
+         * Cantidad de lineas.
+         */
+        private int cantidad;
+
+        /**
+         * The Constructor.
+         *
+         * @param posiciones de las columnas del CSV (null si las lineas son JSON).
+         */
+        private Lote(final int[] posiciones) {
+            this.posiciones = posiciones;
+        }
+
+        /**
+         * @param numero de la linea en el archivo.
+         * @param linea  a agregar.
+         */
+        private void agregar(final int numero, final String linea) {
+            this.numeros[this.cantidad] = numero;
+            this.lineas[this.cantidad] = linea;
+            this.cantidad++;
+        }
+    }
+
+    /**
+     * Valida un rango de lineas de un lote, dividiendolo en mitades hasta el umbral.
+     */
+    private static final class Validacion extends RecursiveAction {
+
+        /**
+         * Version de serializacion.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * El lote.
+         */
+        private final transient Lote lote;
+
+        /**
+         * Primera linea del rango.
+         */
+        private final int desde;
+
+        /**
+         * Linea siguiente a la ultima del rango.
+         */
+        private final int hasta;
+
+        /**
+         * The Constructor.
+         *
+         * @param lote  a validar.
+         * @param desde primera linea.
+         * @param hasta linea siguiente a la ultima.
+         */
+        private Validacion(final Lote lote, final int desde, final int hasta) {
+            this.lote = lote;
+            this.desde = desde;
+            this.hasta = hasta;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.hasta - this.desde > UMBRAL_DIVISION) {
+                int medio = (this.desde + this.hasta) >>> 1;
+                invokeAll(new Validacion(this.lote, this.desde, medio), new Validacion(this.lote, medio, this.hasta));
+                return;
+            }
+            for (int i = this.desde; i < this.hasta; i++) {
+                try {
+                    this.lote.libros[i] = crearLibro(this.lote.lineas[i], this.lote.posiciones);
+                } catch (IllegalArgumentException | NullPointerException ex) {
+                    this.lote.errores[i] = ex.getMessage() == null ? "Libro no valido" : ex.getMessage();
+                }
+            }
+        }
+    }
+}
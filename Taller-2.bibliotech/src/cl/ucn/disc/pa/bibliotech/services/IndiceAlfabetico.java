@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Indices secundarios del catalogo en orden alfabetico: por titulo y por autor (los ordenes de
+ * {@link PaginadorCatalogo.Orden} que comparan libros).
+ * <p>
+ * Cada indice guarda los ids de los libros en un {@link ConcurrentSkipListSet} ordenado con el comparador del orden
+ * (y el id a igualdad): una pagina se recorre en orden sin guardar ni ordenar libros. El titulo y el autor de un libro
+ * no cambian, por lo que un libro nunca se reubica. Un indice se construye la primera vez que se pide su orden (la
+ * mayoria de las ejecuciones nunca ordena por titulo o autor) y desde entonces se mantiene al agregar libros.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class IndiceAlfabetico {
+
+    /**
+     * El catalogo indexado.
+     */
+    private final Catalogo catalogo;
+
+    /**
+     * Ids de los libros, por orden (solo los ordenes ya pedidos); se modifica con el indice como candado.
+     */
+    private final Map<PaginadorCatalogo.Orden, NavigableSet<Integer>> indices =
+            new EnumMap<>(PaginadorCatalogo.Orden.class);
+
+    /**
+     * The Constructor.
+     *
+     * @param catalogo a indexar.
+     */
+    public IndiceAlfabetico(final Catalogo catalogo) {
+        this.catalogo = catalogo;
+    }
+
+    /**
+     * Agrega un libro del catalogo a los indices ya construidos.
+     *
+     * @param libro a agregar.
+     */
+    public synchronized void agregar(final Libro libro) {
+        if (this.indices.isEmpty()) {
+            return;
+        }
+        int id = this.catalogo.buscarId(libro.getIsbn());
+        if (id < 0) {
+            throw new IllegalArgumentException("El libro con isbn " + libro.getIsbn() + " no esta en el catalogo!");
+        }
+        for (NavigableSet<Integer> ids : this.indices.values()) {
+            ids.add(id);
+        }
+    }
+
+    /**
+     * Recorre los ids de todos los libros del catalogo (disponibles o no) en un orden alfabetico.
+     *
+     * @param orden de los libros (TITULO o AUTOR).
+     * @return los ids de los libros.
+     */
+    public PrimitiveIterator.OfInt enOrden(final PaginadorCatalogo.Orden orden) {
+        Iterator<Integer> ids = this.indice(orden).iterator();
+        return new PrimitiveIterator.OfInt() {
+            @Override
+            public boolean hasNext() {
+                return ids.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!ids.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return ids.next();
+            }
+        };
+    }
+
+    /**
+     * @param orden de los libros.
+     * @return el indice del orden, construido con los libros que ya estan en el catalogo si aun no existia.
+     */
+    private synchronized NavigableSet<Integer> indice(final PaginadorCatalogo.Orden orden) {
+        if (orden.comparador == null) {
+            throw new IllegalArgumentException("El orden " + orden + " no es alfabetico!");
+        }
+        NavigableSet<Integer> ids = this.indices.get(orden);
+        if (ids == null) {
+            Comparator<Libro> comparador = orden.comparador;
+            ids = new ConcurrentSkipListSet<>((a, b) -> {
+                int c = comparador.compare(this.catalogo.obtener(a), this.catalogo.obtener(b));
+                return c != 0 ? c : Integer.compare(a, b);
+            });
+            // los libros agregados mientras tanto esperan el candado y se agregan despues.
+            int cantidad = this.catalogo.getCantidad();
+            for (int id = 0; id < cantidad; id++) {
+                ids.add(id);
+            }
+            this.indices.put(orden, ids);
+        }
+        return ids;
+    }
+}
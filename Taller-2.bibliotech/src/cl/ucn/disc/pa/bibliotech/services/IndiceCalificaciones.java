@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Indices secundarios del catalogo ordenados por calificacion: uno con todos los libros y uno por categoria.
+ * <p>
+ * Cada libro se guarda como una clave long con su calificacion en punto fijo (bits altos) y su id en el catalogo
+ * (bits bajos), en un {@link ConcurrentSkipListSet}: los k mejores de una categoria se obtienen en O(log n + k) y
+ * las consultas no toman candados. Cuando un libro recibe una calificacion se cambia su clave, con el libro como
+ * candado para que dos calificaciones simultaneas del mismo libro no dejen una clave antigua.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class IndiceCalificaciones {
+
+    /**
+     * Escala de la calificacion en la clave (millonesimas).
+     */
+    private static final double ESCALA = 1_000_000.0;
+
+    /**
+     * Bits del id en la clave.
+     */
+    private static final int BITS_ID = 32;
+
+    /**
+     * Cantidad de bits del tamanio de un segmento de claves.
+     */
+    private static final int BITS_SEGMENTO = 10;
+
+    /**
+     * Tamanio de un segmento de claves.
+     */
+    private static final int TAMANIO_SEGMENTO = 1 << BITS_SEGMENTO;
+
+    /**
+     * Clave de un id que no esta indexado.
+     */
+    private static final long SIN_CLAVE = -1L;
+
+    /**
+     * Una categoria y sus libros.
+     *
+     * @param nombre de la categoria (tal como aparece en el primer libro).
+     * @param libros claves de los libros de la categoria.
+     */
+    private record Categoria(String nombre, NavigableSet<Long> libros) {
+    }
+
+    /**
+     * El catalogo indexado.
+     */
+    private final Catalogo catalogo;
+
+    /**
+     * Claves de todos los libros.
+     */
+    private final NavigableSet<Long> todos = new ConcurrentSkipListSet<>();
+
+    /**
+     * Categorias, por nombre normalizado.
+     */
+    private final ConcurrentMap<String, Categoria> categorias = new ConcurrentHashMap<>();
+
+    /**
+     * Categorias, por el nombre tal como aparece en los libros (un string compartido por el {@link PoolCadenas} del
+     * catalogo): evita normalizar la categoria en cada calificacion.
+     */
+    private final ConcurrentMap<String, Categoria> porNombre = new ConcurrentHashMap<>();
+
+    /**
+     * Clave actual de cada id, en segmentos que no se copian al crecer.
+     */
+    private volatile AtomicLongArray[] claves = new AtomicLongArray[0];
+
+    /**
+     * The Constructor.
+     *
+     * @param catalogo a indexar.
+     */
+    public IndiceCalificaciones(final Catalogo catalogo) {
+        this.catalogo = catalogo;
+    }
+
+    /**
+     * Agrega un libro del catalogo al indice.
+     *
+     * @param libro a agregar.
+     */
+    public void agregar(final Libro libro) {
+        int id = this.catalogo.buscarId(libro.getIsbn());
+        if (id < 0) {
+            throw new IllegalArgumentException("El libro con isbn " + libro.getIsbn() + " no esta en el catalogo!");
+        }
+        this.segmento(id, true);
+        synchronized (libro) {
+            this.cambiarClave(libro, id);
+        }
+    }
+
+    /**
+     * Actualiza la posicion de un libro despues de recibir una calificacion.
+     *
+     * @param libro calificado.
+     */
+    public void actualizar(final Libro libro) {
+        int id = this.catalogo.buscarId(libro.getIsbn());
+        if (id < 0 || this.segmento(id, false) == null) {
+            return;
+        }
+        synchronized (libro) {
+            this.cambiarClave(libro, id);
+        }
+    }
+
+    /**
+     * Reemplaza la clave de un libro por la de su calificacion actual; se llama con el libro como candado.
+     *
+     * @param libro a reubicar.
+     * @param id    del libro.
+     */
+    private void cambiarClave(final Libro libro, final int id) {
+        AtomicLongArray segmento = this.segmento(id, false);
+        int i = id & (TAMANIO_SEGMENTO - 1);
+        long anterior = segmento.get(i);
+        long nueva = clave(libro.getCalificacion(), id);
+        if (anterior == nueva) {
+            return;
+        }
+        NavigableSet<Long> categoria = this.porNombre.computeIfAbsent(libro.getCategoria(),
+                nombre -> this.categorias.computeIfAbsent(normalizar(nombre),
+                        normalizada -> new Categoria(nombre.trim(), new ConcurrentSkipListSet<>()))).libros();
+
+        // primero la clave nueva y luego se quita la anterior: un lector nunca deja de ver el libro.
+        this.todos.add(nueva);
+        categoria.add(nueva);
+        if (anterior != SIN_CLAVE) {
+            this.todos.remove(anterior);
+            categoria.remove(anterior);
+        }
+        segmento.set(i, nueva);
+    }
+
+    /**
+     * @param id    del libro.
+     * @param crear si el segmento del id se debe crear cuando no existe.
+     * @return el segmento de claves del id (null si no existe y no se pidio crearlo).
+     */
+    private AtomicLongArray segmento(final int id, final boolean crear) {
+        int s = id >>> BITS_SEGMENTO;
+        AtomicLongArray[] segmentos = this.claves;
+        if (s < segmentos.length) {
+            return segmentos[s];
+        }
+        if (!crear) {
+            return null;
+        }
+        synchronized (this) {
+            segmentos = this.claves;
+            if (s >= segmentos.length) {
+                int anterior = segmentos.length;
+                segmentos = Arrays.copyOf(segmentos, s + 1);
+                for (int n = anterior; n <= s; n++) {
+                    AtomicLongArray nuevo = new AtomicLongArray(TAMANIO_SEGMENTO);
+                    for (int i = 0; i < TAMANIO_SEGMENTO; i++) {
+                        nuevo.set(i, SIN_CLAVE);
+                    }
+                    segmentos[n] = nuevo;
+                }
+                this.claves = segmentos;
+            }
+            return segmentos[s];
+        }
+    }
+
+    /**
+     * Obtiene los libros mejor calificados.
+     *
+     * @param categoria de los libros (null para todas).
+     * @param maximo    cantidad de libros.
+     * @return los libros, el mejor calificado primero.
+     */
+    public Libro[] obtenerMejores(final String categoria, final int maximo) {
+        ArregloDinamico<Libro> libros = new ArregloDinamico<>(Math.max(0, Math.min(maximo, 1024)));
+        PrimitiveIterator.OfInt ids = this.porCalificacion(categoria);
+        while (libros.getCantidad() < maximo && ids.hasNext()) {
+            libros.agregar(this.catalogo.obtener(ids.nextInt()));
+        }
+        return libros.aArreglo(new Libro[0]);
+    }
+
+    /**
+     * Recorre los ids de los libros de la mejor a la peor calificacion.
+     *
+     * @param categoria de los libros (null para todas).
+     * @return los ids de los libros.
+     */
+    public PrimitiveIterator.OfInt porCalificacion(final String categoria) {
+        NavigableSet<Long> claves;
+        if (categoria == null) {
+            claves = this.todos;
+        } else {
+            Categoria encontrada = this.categorias.get(normalizar(categoria));
+            claves = encontrada == null ? new ConcurrentSkipListSet<>() : encontrada.libros();
+        }
+        Iterator<Long> descendente = claves.descendingIterator();
+        return new PrimitiveIterator.OfInt() {
+            @Override
+            public boolean hasNext() {
+                return descendente.hasNext();
+            }
+
+            @Override
+            public int nextInt() {
+                if (!descendente.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return (int) descendente.next().longValue();
+            }
+        };
+    }
+
+    /**
+     * @return los nombres de las categorias, ordenados.
+     */
+    public String[] obtenerCategorias() {
+        String[] nombres = this.categorias.values().stream().map(Categoria::nombre).toArray(String[]::new);
+        Arrays.sort(nombres, String.CASE_INSENSITIVE_ORDER);
+        return nombres;
+    }
+
+    /**
+     * @param calificacion del libro.
+     * @param id           del libro.
+     * @return la clave del libro: la calificacion en millonesimas y luego el id.
+     */
+    private static long clave(final double calificacion, final int id) {
+        return Math.round(calificacion * ESCALA) << BITS_ID | id;
+    }
+
+    /**
+     * @param categoria a normalizar.
+     * @return la categoria sin espacios al inicio o al final y en minusculas.
+     */
+    static String normalizar(final String categoria) {
+        return categoria.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Socio;
+
+/**
+ * Indice de Socios por numero de socio: tabla hash de direccionamiento abierto (sondeo lineal) con llaves int
+ * primitivas, sin boxing ni nodos por entrada.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class IndiceSocios {
+
+    /**
+     * Capacidad minima de la tabla (potencia de 2).
+     */
+    private static final int CAPACIDAD_MINIMA = 16;
+
+    /**
+     * Las llaves (numero de socio) de cada casilla.
+     */
+    private int[] llaves;
+
+    /**
+     * Los socios de cada casilla (null = casilla vacia).
+     */
+    private Socio[] valores;
+
+    /**
+     * Cantidad de socios en el indice.
+     */
+    private int cantidad;
+
+    /**
+     * The Constructor.
+     *
+     * @param capacidadEsperada cantidad de socios que se espera indexar.
+     */
+    public IndiceSocios(final int capacidadEsperada) {
+        // factor de carga maximo de 0.5: la tabla tiene al menos el doble de casillas.
+        int capacidad = Integer.highestOneBit(Math.max(CAPACIDAD_MINIMA, capacidadEsperada * 2 - 1)) << 1;
+        this.llaves = new int[capacidad];
+        this.valores = new Socio[capacidad];
+        this.cantidad = 0;
+    }
+
+    /**
+     * Construye el indice a partir de un arreglo de socios.
+     *
+     * @param socios a indexar.
+     */
+    public IndiceSocios(final Socio[] socios) {
+        this(socios.length);
+        for (Socio socio : socios) {
+            this.agregar(socio);
+        }
+    }
+
+    /**
+     * Dispersa el numero de socio para que numeros consecutivos no queden en casillas consecutivas.
+     *
+     * @param llave  a dispersar.
+     * @param mascara de la tabla (capacidad - 1).
+     * @return la casilla inicial de la llave.
+     */
+    private static int casilla(final int llave, final int mascara) {
+        int h = llave * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mascara;
+    }
+
+    /**
+     * Agrega un socio al indice.
+     *
+     * @param socio a agregar.
+     */
+    public void agregar(final Socio socio) {
+        if ((this.cantidad + 1) * 2 > this.llaves.length) {
+            this.crecer();
+        }
+        int llave = socio.getNumeroDeSocio();
+        int mascara = this.llaves.length - 1;
+        int i = casilla(llave, mascara);
+        while (this.valores[i] != null) {
+            if (this.llaves[i] == llave) {
+                throw new IllegalArgumentException("El numero de socio " + llave + " ya existe!");
+            }
+            i = (i + 1) & mascara;
+        }
+        this.llaves[i] = llave;
+        this.valores[i] = socio;
+        this.cantidad++;
+    }
+
+    /**
+     * Busca un socio por su numero.
+     *
+     * @param numeroDeSocio a buscar.
+     * @return el socio o null si no existe.
+     */
+    public Socio buscar(final int numeroDeSocio) {
+        int[] llaves = this.llaves;
+        Socio[] valores = this.valores;
+        int mascara = llaves.length - 1;
+        int i = casilla(numeroDeSocio, mascara);
+        Socio socio;
+        while ((socio = valores[i]) != null) {
+            if (llaves[i] == numeroDeSocio) {
+                return socio;
+            }
+            i = (i + 1) & mascara;
+        }
+        return null;
+    }
+
+    /**
+     * @return la cantidad de socios en el indice.
+     */
+    public int getCantidad() {
+        return this.cantidad;
+    }
+
+    /**
+     * Duplica la capacidad de la tabla y reubica todos los socios.
+     */
+    private void crecer() {
+        int[] llavesAnteriores = this.llaves;
+        Socio[] valoresAnteriores = this.valores;
+        this.llaves = new int[llavesAnteriores.length * 2];
+        this.valores = new Socio[valoresAnteriores.length * 2];
+        int mascara = this.llaves.length - 1;
+        for (int j = 0; j < valoresAnteriores.length; j++) {
+            if (valoresAnteriores[j] != null) {
+                int i = casilla(llavesAnteriores[j], mascara);
+                while (this.valores[i] != null) {
+                    i = (i + 1) & mascara;
+                }
+                this.llaves[i] = llavesAnteriores[j];
+                this.valores[i] = valoresAnteriores[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * Indice invertido de texto sobre el titulo, el autor y la categoria de los libros.
+ * <p>
+ * Los terminos se pliegan (sin tildes ni mayusculas: "Programación" y "programacion" son el mismo termino) y se
+ * guardan en un {@link ConcurrentSkipListMap}, por lo que un prefijo se resuelve con un rango del mapa. Cada termino
+ * apunta a la lista de libros que lo contienen y en que campos. Los terminos de un libro se separan sin candados
+ * (varios hilos pueden agregar libros), pero se publican de a un libro a la vez; las consultas no toman candados.
+ * <p>
+ * El ranking pondera el campo (titulo sobre autor sobre categoria) y prefiere un termino exacto a un prefijo; a
+ * igual puntaje gana la mejor calificacion, que se lee al momento de la consulta, por lo que calificar un libro no
+ * requiere actualizar el indice.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class IndiceTexto {
+
+    /**
+     * Bit del titulo en una entrada de la lista de un termino.
+     */
+    private static final int TITULO = 1;
+
+    /**
+     * Bit del autor en una entrada de la lista de un termino.
+     */
+    private static final int AUTOR = 2;
+
+    /**
+     * Bit de la categoria en una entrada de la lista de un termino.
+     */
+    private static final int CATEGORIA = 4;
+
+    /**
+     * Cantidad de bits de los campos en una entrada (el resto es el id del libro).
+     */
+    private static final int BITS_CAMPOS = 3;
+
+    /**
+     * Marcas diacriticas (tildes, dieresis) que quedan separadas al descomponer un texto.
+     */
+    private static final Pattern MARCAS = Pattern.compile("\\p{M}+");
+
+    /**
+     * Orden de los resultados: mayor puntaje, luego mejor calificacion y luego titulo.
+     */
+    private static final Comparator<Resultado> ORDEN = Comparator.comparingInt(Resultado::puntaje)
+            .thenComparingDouble(resultado -> resultado.libro().getCalificacion())
+            .thenComparing(resultado -> resultado.libro().getTitulo(), Comparator.reverseOrder())
+            .reversed();
+
+    /**
+     * Un libro encontrado y su puntaje.
+     *
+     * @param libro   encontrado.
+     * @param puntaje de la coincidencia.
+     */
+    private record Resultado(Libro libro, int puntaje) {
+    }
+
+    /**
+     * Termino plegado a la lista de entradas (id del libro y campos) que lo contienen.
+     */
+    private final ConcurrentSkipListMap<String, Entradas> terminos = new ConcurrentSkipListMap<>();
+
+    /**
+     * Los libros indexados, por id.
+     */
+    private volatile Libro[] libros = new Libro[16];
+
+    /**
+     * Cantidad de libros indexados.
+     */
+    private volatile int cantidad;
+
+    /**
+     * Mejor puntaje de cada libro al recorrer varias listas, reutilizado por cada hilo (todas sus casillas quedan en
+     * -1 entre consultas): una consulta por prefijo no asigna un arreglo del tamanio del catalogo.
+     */
+    private final ThreadLocal<int[]> puntajes = ThreadLocal.withInitial(() -> new int[0]);
+
+    /**
+     * Agrega un libro al indice.
+     *
+     * @param libro a agregar.
+     */
+    public void agregar(final Libro libro) {
+
+        // campos en que aparece cada termino del libro (lo mas costoso, fuera del candado).
+        Map<String, Integer> campos = new HashMap<>();
+        for (String termino : separar(libro.getTitulo())) {
+            campos.merge(termino, TITULO, (a, b) -> a | b);
+        }
+        for (String termino : separar(libro.getAutor())) {
+            campos.merge(termino, AUTOR, (a, b) -> a | b);
+        }
+        for (String termino : separar(libro.getCategoria())) {
+            campos.merge(termino, CATEGORIA, (a, b) -> a | b);
+        }
+
+        // un libro a la vez: las listas de los terminos quedan ordenadas por id.
+        synchronized (this) {
+            int id = this.cantidad;
+            if (id == this.libros.length) {
+                this.libros = Arrays.copyOf(this.libros, id * 2);
+            }
+            this.libros[id] = libro;
+            for (Map.Entry<String, Integer> campo : campos.entrySet()) {
+                this.terminos.computeIfAbsent(campo.getKey(), Entradas::new)
+                        .agregar(id << BITS_CAMPOS | campo.getValue());
+            }
+
+            // recien ahora el libro es visible para las consultas.
+            this.cantidad = id + 1;
+        }
+    }
+
+    /**
+     * @return la cantidad de libros indexados.
+     */
+    public int getCantidad() {
+        return this.cantidad;
+    }
+
+    /**
+     * Busca los libros que contienen todos los terminos de la consulta (cada termino puede ser el prefijo de una
+     * palabra).
+     *
+     * @param consulta a buscar.
+     * @param maximo   cantidad de resultados.
+     * @return los libros encontrados, ordenados por relevancia.
+     */
+    public Libro[] buscar(final String consulta, final int maximo) {
+        String[] consultas = separar(consulta);
+        if (consultas.length == 0 || maximo <= 0) {
+            return new Libro[0];
+        }
+
+        // las listas de cada termino, de la mas corta a la mas larga.
+        int visibles = this.cantidad;
+        Rango[] rangos = new Rango[consultas.length];
+        for (int i = 0; i < consultas.length; i++) {
+            rangos[i] = this.rango(consultas[i]);
+            if (rangos[i].total == 0) {
+                return new Libro[0];
+            }
+        }
+        Arrays.sort(rangos, Comparator.comparingLong(rango -> rango.total));
+        int[] puntajes = null;
+        for (Rango rango : rangos) {
+            if (rango.datos.length > 1) {
+                puntajes = this.puntajes(visibles);
+                break;
+            }
+        }
+
+        // libros que coinciden con todos los terminos procesados hasta ahora (ordenados por id) y su puntaje: se
+        // recorre el rango mas corto y el resto se intersecta buscando cada candidato (las listas estan ordenadas
+        // por id), salvo que recorrer el rango completo sea mas barato.
+        int[][] candidatos = rangos[0].recorrer(visibles, puntajes);
+        for (int r = 1; r < rangos.length && candidatos[0].length > 0; r++) {
+            Rango rango = rangos[r];
+            int[] ids = candidatos[0];
+            int[] puntos = candidatos[1];
+            int n = 0;
+            if ((long) ids.length * rango.datos.length * 20 < rango.total + visibles) {
+                for (int i = 0; i < ids.length; i++) {
+                    int otro = rango.buscar(ids[i]);
+                    if (otro >= 0) {
+                        ids[n] = ids[i];
+                        puntos[n++] = puntos[i] + otro;
+                    }
+                }
+            } else {
+                // mezcla de dos listas ordenadas.
+                int[][] otros = rango.recorrer(visibles, puntajes);
+                int j = 0;
+                for (int i = 0; i < ids.length && j < otros[0].length; ) {
+                    if (ids[i] < otros[0][j]) {
+                        i++;
+                    } else if (ids[i] > otros[0][j]) {
+                        j++;
+                    } else {
+                        ids[n] = ids[i];
+                        puntos[n++] = puntos[i++] + otros[1][j++];
+                    }
+                }
+            }
+            candidatos = new int[][]{Arrays.copyOf(ids, n), Arrays.copyOf(puntos, n)};
+        }
+
+        // los mejores resultados, con un heap acotado al maximo.
+        Libro[] libros = this.libros;
+        PriorityQueue<Resultado> mejores = new PriorityQueue<>(maximo + 1, ORDEN.reversed());
+        for (int i = 0; i < candidatos[0].length; i++) {
+            // con el heap lleno, solo entra un libro con mejor puntaje que el peor de los mejores.
+            if (mejores.size() == maximo && candidatos[1][i] < mejores.peek().puntaje()) {
+                continue;
+            }
+            mejores.add(new Resultado(libros[candidatos[0][i]], candidatos[1][i]));
+            if (mejores.size() > maximo) {
+                mejores.poll();
+            }
+        }
+        Libro[] resultado = new Libro[mejores.size()];
+        for (int i = resultado.length - 1; i >= 0; i--) {
+            resultado[i] = mejores.poll().libro();
+        }
+        return resultado;
+    }
+
+    /**
+     * @param visibles cantidad de libros visibles.
+     * @return el arreglo de puntajes de este hilo, con al menos una casilla (en -1) por libro visible.
+     */
+    private int[] puntajes(final int visibles) {
+        int[] puntajes = this.puntajes.get();
+        if (puntajes.length < visibles) {
+            puntajes = new int[Math.max(visibles, puntajes.length * 2)];
+            Arrays.fill(puntajes, -1);
+            this.puntajes.set(puntajes);
+        }
+        return puntajes;
+    }
+
+    /**
+     * @param termino plegado de la consulta.
+     * @return las listas de las palabras iguales al termino o que comienzan con el.
+     */
+    private Rango rango(final String termino) {
+        ConcurrentNavigableMap<String, Entradas> rango = this.terminos.subMap(termino, true,
+                termino + Character.MAX_VALUE, false);
+        ArregloDinamico<Entradas> listas = new ArregloDinamico<>();
+        for (Entradas lista : rango.values()) {
+            listas.agregar(lista);
+        }
+        return new Rango(termino, listas.aArreglo(new Entradas[0]));
+    }
+
+    /**
+     * @param entrada de la lista de un termino.
+     * @param exacto  si la palabra es igual al termino de la consulta (y no solo comienza con el).
+     * @return el puntaje de la entrada.
+     */
+    private static int puntaje(final int entrada, final boolean exacto) {
+        int puntaje = 0;
+        if ((entrada & TITULO) != 0) {
+            puntaje += 6;
+        }
+        if ((entrada & AUTOR) != 0) {
+            puntaje += 4;
+        }
+        if ((entrada & CATEGORIA) != 0) {
+            puntaje += 2;
+        }
+        return exacto ? puntaje : puntaje / 2;
+    }
+
+    /**
+     * Separa un texto en terminos plegados: sin tildes, en minusculas y solo letras y digitos.
+     *
+     * @param texto a separar.
+     * @return los terminos.
+     */
+    static String[] separar(final String texto) {
+        if (texto == null) {
+            return new String[0];
+        }
+        String plegado = MARCAS.matcher(Normalizer.normalize(texto, Normalizer.Form.NFD)).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+        ArregloDinamico<String> terminos = new ArregloDinamico<>();
+        int inicio = -1;
+        for (int i = 0; i <= plegado.length(); i++) {
+            boolean letra = i < plegado.length() && Character.isLetterOrDigit(plegado.charAt(i));
+            if (letra && inicio < 0) {
+                inicio = i;
+            } else if (!letra && inicio >= 0) {
+                terminos.agregar(plegado.substring(inicio, i));
+                inicio = -1;
+            }
+        }
+        return terminos.aArreglo(new String[0]);
+    }
+
+    /**
+     * Las listas de las palabras que coinciden con un termino de la consulta, leidas una sola vez.
+     */
+    private static final class Rango {
+
+        /**
+         * Las palabras (para distinguir la exacta de los prefijos).
+         */
+        private final String[] palabras;
+
+        /**
+         * Las entradas de cada palabra.
+         */
+        private final int[][] datos;
+
+        /**
+         * Cantidad de entradas publicadas de cada palabra.
+         */
+        private final int[] cantidades;
+
+        /**
+         * Cantidad total de entradas.
+         */
+        private final long total;
+
+        /**
+         * The Constructor.
+         *
+         * @param termino de la consulta.
+         * @param listas  de las palabras que comienzan con el termino.
+         */
+        private Rango(final String termino, final Entradas[] listas) {
+            this.palabras = new String[listas.length];
+            this.datos = new int[listas.length][];
+            this.cantidades = new int[listas.length];
+            long total = 0;
+            for (int i = 0; i < listas.length; i++) {
+                // primero la cantidad y luego el arreglo (ver Entradas).
+                this.cantidades[i] = listas[i].cantidad;
+                this.datos[i] = listas[i].datos;
+                this.palabras[i] = listas[i].palabra.equals(termino) ? termino : null;
+                total += this.cantidades[i];
+            }
+            this.total = total;
+        }
+
+        /**
+         * @param visibles cantidad de libros visibles.
+         * @param puntajes arreglo de una casilla por libro visible, todas en -1 (con varias listas; quedan en -1).
+         * @return los ids (ordenados) de los libros de las listas y el mejor puntaje de cada uno.
+         */
+        private int[][] recorrer(final int visibles, final int[] puntajes) {
+            if (this.datos.length == 1) {
+                // una sola lista: ya esta ordenada y sin repetidos.
+                int[] entradas = this.datos[0];
+                int n = 0;
+                while (n < this.cantidades[0] && entradas[n] >>> BITS_CAMPOS < visibles) {
+                    n++;
+                }
+                int[] ids = new int[n];
+                int[] puntos = new int[n];
+                for (int i = 0; i < n; i++) {
+                    ids[i] = entradas[i] >>> BITS_CAMPOS;
+                    puntos[i] = puntaje(entradas[i], this.palabras[0] != null);
+                }
+                return new int[][]{ids, puntos};
+            }
+
+            // varias listas: el mejor puntaje de cada libro en el arreglo denso por id y, aparte, los ids
+            // encontrados, para ordenarlos y dejar en -1 solo esas casillas (no se recorre todo el catalogo).
+            int[] ids = new int[(int) Math.min(this.total, visibles)];
+            int n = 0;
+            for (int l = 0; l < this.datos.length; l++) {
+                int[] entradas = this.datos[l];
+                for (int i = 0; i < this.cantidades[l]; i++) {
+                    int id = entradas[i] >>> BITS_CAMPOS;
+                    if (id < visibles) {
+                        if (puntajes[id] < 0) {
+                            ids[n++] = id;
+                        }
+                        puntajes[id] = Math.max(puntajes[id], puntaje(entradas[i], this.palabras[l] != null));
+                    }
+                }
+            }
+            ids = Arrays.copyOf(ids, n);
+            if ((long) n * (32 - Integer.numberOfLeadingZeros(n)) < visibles) {
+                Arrays.sort(ids);
+            } else {
+                // con muchos libros encontrados es mas barato recorrer el arreglo denso que ordenar.
+                for (int id = 0, i = 0; i < n; id++) {
+                    if (puntajes[id] >= 0) {
+                        ids[i++] = id;
+                    }
+                }
+            }
+            int[] puntos = new int[n];
+            for (int i = 0; i < n; i++) {
+                puntos[i] = puntajes[ids[i]];
+                puntajes[ids[i]] = -1;
+            }
+            return new int[][]{ids, puntos};
+        }
+
+        /**
+         * @param id del libro.
+         * @return el mejor puntaje del libro en las listas o -1 si no esta en ninguna.
+         */
+        private int buscar(final int id) {
+            int mejor = -1;
+            for (int l = 0; l < this.datos.length; l++) {
+                int[] entradas = this.datos[l];
+                int bajo = 0;
+                int alto = this.cantidades[l] - 1;
+                while (bajo <= alto) {
+                    int medio = (bajo + alto) >>> 1;
+                    int otro = entradas[medio] >>> BITS_CAMPOS;
+                    if (otro < id) {
+                        bajo = medio + 1;
+                    } else if (otro > id) {
+                        alto = medio - 1;
+                    } else {
+                        mejor = Math.max(mejor, puntaje(entradas[medio], this.palabras[l] != null));
+                        break;
+                    }
+                }
+            }
+            return mejor;
+        }
+    }
+
+    /**
+     * Lista de entradas de un termino: crece con un solo escritor y se lee sin candados (primero la cantidad y
+     * luego el arreglo, que siempre contiene al menos esa cantidad de entradas).
+     */
+    private static final class Entradas {
+
+        /**
+         * La palabra de la lista.
+         */
+        private final String palabra;
+
+        /**
+         * Las entradas (id del libro y campos).
+         */
+        private volatile int[] datos = new int[2];
+
+        /**
+         * Cantidad de entradas publicadas.
+         */
+        private volatile int cantidad;
+
+        /**
+         * The Constructor.
+         *
+         * @param palabra de la lista.
+         */
+        private Entradas(final String palabra) {
+            this.palabra = palabra;
+        }
+
+        /**
+         * @param entrada a agregar.
+         */
+        private void agregar(final int entrada) {
+            int n = this.cantidad;
+            if (n == this.datos.length) {
+                this.datos = Arrays.copyOf(this.datos, n * 2);
+            }
+            this.datos[n] = entrada;
+            this.cantidad = n + 1;
+        }
+    }
+}
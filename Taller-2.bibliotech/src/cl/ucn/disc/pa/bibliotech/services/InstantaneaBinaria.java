@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+import cl.ucn.disc.pa.bibliotech.model.Socio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Instantanea binaria de los libros y socios, mas compacta y rapida de leer que libros.json y socios.json.
+ * <p>
+ * Formato (big-endian): cabecera (numero magico, version), tabla de strings repetidos (autor y categoria), los
+ * libros y luego los socios. Los strings se guardan como largo (int) seguido de sus bytes en UTF-8; autor y
+ * categoria se guardan como la posicion (int) en la tabla de strings. La lectura se hace sobre un
+ * {@link MappedByteBuffer}.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class InstantaneaBinaria {
+
+    /**
+     * Numero magico: "BTCH".
+     */
+    private static final int MAGICO = 0x42544348;
+
+    /**
+     * Version del formato.
+     */
+    static final short VERSION = 3;
+
+    /**
+     * Version del formato sin vencimiento de los prestamos.
+     */
+    private static final short VERSION_2 = 2;
+
+    /**
+     * Version anterior del formato (calificacion como promedio, sin cantidad de calificaciones).
+     */
+    private static final short VERSION_1 = 1;
+
+    /**
+     * Tamanio del buffer de escritura.
+     */
+    private static final int TAMANIO_BUFFER = 64 * 1024;
+
+    /**
+     * Constructor privado: nadie puede instanciar esta clase.
+     */
+    private InstantaneaBinaria() {
+        // nothing here
+    }
+
+    /**
+     * Escribe la instantanea de forma atomica ({@link EscrituraAtomica}), para no dejar nunca una instantanea a medias.
+     *
+     * @param archivo destino.
+     * @param libros  a guardar.
+     * @param socios  a guardar.
+     * @throws IOException en caso de algun error.
+     */
+    public static void escribir(final Path archivo, final Libro[] libros, final Socio[] socios) throws IOException {
+        escribir(archivo, libros.length, i -> libros[i], socios.length, i -> socios[i]);
+    }
+
+    /**
+     * Escribe la instantanea pidiendo los libros y socios uno a uno (no necesitan estar todos en memoria). Los libros
+     * se piden dos veces: primero para la tabla de strings y luego para escribirlos.
+     *
+     * @param archivo        destino.
+     * @param cantidadLibros a guardar.
+     * @param libros         entrega el libro de cada posicion.
+     * @param cantidadSocios a guardar.
+     * @param socios         entrega el socio de cada posicion.
+     * @throws IOException en caso de algun error.
+     */
+    static void escribir(final Path archivo, final int cantidadLibros, final IntFunction<Libro> libros,
+                         final int cantidadSocios, final IntFunction<Socio> socios) throws IOException {
+
+        // construyo la tabla de strings repetidos.
+        Map<String, Integer> posiciones = new HashMap<>();
+        List<String> tabla = new ArrayList<>();
+        for (int i = 0; i < cantidadLibros; i++) {
+            Libro libro = libros.apply(i);
+            registrarCadena(libro.getAutor(), posiciones, tabla);
+            registrarCadena(libro.getCategoria(), posiciones, tabla);
+        }
+        for (int i = 0; i < cantidadSocios; i++) {
+            Socio socio = socios.apply(i);
+            for (Libro libro : socio.getLibrosEnPrestamo()) {
+                registrarCadena(libro.getAutor(), posiciones, tabla);
+                registrarCadena(libro.getCategoria(), posiciones, tabla);
+            }
+        }
+
+        EscrituraAtomica.escribir(archivo, destino -> {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(destino, TAMANIO_BUFFER))) {
+
+                // cabecera
+                out.writeInt(MAGICO);
+                out.writeShort(VERSION);
+
+                // tabla de strings
+                out.writeInt(tabla.size());
+                for (String cadena : tabla) {
+                    escribirCadena(out, cadena);
+                }
+
+                // libros
+                out.writeInt(cantidadLibros);
+                for (int i = 0; i < cantidadLibros; i++) {
+                    escribirLibro(out, libros.apply(i), posiciones);
+                }
+
+                // socios
+                out.writeInt(cantidadSocios);
+                for (int i = 0; i < cantidadSocios; i++) {
+                    Socio socio = socios.apply(i);
+                    escribirCadena(out, socio.getNombre());
+                    escribirCadena(out, socio.getApellido());
+                    escribirCadena(out, socio.getCorreoElectronico());
+                    out.writeInt(socio.getNumeroDeSocio());
+                    escribirCadena(out, socio.getContrasenia());
+                    Libro[] prestamos = socio.getLibrosEnPrestamo();
+                    out.writeInt(prestamos.length);
+                    for (Libro libro : prestamos) {
+                        escribirLibro(out, libro, posiciones);
+                        out.writeLong(socio.getVencimiento(libro.getIsbn()).toEpochDay());
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Lee la instantanea, entregando cada libro y cada socio a medida que se decodifican.
+     *
+     * @param archivo a leer.
+     * @param libros  consumidor de los libros.
+     * @param socios  consumidor de los socios (null para leer solo los libros).
+     * @throws IOException si el archivo no existe, no es una instantanea, su version no es soportada o esta corrupto
+     *                     (incluidos los datos que un libro o socio no acepta y los libros o socios repetidos).
+     */
+    public static void leer(final Path archivo, final Consumer<Libro> libros, final Consumer<Socio> socios)
+            throws IOException {
+
+        MappedByteBuffer buffer;
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            if (canal.size() > Integer.MAX_VALUE) {
+                throw new IOException("Instantanea demasiado grande para mapear: " + archivo);
+            }
+            buffer = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+        }
+
+        try {
+            // cabecera
+            if (buffer.getInt() != MAGICO) {
+                throw new IOException("El archivo no es una instantanea: " + archivo);
+            }
+            short version = buffer.getShort();
+            if (version != VERSION && version != VERSION_2 && version != VERSION_1) {
+                throw new IOException("Version de instantanea no soportada: " + version);
+            }
+            Decodificador decodificador = new Decodificador(buffer, version);
+
+            // tabla de strings
+            String[] tabla = new String[buffer.getInt()];
+            for (int i = 0; i < tabla.length; i++) {
+                tabla[i] = decodificador.leerCadena();
+            }
+
+            // libros
+            int cantidadLibros = buffer.getInt();
+            for (int i = 0; i < cantidadLibros; i++) {
+                libros.accept(decodificador.leerLibro(tabla));
+            }
+
+            // socios (estan al final: si no se piden, no se decodifican)
+            if (socios == null) {
+                return;
+            }
+            int cantidadSocios = buffer.getInt();
+            for (int i = 0; i < cantidadSocios; i++) {
+                String nombre = decodificador.leerCadena();
+                String apellido = decodificador.leerCadena();
+                String correoElectronico = decodificador.leerCadena();
+                int numeroDeSocio = buffer.getInt();
+                String contrasenia = decodificador.leerCadena();
+                Socio socio = new Socio(nombre, apellido, correoElectronico, numeroDeSocio, contrasenia);
+                int prestamos = buffer.getInt();
+                for (int j = 0; j < prestamos; j++) {
+                    Libro libro = decodificador.leerLibro(tabla);
+                    if (version == VERSION) {
+                        socio.agregarLibro(libro, LocalDate.ofEpochDay(buffer.getLong()));
+                    } else {
+                        socio.agregarLibro(libro);
+                    }
+                }
+                socios.accept(socio);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException ex) {
+            throw new IOException("Instantanea corrupta: " + archivo, ex);
+        } catch (RuntimeException ex) {
+            // datos no validos para un libro o socio, o un ISBN o numero de socio repetido al agregarlo.
+            throw new IOException("Instantanea corrupta: " + archivo + " (" + ex.getMessage() + ")", ex);
+        }
+    }
+
+    /**
+     * Agrega una cadena a la tabla si aun no esta.
+     *
+     * @param cadena     a agregar.
+     * @param posiciones de cada cadena en la tabla.
+     * @param tabla      de cadenas repetidas.
+     */
+    static void registrarCadena(final String cadena, final Map<String, Integer> posiciones,
+                                final List<String> tabla) {
+        if (!posiciones.containsKey(cadena)) {
+            posiciones.put(cadena, tabla.size());
+            tabla.add(cadena);
+        }
+    }
+
+    /**
+     * Escribe un libro: isbn, titulo, autor (posicion), categoria (posicion), suma de calificaciones (centesimas) y
+     * cantidad de calificaciones.
+     *
+     * @param out        donde escribir.
+     * @param libro      a escribir.
+     * @param posiciones de cada cadena en la tabla (con el autor y la categoria del libro).
+     * @throws IOException en caso de un error al escribir.
+     */
+    static void escribirLibro(final DataOutputStream out, final Libro libro,
+                              final Map<String, Integer> posiciones) throws IOException {
+        escribirCadena(out, libro.getIsbn());
+        escribirCadena(out, libro.getTitulo());
+        out.writeInt(posiciones.get(libro.getAutor()));
+        out.writeInt(posiciones.get(libro.getCategoria()));
+        long acumulado = libro.getAcumulado();
+        out.writeLong(Libro.sumaCentesimas(acumulado));
+        out.writeLong(Libro.votos(acumulado));
+    }
+
+    /**
+     * Escribe un string con su largo en bytes como prefijo.
+     *
+     * @param out    donde escribir.
+     * @param cadena a escribir.
+     * @throws IOException en caso de un error al escribir.
+     */
+    static void escribirCadena(final DataOutputStream out, final String cadena) throws IOException {
+        byte[] bytes = cadena.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Decodifica strings y libros desde el buffer, reutilizando un unico espacio de trabajo para los bytes.
+     */
+    static final class Decodificador {
+
+        /**
+         * El buffer a decodificar.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Espacio de trabajo para los bytes de cada string.
+         */
+        private byte[] bytes;
+
+        /**
+         * Version del formato.
+         */
+        private final short version;
+
+        /**
+         * @param buffer  a decodificar.
+         * @param version del formato.
+         */
+        Decodificador(final ByteBuffer buffer, final short version) {
+            this.buffer = buffer;
+            this.bytes = new byte[256];
+            this.version = version;
+        }
+
+        /**
+         * @return el siguiente string, escrito con su largo en bytes como prefijo.
+         */
+        String leerCadena() {
+            int largo = this.buffer.getInt();
+            if (largo < 0 || largo > this.buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            if (largo > this.bytes.length) {
+                this.bytes = new byte[Math.max(largo, this.bytes.length * 2)];
+            }
+            this.buffer.get(this.bytes, 0, largo);
+            return new String(this.bytes, 0, largo, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * @param tabla de strings repetidos.
+         * @return el siguiente libro, escrito con {@link #escribirLibro(DataOutputStream, Libro, Map)}.
+         */
+        Libro leerLibro(final String[] tabla) {
+            String isbn = this.leerCadena();
+            String titulo = this.leerCadena();
+            String autor = tabla[this.buffer.getInt()];
+            String categoria = tabla[this.buffer.getInt()];
+            if (this.version == VERSION_1) {
+                return new Libro(isbn, titulo, autor, categoria, this.buffer.getDouble());
+            }
+            long sumaCentesimas = this.buffer.getLong();
+            long votos = this.buffer.getLong();
+            Libro libro = new Libro(isbn, titulo, autor, categoria, 0.0, 0);
+            libro.establecerCalificacion(sumaCentesimas, votos);
+            return libro;
+        }
+    }
+}
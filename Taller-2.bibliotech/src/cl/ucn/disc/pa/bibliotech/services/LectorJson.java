@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+import cl.ucn.disc.pa.bibliotech.model.Socio;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Lector incremental de libros.json y socios.json: recorre el arreglo elemento a elemento con un
+ * {@link JsonReader}, sin materializar el documento completo.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class LectorJson {
+
+    /**
+     * Tamanio del buffer de lectura.
+     */
+    private static final int TAMANIO_BUFFER = 64 * 1024;
+
+    /**
+     * Constructor privado: nadie puede instanciar esta clase.
+     */
+    private LectorJson() {
+        // nothing here
+    }
+
+    /**
+     * Lee los libros de un archivo y los entrega uno a uno.
+     *
+     * @param archivo    a leer.
+     * @param consumidor de cada libro leido.
+     * @return la cantidad de libros leidos.
+     * @throws IOException en caso de algun error (FileNotFoundException si el archivo no existe).
+     */
+    public static int leerLibros(final String archivo, final Consumer<Libro> consumidor) throws IOException {
+        try (JsonReader reader = abrir(archivo)) {
+            int cantidad = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                consumidor.accept(leerLibro(reader));
+                cantidad++;
+            }
+            reader.endArray();
+            return cantidad;
+        }
+    }
+
+    /**
+     * Lee los socios de un archivo y los entrega uno a uno.
+     *
+     * @param archivo    a leer.
+     * @param consumidor de cada socio leido.
+     * @return la cantidad de socios leidos.
+     * @throws IOException en caso de algun error (FileNotFoundException si el archivo no existe).
+     */
+    public static int leerSocios(final String archivo, final Consumer<Socio> consumidor) throws IOException {
+        try (JsonReader reader = abrir(archivo)) {
+            int cantidad = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                consumidor.accept(leerSocio(reader));
+                cantidad++;
+            }
+            reader.endArray();
+            return cantidad;
+        }
+    }
+
+    /**
+     * Abre un archivo para lectura incremental.
+     *
+     * @param archivo a abrir.
+     * @return el lector.
+     * @throws IOException en caso de algun error.
+     */
+    private static JsonReader abrir(final String archivo) throws IOException {
+        return new JsonReader(new BufferedReader(new FileReader(archivo, StandardCharsets.UTF_8), TAMANIO_BUFFER));
+    }
+
+    /**
+     * Un libro en prestamo y su fecha de vencimiento (null si el archivo no la tiene).
+     *
+     * @param libro       en prestamo.
+     * @param vencimiento del prestamo.
+     */
+    private record Prestamo(Libro libro, LocalDate vencimiento) {
+    }
+
+    /**
+     * Lee un objeto libro.
+     *
+     * @param reader posicionado al inicio del objeto.
+     * @return el libro.
+     * @throws IOException en caso de algun error.
+     */
+    private static Libro leerLibro(final JsonReader reader) throws IOException {
+        return leerPrestamo(reader).libro();
+    }
+
+    /**
+     * Lee un objeto libro que puede tener la fecha de vencimiento de su prestamo.
+     *
+     * @param reader posicionado al inicio del objeto.
+     * @return el libro y su vencimiento.
+     * @throws IOException en caso de algun error.
+     */
+    private static Prestamo leerPrestamo(final JsonReader reader) throws IOException {
+        String isbn = null;
+        String titulo = null;
+        String autor = null;
+        String categoria = null;
+        double calificacion = 0.0;
+        long votos = -1;
+        LocalDate vencimiento = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "isbn" -> isbn = leerString(reader);
+                case "titulo" -> titulo = leerString(reader);
+                case "autor" -> autor = leerString(reader);
+                case "categoria" -> categoria = leerString(reader);
+                case "calificacion" -> calificacion = reader.nextDouble();
+                case "votos" -> votos = reader.nextLong();
+                case "vencimiento" -> vencimiento = LocalDate.parse(reader.nextString());
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        // archivos antiguos: sin la cantidad de calificaciones.
+        Libro libro = votos < 0 ? new Libro(isbn, titulo, autor, categoria, calificacion)
+                : new Libro(isbn, titulo, autor, categoria, calificacion, votos);
+        return new Prestamo(libro, vencimiento);
+    }
+
+    /**
+     * Lee un objeto socio.
+     *
+     * @param reader posicionado al inicio del objeto.
+     * @return el socio.
+     * @throws IOException en caso de algun error.
+     */
+    private static Socio leerSocio(final JsonReader reader) throws IOException {
+        String nombre = null;
+        String apellido = null;
+        String correoElectronico = null;
+        int numeroDeSocio = 0;
+        String contrasenia = null;
+        List<Prestamo> librosEnPrestamo = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "nombre" -> nombre = leerString(reader);
+                case "apellido" -> apellido = leerString(reader);
+                case "correoElectronico" -> correoElectronico = leerString(reader);
+                case "numeroDeSocio" -> numeroDeSocio = reader.nextInt();
+                case "contrasenia" -> contrasenia = leerString(reader);
+                case "librosEnPrestamo" -> {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        librosEnPrestamo.add(leerPrestamo(reader));
+                    }
+                    reader.endArray();
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        Socio socio = new Socio(nombre, apellido, correoElectronico, numeroDeSocio, contrasenia);
+        for (Prestamo prestamo : librosEnPrestamo) {
+            // archivos antiguos: sin vencimiento, el plazo comienza hoy.
+            if (prestamo.vencimiento() == null) {
+                socio.agregarLibro(prestamo.libro());
+            } else {
+                socio.agregarLibro(prestamo.libro(), prestamo.vencimiento());
+            }
+        }
+        return socio;
+    }
+
+    /**
+     * @param reader a utilizar.
+     * @return el string leido o null si el valor es null.
+     * @throws IOException en caso de algun error.
+     */
+    private static String leerString(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metricas del Sistema: cantidad, errores y latencias (en un {@link HistogramaLatencias}) de cada operacion, bytes
+ * leidos y escritos por la persistencia, y medidores del estado (cantidad de libros, socios, etc.).
+ * <p>
+ * Registrar no toma candados (contadores repartidos); los medidores se leen solo al consultar las metricas. Las
+ * metricas se publican como MXBeans (dominio {@value #DOMINIO}, para JConsole o VisualVM) y opcionalmente se vuelcan
+ * en texto a un archivo cada cierto tiempo.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class MetricasSistema implements Closeable {
+
+    /**
+     * Las operaciones medidas.
+     */
+    public enum Operacion {
+        /**
+         * Inicio de sesion de un socio (exitoso o no).
+         */
+        INICIO_SESION("inicioSesion"),
+        /**
+         * Prestamo de un libro, incluyendo su registro en la bitacora.
+         */
+        PRESTAMO("prestamo"),
+        /**
+         * Devolucion de un libro, incluyendo su registro en la bitacora.
+         */
+        DEVOLUCION("devolucion"),
+        /**
+         * Renovacion de un prestamo, incluyendo su registro en la bitacora.
+         */
+        RENOVACION("renovacion"),
+        /**
+         * Calificacion de un libro, incluyendo la carga de su fragmento y su registro en la bitacora.
+         */
+        CALIFICACION("calificacion"),
+        /**
+         * Escritura de una pagina (o del total) del catalogo.
+         */
+        CATALOGO("catalogo"),
+        /**
+         * Carga de la informacion al iniciar el sistema, incluyendo la reproduccion de la bitacora.
+         */
+        CARGA("carga"),
+        /**
+         * Guardado de la informacion (instantanea binaria o json).
+         */
+        GUARDADO("guardado");
+
+        /**
+         * Nombre de la operacion en el volcado y en JMX.
+         */
+        private final String nombre;
+
+        /**
+         * The Constructor.
+         *
+         * @param nombre de la operacion.
+         */
+        Operacion(final String nombre) {
+            this.nombre = nombre;
+        }
+
+        /**
+         * @return el nombre de la operacion.
+         */
+        public String getNombre() {
+            return this.nombre;
+        }
+    }
+
+    /**
+     * Metricas generales del Sistema en JMX.
+     */
+    public interface SistemaMXBean {
+
+        /**
+         * @return los bytes leidos por la persistencia.
+         */
+        long getBytesLeidos();
+
+        /**
+         * @return los bytes escritos por la persistencia.
+         */
+        long getBytesEscritos();
+
+        /**
+         * @return el valor actual de cada medidor.
+         */
+        Map<String, Long> getMedidores();
+
+        /**
+         * @return todas las metricas en texto (el mismo formato del volcado).
+         */
+        String getResumen();
+    }
+
+    /**
+     * Metricas de una operacion en JMX (latencias en milisegundos).
+     */
+    public interface OperacionMXBean {
+
+        /**
+         * @return la cantidad de operaciones.
+         */
+        long getCantidad();
+
+        /**
+         * @return la cantidad de operaciones que fallaron.
+         */
+        long getErrores();
+
+        /**
+         * @return la latencia promedio.
+         */
+        double getPromedioMs();
+
+        /**
+         * @return la mediana de la latencia.
+         */
+        double getP50Ms();
+
+        /**
+         * @return el percentil 95 de la latencia.
+         */
+        double getP95Ms();
+
+        /**
+         * @return el percentil 99 de la latencia.
+         */
+        double getP99Ms();
+
+        /**
+         * @return la latencia maxima.
+         */
+        double getMaximoMs();
+    }
+
+    /**
+     * Dominio de los MXBeans.
+     */
+    public static final String DOMINIO = "cl.ucn.disc.pa.bibliotech";
+
+    /**
+     * Numero de la ultima instancia (distingue los MXBeans de varios Sistemas en la misma JVM).
+     */
+    private static final AtomicInteger INSTANCIAS = new AtomicInteger();
+
+    /**
+     * Latencias de cada operacion.
+     */
+    private final Map<Operacion, HistogramaLatencias> histogramas = new EnumMap<>(Operacion.class);
+
+    /**
+     * Bytes leidos directamente (ademas de los de {@link #fuentesLeidos}).
+     */
+    private final LongAdder bytesLeidos = new LongAdder();
+
+    /**
+     * Bytes escritos directamente (ademas de los de {@link #fuentesEscritos}).
+     */
+    private final LongAdder bytesEscritos = new LongAdder();
+
+    /**
+     * Otros contadores de bytes leidos (los componentes que llevan su propia cuenta). Se agregan al partir y se leen
+     * en cada consulta, asi que se copian al escribir y se leen sin candados.
+     */
+    private final List<LongSupplier> fuentesLeidos = new CopyOnWriteArrayList<>();
+
+    /**
+     * Otros contadores de bytes escritos.
+     */
+    private final List<LongSupplier> fuentesEscritos = new CopyOnWriteArrayList<>();
+
+    /**
+     * Medidores del estado, por nombre: mapa inmutable que se reemplaza completo al agregar uno, para leerlo sin
+     * candados.
+     */
+    private volatile Map<String, LongSupplier> medidores = Map.of();
+
+    /**
+     * Nombres de los MXBeans registrados.
+     */
+    private final List<ObjectName> registrados = new ArrayList<>();
+
+    /**
+     * Hilo del volcado periodico (null si no hay volcado).
+     */
+    private ScheduledExecutorService volcador;
+
+    /**
+     * The Constructor.
+     */
+    public MetricasSistema() {
+        for (Operacion operacion : Operacion.values()) {
+            this.histogramas.put(operacion, new HistogramaLatencias());
+        }
+    }
+
+    /**
+     * Registra una operacion terminada.
+     *
+     * @param operacion terminada.
+     * @param inicio    de la operacion (System.nanoTime).
+     * @param exito     si termino sin errores.
+     */
+    public void registrar(final Operacion operacion, final long inicio, final boolean exito) {
+        this.histogramas.get(operacion).registrar(System.nanoTime() - inicio, exito);
+    }
+
+    /**
+     * @param bytes leidos por la persistencia.
+     */
+    public void leidos(final long bytes) {
+        this.bytesLeidos.add(bytes);
+    }
+
+    /**
+     * @param bytes escritos por la persistencia.
+     */
+    public void escritos(final long bytes) {
+        this.bytesEscritos.add(bytes);
+    }
+
+    /**
+     * Agrega los contadores de bytes de un componente que lleva su propia cuenta.
+     *
+     * @param leidos   bytes leidos por el componente.
+     * @param escritos bytes escritos por el componente.
+     */
+    public void agregarFuente(final LongSupplier leidos, final LongSupplier escritos) {
+        this.fuentesLeidos.add(leidos);
+        this.fuentesEscritos.add(escritos);
+    }
+
+    /**
+     * Agrega (o reemplaza) un medidor del estado.
+     *
+     * @param nombre del medidor.
+     * @param valor  del medidor (se lee al consultar las metricas, desde cualquier hilo).
+     */
+    public synchronized void agregarMedidor(final String nombre, final LongSupplier valor) {
+        Map<String, LongSupplier> medidores = new LinkedHashMap<>(this.medidores);
+        medidores.put(nombre, valor);
+        this.medidores = Collections.unmodifiableMap(medidores);
+    }
+
+    /**
+     * @param operacion a consultar.
+     * @return el resumen de las latencias de la operacion.
+     */
+    public HistogramaLatencias.Resumen resumir(final Operacion operacion) {
+        return this.histogramas.get(operacion).resumir();
+    }
+
+    /**
+     * @return los bytes leidos por la persistencia.
+     */
+    public long getBytesLeidos() {
+        long total = this.bytesLeidos.sum();
+        for (LongSupplier fuente : this.fuentesLeidos) {
+            total += fuente.getAsLong();
+        }
+        return total;
+    }
+
+    /**
+     * @return los bytes escritos por la persistencia.
+     */
+    public long getBytesEscritos() {
+        long total = this.bytesEscritos.sum();
+        for (LongSupplier fuente : this.fuentesEscritos) {
+            total += fuente.getAsLong();
+        }
+        return total;
+    }
+
+    /**
+     * @return el valor actual de cada medidor.
+     */
+    public Map<String, Long> getMedidores() {
+        Map<String, Long> valores = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> medidor : this.medidores.entrySet()) {
+            valores.put(medidor.getKey(), medidor.getValue().getAsLong());
+        }
+        return valores;
+    }
+
+    /**
+     * @return todas las metricas en texto: una linea por operacion (latencias en milisegundos) y luego los bytes y
+     * los medidores.
+     */
+    public String getResumen() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("# bibliotech ").append(LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS)).append('\n');
+        sb.append(String.format(Locale.ROOT, "%-14s %10s %8s %12s %12s %12s %12s %12s%n", "operacion", "cantidad",
+                "errores", "promedio_ms", "p50_ms", "p95_ms", "p99_ms", "maximo_ms"));
+        for (Operacion operacion : Operacion.values()) {
+            HistogramaLatencias.Resumen resumen = this.resumir(operacion);
+            sb.append(String.format(Locale.ROOT, "%-14s %10d %8d %12.3f %12.3f %12.3f %12.3f %12.3f%n",
+                    operacion.getNombre(), resumen.cantidad(), resumen.errores(), resumen.promedio() / 1e6,
+                    resumen.p50() / 1e6, resumen.p95() / 1e6, resumen.p99() / 1e6, resumen.maximo() / 1e6));
+        }
+        sb.append("bytesLeidos ").append(this.getBytesLeidos()).append('\n');
+        sb.append("bytesEscritos ").append(this.getBytesEscritos()).append('\n');
+        for (Map.Entry<String, Long> medidor : this.getMedidores().entrySet()) {
+            sb.append(medidor.getKey()).append(' ').append(medidor.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Publica las metricas como MXBeans en el servidor de la plataforma: {@code <dominio>:type=Sistema,instancia=n}
+     * y {@code <dominio>:type=Operacion,instancia=n,name=<operacion>}.
+     *
+     * @throws IllegalStateException si no se pudieron registrar.
+     */
+    public synchronized void publicar() {
+        if (!this.registrados.isEmpty()) {
+            return;
+        }
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        int instancia = INSTANCIAS.incrementAndGet();
+        try {
+            ObjectName nombre = new ObjectName(DOMINIO + ":type=Sistema,instancia=" + instancia);
+            servidor.registerMBean(new SistemaJmx(this), nombre);
+            this.registrados.add(nombre);
+            for (Operacion operacion : Operacion.values()) {
+                nombre = new ObjectName(DOMINIO + ":type=Operacion,instancia=" + instancia + ",name="
+                        + operacion.getNombre());
+                servidor.registerMBean(new OperacionJmx(this.histogramas.get(operacion)), nombre);
+                this.registrados.add(nombre);
+            }
+        } catch (JMException ex) {
+            this.retirar();
+            throw new IllegalStateException("No se pudieron publicar las metricas en JMX", ex);
+        }
+    }
+
+    /**
+     * Vuelca las metricas (ver {@link #getResumen()}) a un archivo cada cierto tiempo, en un hilo propio. El archivo
+     * se reemplaza de forma atomica: nunca se lee a medio escribir.
+     *
+     * @param archivo destino.
+     * @param periodo entre volcados.
+     */
+    public synchronized void volcarCada(final Path archivo, final Duration periodo) {
+        if (this.volcador != null) {
+            throw new IllegalStateException("El volcado de las metricas ya esta iniciado!");
+        }
+        this.volcador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "bibliotech-metricas");
+            // el volcado no impide que el programa termine.
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        long milisegundos = periodo.toMillis();
+        this.volcador.scheduleWithFixedDelay(() -> {
+            try {
+                this.volcar(archivo);
+            } catch (IOException ex) {
+                // se intenta de nuevo en el siguiente periodo.
+            }
+        }, milisegundos, milisegundos, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Escribe las metricas (ver {@link #getResumen()}) en un archivo, reemplazandolo de forma atomica.
+     *
+     * @param archivo destino.
+     * @throws IOException en caso de algun error.
+     */
+    public void volcar(final Path archivo) throws IOException {
+        String resumen = this.getResumen();
+        EscrituraAtomica.escribir(archivo, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(resumen);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Detiene el volcado periodico y retira los MXBeans.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.volcador != null) {
+            this.volcador.shutdownNow();
+            this.volcador = null;
+        }
+        this.retirar();
+    }
+
+    /**
+     * Retira los MXBeans registrados.
+     */
+    private void retirar() {
+        MBeanServer servidor = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName nombre : this.registrados) {
+            try {
+                servidor.unregisterMBean(nombre);
+            } catch (JMException ex) {
+                // ya no estaba registrado.
+            }
+        }
+        this.registrados.clear();
+    }
+
+    /**
+     * MXBean de las metricas generales.
+     *
+     * @param metricas del Sistema.
+     */
+    private record SistemaJmx(MetricasSistema metricas) implements SistemaMXBean {
+
+        @Override
+        public long getBytesLeidos() {
+            return this.metricas.getBytesLeidos();
+        }
+
+        @Override
+        public long getBytesEscritos() {
+            return this.metricas.getBytesEscritos();
+        }
+
+        @Override
+        public Map<String, Long> getMedidores() {
+            return this.metricas.getMedidores();
+        }
+
+        @Override
+        public String getResumen() {
+            return this.metricas.getResumen();
+        }
+    }
+
+    /**
+     * MXBean de una operacion.
+     *
+     * @param histograma de la operacion.
+     */
+    private record OperacionJmx(HistogramaLatencias histograma) implements OperacionMXBean {
+
+        @Override
+        public long getCantidad() {
+            return this.histograma.resumir().cantidad();
+        }
+
+        @Override
+        public long getErrores() {
+            return this.histograma.resumir().errores();
+        }
+
+        @Override
+        public double getPromedioMs() {
+            return this.histograma.resumir().promedio() / 1e6;
+        }
+
+        @Override
+        public double getP50Ms() {
+            return this.histograma.resumir().p50() / 1e6;
+        }
+
+        @Override
+        public double getP95Ms() {
+            return this.histograma.resumir().p95() / 1e6;
+        }
+
+        @Override
+        public double getP99Ms() {
+            return this.histograma.resumir().p99() / 1e6;
+        }
+
+        @Override
+        public double getMaximoMs() {
+            return this.histograma.resumir().maximo() / 1e6;
+        }
+    }
+}
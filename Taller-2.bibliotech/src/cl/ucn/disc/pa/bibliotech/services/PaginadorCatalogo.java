@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Libro;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Despliega el catalogo de libros disponibles por paginas, con filtros por categoria y calificacion minima y
+ * distintos ordenes. Cada pagina se escribe directamente en la salida recorriendo los libros ya ordenados (en orden de
+ * ingreso el catalogo, por calificacion el {@link IndiceCalificaciones} y por titulo o autor el
+ * {@link IndiceAlfabetico}), sin guardar ni ordenar libros: la memoria no depende del tamanio del catalogo ni de la
+ * pagina. Sin filtros el total es el contador de libros disponibles del catalogo; con filtros contarlos obliga a
+ * recorrer todo el orden, por lo que solo se cuentan cuando se pide.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class PaginadorCatalogo {
+
+    /**
+     * Ordenes del catalogo.
+     */
+    public enum Orden {
+        /**
+         * Orden en que los libros ingresaron al catalogo.
+         */
+        INGRESO(null),
+        /**
+         * Por titulo.
+         */
+        TITULO(Comparator.comparing(Libro::getTitulo, String.CASE_INSENSITIVE_ORDER)),
+        /**
+         * Por autor y luego por titulo.
+         */
+        AUTOR(Comparator.comparing((Libro libro) -> libro.getAutor().trim(), String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(Libro::getTitulo, String.CASE_INSENSITIVE_ORDER)),
+        /**
+         * Mejor calificacion primero y, a igual calificacion, el ultimo en ingresar primero (el orden de
+         * {@link IndiceCalificaciones}).
+         */
+        CALIFICACION(null);
+
+        /**
+         * Comparador de los libros de los ordenes alfabeticos (null en los demas); a igualdad decide el orden de
+         * ingreso.
+         */
+        final Comparator<Libro> comparador;
+
+        /**
+         * The Constructor.
+         *
+         * @param comparador de los libros.
+         */
+        Orden(final Comparator<Libro> comparador) {
+            this.comparador = comparador;
+        }
+    }
+
+    /**
+     * Constructor privado: nadie puede instanciar esta clase.
+     */
+    private PaginadorCatalogo() {
+        // nothing here
+    }
+
+    /**
+     * Escribe una pagina de los libros disponibles del catalogo.
+     *
+     * @param catalogo           a desplegar.
+     * @param calificaciones     indice de calificaciones del catalogo.
+     * @param alfabetico         indice alfabetico del catalogo.
+     * @param salida             donde escribir.
+     * @param categoria          de los libros (null para todas).
+     * @param calificacionMinima de los libros.
+     * @param orden              de los libros.
+     * @param pagina             a escribir (desde 0).
+     * @param tamanio            cantidad de libros por pagina.
+     * @param contar             si se deben contar los libros que cumplen los filtros (recorre todo el orden).
+     * @return la cantidad total de libros que cumplen los filtros, o -1 si hay filtros y no se pidio contarlos.
+     * @throws IOException en caso de un error al escribir.
+     */
+    public static int escribir(final Catalogo catalogo, final IndiceCalificaciones calificaciones,
+                               final IndiceAlfabetico alfabetico, final Appendable salida, final String categoria,
+                               final double calificacionMinima, final Orden orden, final int pagina, final int tamanio,
+                               final boolean contar) throws IOException {
+        if (pagina < 0 || tamanio <= 0) {
+            throw new IllegalArgumentException("Pagina no valida!");
+        }
+        long desde = (long) pagina * tamanio;
+        long hasta = desde + tamanio;
+        boolean sinFiltros = categoria == null && calificacionMinima <= 0.0;
+
+        // el indice de calificaciones ya separa las categorias.
+        FiltroCategoria filtro = categoria == null || orden == Orden.CALIFICACION ? null
+                : new FiltroCategoria(categoria);
+        PrimitiveIterator.OfInt ids = switch (orden) {
+            case INGRESO -> disponibles(catalogo);
+            case CALIFICACION -> calificaciones.porCalificacion(categoria);
+            case TITULO, AUTOR -> alfabetico.enOrden(orden);
+        };
+
+        long total = 0;
+        while (ids.hasNext() && (total < hasta || contar && !sinFiltros)) {
+            int id = ids.nextInt();
+            if (!catalogo.estaDisponible(id)) {
+                continue;
+            }
+            Libro libro = catalogo.obtener(id);
+            double calificacion = libro.getCalificacion();
+            if (orden == Orden.CALIFICACION && calificacion < calificacionMinima) {
+                // el resto tiene una calificacion menor.
+                break;
+            }
+            if (cumple(libro, calificacion, filtro, calificacionMinima)) {
+                if (total >= desde && total < hasta) {
+                    escribirLibro(salida, libro);
+                }
+                total++;
+            }
+        }
+        if (sinFiltros) {
+            return catalogo.getCantidadDisponibles();
+        }
+        return contar ? (int) Math.min(total, Integer.MAX_VALUE) : -1;
+    }
+
+    /**
+     * @param catalogo a recorrer.
+     * @return los ids de los libros disponibles del catalogo, en orden de ingreso.
+     */
+    private static PrimitiveIterator.OfInt disponibles(final Catalogo catalogo) {
+        return new PrimitiveIterator.OfInt() {
+            /**
+             * Siguiente libro disponible (-1 si no hay mas).
+             */
+            private int siguiente = catalogo.siguienteDisponible(0);
+
+            @Override
+            public boolean hasNext() {
+                return this.siguiente >= 0;
+            }
+
+            @Override
+            public int nextInt() {
+                if (this.siguiente < 0) {
+                    throw new NoSuchElementException();
+                }
+                int id = this.siguiente;
+                this.siguiente = catalogo.siguienteDisponible(id + 1);
+                return id;
+            }
+        };
+    }
+
+    /**
+     * @param libro              a revisar.
+     * @param calificacion       del libro.
+     * @param categoria          pedida (null para todas).
+     * @param calificacionMinima pedida.
+     * @return true si el libro cumple los filtros.
+     */
+    private static boolean cumple(final Libro libro, final double calificacion, final FiltroCategoria categoria,
+                                  final double calificacionMinima) {
+        return calificacion >= calificacionMinima && (categoria == null || categoria.acepta(libro.getCategoria()));
+    }
+
+    /**
+     * Filtro por categoria que recuerda la respuesta para cada instancia de categoria: como las categorias de los
+     * libros del catalogo son strings compartidos ({@link Catalogo#getCadenas()}), casi todas las comparaciones son
+     * de identidad.
+     */
+    private static final class FiltroCategoria {
+
+        /**
+         * La categoria pedida.
+         */
+        private final String pedida;
+
+        /**
+         * Respuesta para cada instancia de categoria ya revisada.
+         */
+        private final Map<String, Boolean> revisadas = new IdentityHashMap<>();
+
+        /**
+         * The Constructor.
+         *
+         * @param pedida la categoria pedida.
+         */
+        private FiltroCategoria(final String pedida) {
+            this.pedida = pedida.trim();
+        }
+
+        /**
+         * @param categoria de un libro.
+         * @return true si es la categoria pedida.
+         */
+        private boolean acepta(final String categoria) {
+            Boolean acepta = this.revisadas.get(categoria);
+            if (acepta == null) {
+                acepta = categoria.trim().equalsIgnoreCase(this.pedida);
+                this.revisadas.put(categoria, acepta);
+            }
+            return acepta;
+        }
+    }
+
+    /**
+     * Escribe un libro con el mismo formato del listado del catalogo.
+     *
+     * @param salida donde escribir.
+     * @param libro  a escribir.
+     * @throws IOException en caso de un error al escribir.
+     */
+    private static void escribirLibro(final Appendable salida, final Libro libro) throws IOException {
+        salida.append("Titulo    : ").append(libro.getTitulo()).append("\n");
+        salida.append("Autor     : ").append(libro.getAutor()).append("\n");
+        salida.append("ISBN      : ").append(libro.getIsbn()).append("\n");
+        salida.append("Categoria : ").append(libro.getCategoria()).append("\n");
+        salida.append("Calificacion: ").append(String.valueOf(libro.getCalificacion())).append("\n");
+        salida.append("\n");
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Etapa de persistencia en segundo plano: un hilo propio ejecuta la escritura cuando se solicita, sin que quien la
+ * solicita espere al disco.
+ * <p>
+ * La cola es acotada a una sola escritura pendiente: las solicitudes que llegan mientras se escribe se agrupan en la
+ * siguiente escritura, que guarda el estado de ese momento (y por lo tanto cubre a todas). {@link #esperar()}
+ * permite bloquearse hasta que una escritura posterior a la llamada termine.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class PersistenciaAsincrona implements Closeable {
+
+    /**
+     * Una escritura.
+     */
+    @FunctionalInterface
+    public interface Escritura {
+
+        /**
+         * @throws IOException en caso de algun error.
+         */
+        void escribir() throws IOException;
+    }
+
+    /**
+     * La escritura a ejecutar.
+     */
+    private final Escritura escritura;
+
+    /**
+     * El hilo que escribe.
+     */
+    private final Thread hilo;
+
+    /**
+     * Numero de la ultima solicitud.
+     */
+    private long solicitadas;
+
+    /**
+     * Ultima solicitud cubierta por una escritura ya iniciada.
+     */
+    private long iniciadas;
+
+    /**
+     * Ultima solicitud cubierta por una escritura ya terminada (con o sin error).
+     */
+    private long terminadas;
+
+    /**
+     * Ultima solicitud cubierta por una escritura exitosa.
+     */
+    private long exitosas;
+
+    /**
+     * Error de la ultima escritura fallida.
+     */
+    private IOException error;
+
+    /**
+     * Cantidad de escrituras realizadas.
+     */
+    private long escrituras;
+
+    /**
+     * Si ya no se aceptan solicitudes.
+     */
+    private boolean cerrada;
+
+    /**
+     * The Constructor: inicia el hilo de escritura.
+     *
+     * @param nombre     del hilo.
+     * @param escritura a ejecutar en cada solicitud.
+     */
+    public PersistenciaAsincrona(final String nombre, final Escritura escritura) {
+        this.escritura = escritura;
+        this.hilo = new Thread(this::procesar, nombre);
+        // la bitacora conserva lo que no se alcance a escribir si el programa termina sin cerrar.
+        this.hilo.setDaemon(true);
+        this.hilo.start();
+    }
+
+    /**
+     * Solicita una escritura sin esperarla.
+     *
+     * @return el numero de la solicitud.
+     */
+    public synchronized long solicitar() {
+        if (this.cerrada) {
+            throw new IllegalStateException("La persistencia ya esta cerrada!");
+        }
+        this.solicitadas++;
+        this.notifyAll();
+        return this.solicitadas;
+    }
+
+    /**
+     * Solicita una escritura y espera a que termine.
+     *
+     * @throws IOException si la escritura fallo (o se interrumpio la espera).
+     */
+    public synchronized void esperar() throws IOException {
+        long solicitud = this.solicitar();
+        try {
+            while (this.terminadas < solicitud) {
+                this.wait();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Se interrumpio la espera de la persistencia");
+        }
+        if (this.exitosas < solicitud) {
+            throw new IOException("No se pudo guardar la informacion", this.error);
+        }
+    }
+
+    /**
+     * @return la cantidad de escrituras realizadas (menor o igual a las solicitudes, que se agrupan).
+     */
+    public synchronized long getEscrituras() {
+        return this.escrituras;
+    }
+
+    /**
+     * @return la cantidad de solicitudes recibidas.
+     */
+    public synchronized long getSolicitudes() {
+        return this.solicitadas;
+    }
+
+    /**
+     * Ejecuta las solicitudes pendientes hasta que se cierra.
+     */
+    private void procesar() {
+        while (true) {
+            long solicitud;
+            synchronized (this) {
+                while (this.iniciadas == this.solicitadas && !this.cerrada) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+                if (this.iniciadas == this.solicitadas) {
+                    // cerrada y sin solicitudes pendientes.
+                    return;
+                }
+                solicitud = this.solicitadas;
+                this.iniciadas = solicitud;
+            }
+
+            IOException fallo = null;
+            try {
+                this.escritura.escribir();
+            } catch (IOException ex) {
+                fallo = ex;
+            } catch (RuntimeException ex) {
+                fallo = new IOException(ex);
+            }
+
+            synchronized (this) {
+                this.terminadas = solicitud;
+                this.escrituras++;
+                if (fallo == null) {
+                    this.exitosas = solicitud;
+                } else {
+                    this.error = fallo;
+                }
+                this.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Termina las escrituras pendientes y detiene el hilo.
+     *
+     * @throws IOException si se interrumpio la espera.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            this.cerrada = true;
+            this.notifyAll();
+        }
+        try {
+            this.hilo.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Se interrumpio el cierre de la persistencia");
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.UnaryOperator;
+
+/**
+ * Pool de strings compartidos: los autores y categorias se repiten en miles de libros, por lo que cada valor
+ * distinto se guarda una sola vez y todos los libros apuntan a la misma instancia (dos libros con la misma categoria
+ * tienen la misma referencia).
+ * <p>
+ * Cada {@link Catalogo} tiene su pool: el pool guarda a lo mas los valores distintos de los libros de su catalogo
+ * (que no se eliminan) y se libera junto con el catalogo, por ejemplo al recargar la informacion.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class PoolCadenas implements UnaryOperator<String> {
+
+    /**
+     * Los strings compartidos (cada uno es llave y valor de si mismo).
+     */
+    private final ConcurrentMap<String, String> cadenas = new ConcurrentHashMap<>();
+
+    /**
+     * @param cadena a compartir.
+     * @return la instancia compartida igual a la cadena (null si la cadena es null).
+     */
+    public String compartir(final String cadena) {
+        if (cadena == null) {
+            return null;
+        }
+        // casi siempre el string ya esta: una lectura sin candados.
+        String compartida = this.cadenas.get(cadena);
+        if (compartida == null) {
+            compartida = this.cadenas.putIfAbsent(cadena, cadena);
+        }
+        return compartida == null ? cadena : compartida;
+    }
+
+    /**
+     * @param cadena a compartir.
+     * @return la instancia compartida igual a la cadena, ver {@link #compartir(String)}.
+     */
+    @Override
+    public String apply(final String cadena) {
+        return this.compartir(cadena);
+    }
+
+    /**
+     * @return la cantidad de strings distintos en el pool.
+     */
+    public int getCantidad() {
+        return this.cadenas.size();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Registro de los libros y socios modificados desde la ultima vez que se guardaron, para guardar solo los archivos
+ * (y, con archivos segmentados, solo las partes) que cambiaron.
+ * <p>
+ * Las marcas se agregan sin candados desde varias sesiones; {@link #tomar()} se debe llamar cuando nadie esta
+ * marcando (en el Sistema, con el candado exclusivo de compactacion).
+ *
+ * @author Programacion Avanzada.
+ */
+final class RegistroCambios {
+
+    /**
+     * Los cambios tomados para guardarlos.
+     *
+     * @param libros      ISBN (normalizados) de los libros modificados.
+     * @param socios      numeros de los socios modificados.
+     * @param instantanea si la instantanea binaria se debe escribir aunque no haya cambios.
+     */
+    record Pendientes(Set<String> libros, Set<Integer> socios, boolean instantanea) {
+
+        /**
+         * @return true si se modifico algun libro.
+         */
+        boolean hayLibros() {
+            return !this.libros.isEmpty();
+        }
+
+        /**
+         * @return true si se modifico algun socio.
+         */
+        boolean haySocios() {
+            return !this.socios.isEmpty();
+        }
+
+        /**
+         * @return true si no hay nada que guardar.
+         */
+        boolean vacio() {
+            return this.libros.isEmpty() && this.socios.isEmpty() && !this.instantanea;
+        }
+    }
+
+    /**
+     * Libros modificados.
+     */
+    private volatile Set<String> libros = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Socios modificados.
+     */
+    private volatile Set<Integer> socios = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Si la instantanea binaria esta desactualizada.
+     */
+    private final AtomicBoolean instantanea = new AtomicBoolean();
+
+    /**
+     * @param isbn del libro modificado.
+     */
+    void marcarLibro(final String isbn) {
+        this.libros.add(Catalogo.normalizarIsbn(isbn));
+    }
+
+    /**
+     * @param numeroDeSocio del socio modificado.
+     */
+    void marcarSocio(final int numeroDeSocio) {
+        this.socios.add(numeroDeSocio);
+    }
+
+    /**
+     * Marca la instantanea binaria como desactualizada (por ejemplo, si se cargo desde los archivos json).
+     */
+    void marcarInstantanea() {
+        this.instantanea.set(true);
+    }
+
+    /**
+     * Entrega los cambios registrados y comienza un registro vacio.
+     *
+     * @return los cambios pendientes.
+     */
+    Pendientes tomar() {
+        Pendientes pendientes = new Pendientes(this.libros, this.socios, this.instantanea.getAndSet(false));
+        this.libros = ConcurrentHashMap.newKeySet();
+        this.socios = ConcurrentHashMap.newKeySet();
+        return pendientes;
+    }
+
+    /**
+     * Vuelve a registrar cambios que no se pudieron guardar.
+     *
+     * @param pendientes tomados con {@link #tomar()}.
+     */
+    void devolver(final Pendientes pendientes) {
+        this.libros.addAll(pendientes.libros());
+        this.socios.addAll(pendientes.socios());
+        if (pendientes.instantanea()) {
+            this.instantanea.set(true);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import cl.ucn.disc.pa.bibliotech.model.Socio;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Sesion de un Socio en el Sistema, obtenida con {@link Sistema#iniciarSession(int, String)}.
+ * <p>
+ * Cada terminal trabaja con su propia sesion; varias sesiones pueden operar en paralelo sobre el mismo Sistema.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class Sesion {
+
+    /**
+     * El Sistema de la sesion.
+     */
+    private final Sistema sistema;
+
+    /**
+     * El Socio que inicio la sesion.
+     */
+    private final Socio socio;
+
+    /**
+     * Si la sesion sigue activa.
+     */
+    private volatile boolean activa;
+
+    /**
+     * The Constructor.
+     *
+     * @param sistema de la sesion.
+     * @param socio   que inicio la sesion.
+     */
+    Sesion(final Sistema sistema, final Socio socio) {
+        this.sistema = sistema;
+        this.socio = socio;
+        this.activa = true;
+    }
+
+    /**
+     * @return el numero del Socio de la sesion.
+     */
+    public int getNumeroDeSocio() {
+        return this.socio.getNumeroDeSocio();
+    }
+
+    /**
+     * @return true si la sesion sigue activa.
+     */
+    public boolean isActiva() {
+        return this.activa;
+    }
+
+    /**
+     * Presta un libro al Socio de la sesion.
+     *
+     * @param isbn del libro a prestar.
+     * @throws IOException en caso de un error al registrar el prestamo.
+     */
+    public void realizarPrestamoLibro(final String isbn) throws IOException {
+        this.validarActiva();
+        this.sistema.realizarPrestamoLibro(this.socio, isbn);
+    }
+
+    /**
+     * Devuelve un libro que el Socio de la sesion tiene en prestamo.
+     *
+     * @param isbn del libro a devolver.
+     * @throws IOException en caso de un error al registrar la devolucion.
+     */
+    public void devolverLibro(final String isbn) throws IOException {
+        this.validarActiva();
+        this.sistema.devolverLibro(this.socio, isbn);
+    }
+
+    /**
+     * Renueva el prestamo de un libro que el Socio de la sesion tiene en prestamo.
+     *
+     * @param isbn del libro a renovar.
+     * @return el nuevo vencimiento del prestamo.
+     * @throws IOException en caso de un error al registrar la renovacion.
+     */
+    public LocalDate renovarPrestamo(final String isbn) throws IOException {
+        this.validarActiva();
+        return this.sistema.renovarPrestamo(this.socio, isbn);
+    }
+
+    /**
+     * Califica un libro.
+     *
+     * @param isbn         del libro a calificar.
+     * @param calificacion entre 1.0 y 5.0, con hasta 2 decimales.
+     * @throws IOException en caso de un error al registrar la calificacion.
+     */
+    public void calificarLibro(final String isbn, final double calificacion) throws IOException {
+        this.validarActiva();
+        this.sistema.calificarLibro(isbn, calificacion);
+    }
+
+    /**
+     * @return los datos del Socio de la sesion.
+     */
+    public String obtenerDatosSocio() {
+        this.validarActiva();
+        return this.sistema.obtenerDatosSocio(this.socio);
+    }
+
+    /**
+     * Cambia la contrasenia del Socio de la sesion.
+     *
+     * @param contrasenia nueva.
+     * @throws IOException en caso de un error al registrar el cambio.
+     */
+    public void cambiarContrasenia(final String contrasenia) throws IOException {
+        this.validarActiva();
+        this.sistema.cambiarContrasenia(this.socio, contrasenia);
+    }
+
+    /**
+     * Cambia el correo del Socio de la sesion.
+     *
+     * @param correo nuevo.
+     * @throws IOException en caso de un error al registrar el cambio.
+     */
+    public void cambiarCorreo(final String correo) throws IOException {
+        this.validarActiva();
+        this.sistema.cambiarCorreo(this.socio, correo);
+    }
+
+    /**
+     * Cierra la sesion; despues de esto ninguna operacion esta permitida.
+     */
+    public void cerrar() {
+        this.activa = false;
+    }
+
+    /**
+     * Valida que la sesion siga activa.
+     */
+    private void validarActiva() {
+        if (!this.activa) {
+            throw new IllegalArgumentException("La sesion fue cerrada!");
+        }
+    }
+}
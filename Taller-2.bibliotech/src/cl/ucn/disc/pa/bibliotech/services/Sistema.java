@@ -6,27 +6,116 @@ package cl.ucn.disc.pa.bibliotech.services;
 
 import cl.ucn.disc.pa.bibliotech.model.Libro;
 import cl.ucn.disc.pa.bibliotech.model.Socio;
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import edu.princeton.cs.stdlib.StdIn;
 
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 
 /**
  * The Sistema.
+ * <p>
+ * Es seguro para uso concurrente: cada terminal trabaja con su propia {@link Sesion}. Las operaciones sobre un
+ * socio se protegen con candados repartidos (striped locks) segun el numero de socio, por lo que operaciones sobre
+ * socios distintos no se bloquean entre si; los ejemplares y las calificaciones de los libros se actualizan sin
+ * candados (compare-and-set y acumuladores).
  *
  * @author Programacion Avanzada.
  */
 public final class Sistema {
 
     /**
-     * Procesador de JSON.
+     * Archivo de la bitacora de operaciones.
      */
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Path ARCHIVO_BITACORA = Path.of("bitacora.log");
+
+    /**
+     * Archivo con las operaciones de la bitacora que se estan compactando en segundo plano.
+     */
+    private static final Path ARCHIVO_BITACORA_ANTERIOR = Path.of("bitacora.anterior.log");
+
+    /**
+     * Cantidad de operaciones entre cada fsync de la bitacora. Con 1 (por omision) una operacion termina recien cuando
+     * esta en el disco, y las operaciones simultaneas de distintos socios comparten un solo fsync (group commit, ver
+     * {@link Bitacora}). Con N mayor a 1 solo una de cada N operaciones espera: una caida del sistema operativo puede
+     * perder hasta las ultimas N - 1. Con 0 el sistema operativo decide cuando escribir al disco.
+     */
+    private static final int OPERACIONES_POR_SINCRONIZACION = Integer.getInteger("bibliotech.bitacora.fsync", 1);
+
+    /**
+     * Cantidad de operaciones en la bitacora antes de compactarla en libros.json y socios.json.
+     */
+    private static final int OPERACIONES_POR_COMPACTACION = Integer.getInteger("bibliotech.bitacora.compactacion", 1000);
+
+    /**
+     * Archivo de la instantanea binaria de libros y socios.
+     */
+    private static final Path ARCHIVO_INSTANTANEA = Path.of("bibliotech.bin");
+
+    /**
+     * Si se debe mantener (y preferir al cargar) la instantanea binaria.
+     */
+    private static final boolean USAR_INSTANTANEA = Boolean.parseBoolean(
+            System.getProperty("bibliotech.instantanea", "true"));
+
+    /**
+     * Cantidad de fragmentos en que se guarda el catalogo (0 = un solo libros.json). Una vez creados, los fragmentos
+     * son los que guardan el catalogo y se usan aunque la propiedad no este.
+     */
+    private static final int FRAGMENTOS = Integer.getInteger("bibliotech.fragmentos", 0);
+
+    /**
+     * Directorio de los fragmentos del catalogo.
+     */
+    private static final Path DIRECTORIO_FRAGMENTOS = Path.of("libros");
+
+    /**
+     * Iteraciones de PBKDF2 para los hash de contrasenias nuevos.
+     */
+    private static final int ITERACIONES_CONTRASENIA = Integer.getInteger("bibliotech.contrasenias.iteraciones",
+            310_000);
+
+    /**
+     * Cantidad maxima de verificaciones de contrasenia recordadas.
+     */
+    private static final int CAPACIDAD_CACHE_CONTRASENIAS = Integer.getInteger("bibliotech.contrasenias.cache",
+            1024);
+
+    /**
+     * Segundos que se recuerda una verificacion de contrasenia exitosa.
+     */
+    private static final int VIGENCIA_CACHE_CONTRASENIAS = Integer.getInteger(
+            "bibliotech.contrasenias.cache.segundos", 300);
+
+    /**
+     * Si las metricas se publican en JMX.
+     */
+    private static final boolean PUBLICAR_METRICAS = Boolean.parseBoolean(
+            System.getProperty("bibliotech.metricas.jmx", "true"));
+
+    /**
+     * Segundos entre cada volcado de las metricas a {@link #ARCHIVO_METRICAS} (0 = sin volcado).
+     */
+    private static final int SEGUNDOS_METRICAS = Integer.getInteger("bibliotech.metricas.segundos", 0);
+
+    /**
+     * Archivo del volcado de las metricas.
+     */
+    private static final Path ARCHIVO_METRICAS = Path.of("metricas.txt");
+
+    /**
+     * Cantidad de candados repartidos para los socios (potencia de 2).
+     */
+    private static final int CANDADOS = 64;
 
     /**
      * The list of Socios.
@@ -34,24 +123,101 @@ public final class Sistema {
     private Socio[] socios;
 
     /**
-     * The list of Libros.
+     * Indice de los Socios por numero de socio.
+     */
+    private IndiceSocios indiceSocios;
+
+    /**
+     * The Catalogo of Libros (indexado por ISBN).
+     */
+    private Catalogo catalogo;
+
+    /**
+     * Indice de texto sobre el titulo, el autor y la categoria de los libros del catalogo.
+     */
+    private IndiceTexto indiceTexto;
+
+    /**
+     * Indices de los libros del catalogo por calificacion (todos y por categoria).
+     */
+    private IndiceCalificaciones indiceCalificaciones;
+
+    /**
+     * Indices de los libros del catalogo por titulo y por autor.
+     */
+    private IndiceAlfabetico indiceAlfabetico;
+
+    /**
+     * Socios que tienen en prestamo cada libro, por ISBN normalizado. Cada arreglo se reemplaza completo (copy on
+     * write) y tiene a lo mas tantos socios como ejemplares del libro.
+     */
+    private Map<String, Socio[]> prestatarios;
+
+    /**
+     * Fragmentos del catalogo, que se cargan a medida que se necesitan (null si el catalogo esta en libros.json).
+     */
+    private final FragmentosCatalogo fragmentos;
+
+    /**
+     * Candados repartidos segun el numero de socio.
+     */
+    private final ReentrantLock[] candadosSocios;
+
+    /**
+     * Las operaciones toman este candado en modo compartido y la compactacion en modo exclusivo, para que la
+     * instantanea nunca omita una operacion que ya esta en la bitacora.
+     */
+    private final ReentrantReadWriteLock candadoCompactacion;
+
+    /**
+     * Bitacora de las operaciones realizadas desde la ultima compactacion.
+     */
+    private final Bitacora bitacora;
+
+    /**
+     * Compacta la bitacora en segundo plano, para que las operaciones no esperen la escritura de los archivos.
+     */
+    private final PersistenciaAsincrona persistencia;
+
+    /**
+     * Si ya se solicito una compactacion que aun no traspasa la bitacora.
      */
-    private Libro[] libros;
+    private final AtomicBoolean compactacionSolicitada = new AtomicBoolean();
 
     /**
-     * Socio en el sistema.
+     * Libros y socios modificados desde la ultima vez que se guardaron.
      */
-    private Socio socio;
+    private final RegistroCambios cambios = new RegistroCambios();
+
+    /**
+     * Hash y verificacion de las contrasenias de los socios.
+     */
+    private final VerificadorContrasenias verificador = new VerificadorContrasenias(ITERACIONES_CONTRASENIA,
+            CAPACIDAD_CACHE_CONTRASENIAS, Duration.ofSeconds(VIGENCIA_CACHE_CONTRASENIAS));
+
+    /**
+     * Latencias de las operaciones, bytes de la persistencia y medidores del estado.
+     */
+    private final MetricasSistema metricas = new MetricasSistema();
 
     /**
      * The Sistema.
      */
     public Sistema() throws IOException {
 
-        // no hay socio logeado.
+        long inicio = System.nanoTime();
         this.socios = new Socio[0];
-        this.libros = new Libro[0];
-        this.socio = null;
+        this.indiceSocios = new IndiceSocios(0);
+        // cada catalogo tiene su pool de cadenas, que se libera con el catalogo al recargar la informacion.
+        this.catalogo = new Catalogo(new PoolCadenas());
+        this.prestatarios = new ConcurrentHashMap<>();
+        this.candadosSocios = new ReentrantLock[CANDADOS];
+        for (int i = 0; i < CANDADOS; i++) {
+            this.candadosSocios[i] = new ReentrantLock();
+        }
+        this.candadoCompactacion = new ReentrantReadWriteLock();
+        this.fragmentos = FRAGMENTOS > 0 || FragmentosCatalogo.existen(DIRECTORIO_FRAGMENTOS)
+                ? new FragmentosCatalogo(DIRECTORIO_FRAGMENTOS, FRAGMENTOS, this::cargarFragmento) : null;
 
         // carga de los socios y libros.
         try {
@@ -60,19 +226,75 @@ public final class Sistema {
             // no se encontraron datos, se agregar los por defecto.
 
             // creo un socio
-            this.socios = Utils.append(this.socios, new Socio("John", "Doe", "john.doe@ucn.cl", 1, "john123"));
+            this.socios = new Socio[]{new Socio("John", "Doe", "john.doe@ucn.cl", 1, "john123")};
+            this.indiceSocios = new IndiceSocios(this.socios);
 
-            // creo un libro y lo agrego al arreglo de libros.
-            this.libros = Utils.append(this.libros, new Libro("1491910771", "Head First Java: A Brain-Friendly Guide", " Kathy Sierra", "Programming Languages", 0.0));
+            // los libros por defecto, si el catalogo no esta en fragmentos.
+            if (this.fragmentos == null || !this.fragmentos.existian()) {
 
-            // creo otro libro y lo agrego al arreglo de libros.
-            this.libros = Utils.append(this.libros, new Libro("1491910772", "Effective Java", "Joshua Bloch", "Programming Languages", 0.0));
+                // creo un libro y lo agrego al catalogo.
+                this.catalogo.agregar(new Libro("1491910771", "Head First Java: A Brain-Friendly Guide", " Kathy Sierra", "Programming Languages", 0.0));
 
-        } finally {
-            // guardo la informacion.
-            this.guardarInformacion();
+                // creo otro libro y lo agrego al catalogo.
+                this.catalogo.agregar(new Libro("1491910772", "Effective Java", "Joshua Bloch", "Programming Languages", 0.0));
+            }
+
+            this.indiceTexto = new IndiceTexto();
+            this.indiceCalificaciones = new IndiceCalificaciones(this.catalogo);
+            this.indiceAlfabetico = new IndiceAlfabetico(this.catalogo);
+            for (Libro libro : this.catalogo.obtenerLibros()) {
+                this.indexar(libro);
+                this.cambios.marcarLibro(libro.getIsbn());
+            }
+            for (Socio socio : this.socios) {
+                this.cambios.marcarSocio(socio.getNumeroDeSocio());
+            }
         }
 
+        // primera carga con fragmentos: todo el catalogo se guarda en ellos.
+        if (this.fragmentos != null && !this.fragmentos.existian()) {
+            for (Libro libro : this.catalogo.obtenerLibros()) {
+                this.cambios.marcarLibro(libro.getIsbn());
+            }
+        }
+
+        // reproduzco las operaciones que no alcanzaron a compactarse (primero las de una compactacion interrumpida).
+        this.metricas.leidos(tamanio(ARCHIVO_BITACORA_ANTERIOR) + tamanio(ARCHIVO_BITACORA));
+        Bitacora.reproducir(ARCHIVO_BITACORA_ANTERIOR, this::aplicar);
+        Bitacora.reproducir(ARCHIVO_BITACORA, this::aplicar);
+
+        this.metricas.registrar(MetricasSistema.Operacion.CARGA, inicio, true);
+
+        // guardo lo que cambio y comienzo con una bitacora vacia.
+        RegistroCambios.Pendientes pendientes = this.cambios.tomar();
+        if (!pendientes.vacio()) {
+            this.guardarInformacion(this.librosAGuardar(pendientes, false), this.socios, pendientes);
+        }
+        this.bitacora = new Bitacora(ARCHIVO_BITACORA, OPERACIONES_POR_SINCRONIZACION);
+        this.bitacora.truncar();
+        Files.deleteIfExists(ARCHIVO_BITACORA_ANTERIOR);
+        this.persistencia = new PersistenciaAsincrona("bibliotech-persistencia", this::compactar);
+
+        // medidores del estado (se leen solo al consultar las metricas), JMX y volcado periodico.
+        this.metricas.agregarFuente(() -> 0L, this.bitacora::getBytesEscritos);
+        if (this.fragmentos != null) {
+            this.metricas.agregarFuente(this.fragmentos::getBytesLeidos, this.fragmentos::getBytesEscritos);
+            this.metricas.agregarMedidor("fragmentosCargados", this.fragmentos::getCargados);
+        }
+        this.metricas.agregarMedidor("libros", () -> this.catalogo.getCantidad());
+        this.metricas.agregarMedidor("socios", () -> this.socios.length);
+        this.metricas.agregarMedidor("isbnsPrestados", () -> this.prestatarios.size());
+        this.metricas.agregarMedidor("bitacoraOperaciones", this.bitacora::getOperaciones);
+        this.metricas.agregarMedidor("compactaciones", this.persistencia::getEscrituras);
+        this.metricas.agregarMedidor("contraseniasDerivaciones", () -> this.verificador.getMetricas().derivaciones());
+        this.metricas.agregarMedidor("contraseniasAciertosCache", () -> this.verificador.getMetricas().aciertos());
+        this.metricas.agregarMedidor("contraseniasFallosCache", () -> this.verificador.getMetricas().fallos());
+        if (PUBLICAR_METRICAS) {
+            this.metricas.publicar();
+        }
+        if (SEGUNDOS_METRICAS > 0) {
+            this.metricas.volcarCada(ARCHIVO_METRICAS, Duration.ofSeconds(SEGUNDOS_METRICAS));
+        }
     }
 
     /**
@@ -80,107 +302,368 @@ public final class Sistema {
      *
      * @param numeroDeSocio a utilizar.
      * @param contrasenia   a validar.
+     * @return la sesion del socio.
+     */
+    public Sesion iniciarSession(final int numeroDeSocio, final String contrasenia) {
+        return this.medir(MetricasSistema.Operacion.INICIO_SESION,
+                () -> new Sesion(this, this.autenticar(numeroDeSocio, contrasenia)));
+    }
+
+    /**
+     * Busca un socio y verifica su contrasenia.
+     *
+     * @param numeroDeSocio a utilizar.
+     * @param contrasenia   a validar.
+     * @return el socio.
      */
-    public void iniciarSession(final int numeroDeSocio, final String contrasenia) {
+    private Socio autenticar(final int numeroDeSocio, final String contrasenia) {
 
         // el numero de socio siempre es positivo.
         if (numeroDeSocio <= 0) {
             throw new IllegalArgumentException("El numero de socio no es valido!");
         }
 
-        // recorro el arreglo de Socios.
-        for (Socio socio : this.socios) {
-            // si no lo encontre, retorno una excepsion y no lo dejo continuar.
-            if (!(socio.getNumeroDeSocio() == numeroDeSocio)) {
-                throw new IllegalArgumentException("El socio ingresado no existe!");
-            }
+        // busco el socio en el indice.
+        Socio socio = this.indiceSocios.buscar(numeroDeSocio);
 
+        // si no lo encontre, retorno una excepsion y no lo dejo continuar.
+        if (socio == null) {
+            throw new IllegalArgumentException("El socio ingresado no existe!");
         }
 
-        // recorro el arreglo de Socios para validar la contrasenia
-        for (Socio socio : this.socios) {
-            // si no lo encontre, retorno una excepsion y no lo dejo continuar.
-            if (!(socio.getContrasenia().equals(contrasenia))) {
-                throw new IllegalArgumentException("La contraseña ingresada no existe!");
-            }
+        // la verificacion (cara) se hace sin el candado del socio.
+        String almacenada;
+        ReentrantLock candado = this.candadoSocio(socio);
+        candado.lock();
+        try {
+            almacenada = socio.getContrasenia();
+        } finally {
+            candado.unlock();
         }
 
-        // coloco los datos del socio logeado en el atributo socio
-        this.socio = this.socios[0];
+        // si la contrasenia no corresponde, retorno una excepsion y no lo dejo continuar.
+        if (!this.verificador.verificar(numeroDeSocio, contrasenia, almacenada)) {
+            throw new IllegalArgumentException("La contraseña ingresada no es valida!");
+        }
+
+        // una contrasenia en texto plano (archivos antiguos) se reemplaza por su hash al iniciar sesion, y no al
+        // cargar: derivar el hash de todos los socios retrasaria el inicio del programa.
+        if (!VerificadorContrasenias.esHash(almacenada)) {
+            this.migrarContrasenia(socio, contrasenia, almacenada);
+        }
+
+        return socio;
     }
 
     /**
-     * Cierra la session del Socio.
+     * Reemplaza la contrasenia en texto plano de un socio por su hash, si no cambio mientras se derivaba.
+     *
+     * @param socio       que inicio sesion.
+     * @param contrasenia verificada.
+     * @param almacenada  contrasenia en texto plano del socio.
      */
-    public void cerrarSession() {
-        this.socio = null;
+    private void migrarContrasenia(final Socio socio, final String contrasenia, final String almacenada) {
+        String hash = this.verificador.generar(contrasenia);
+        try {
+            this.ejecutar(this.candadoSocio(socio), () -> {
+                if (!almacenada.equals(socio.getContrasenia())) {
+                    return;
+                }
+                socio.setContrasenia(hash);
+                this.cambios.marcarSocio(socio.getNumeroDeSocio());
+                this.bitacora.registrar(Bitacora.Operacion.CONTRASENIA, String.valueOf(socio.getNumeroDeSocio()),
+                        hash);
+            });
+        } catch (IOException ex) {
+            // la sesion es valida igual: el hash se guarda en la siguiente compactacion o se vuelve a derivar en el
+            // siguiente inicio de sesion.
+        }
     }
 
     /**
      * Metodo que mueve un libro de los disponibles y lo ingresa a un Socio.
      *
-     * @param isbn del libro a prestar.
+     * @param socio que pide el libro.
+     * @param isbn  del libro a prestar.
+     * @throws IOException en caso de un error al registrar el prestamo.
      */
-    public void realizarPrestamoLibro(final String isbn) throws IOException {
-        // el socio debe estar activo.
-        if (this.socio == null) {
-            throw new IllegalArgumentException("Socio no se ha logeado!");
-        }
+    void realizarPrestamoLibro(final Socio socio, final String isbn) throws IOException {
+        this.ejecutar(MetricasSistema.Operacion.PRESTAMO, isbn, this.candadoSocio(socio), () -> {
 
-        // busco el libro.
-        Libro libro = this.buscarLibro(isbn);
+            // busco el libro.
+            Libro libro = this.buscarLibro(isbn);
 
-        // si no lo encontre, lo informo.
-        if (libro == null) {
-            throw new IllegalArgumentException("Libro con isbn " + isbn + " no existe o no se encuentra disponible.");
-        }
+            // reservo un ejemplar (compare-and-set); si no lo consegui, lo informo.
+            if (libro == null || !this.catalogo.prestar(isbn)) {
+                throw new IllegalArgumentException("Libro con isbn " + isbn + " no existe o no se encuentra disponible.");
+            }
+
+            // agrego el libro al socio; si ya tiene el maximo, libero el ejemplar reservado.
+            LocalDate vencimiento = LocalDate.now().plusDays(Socio.PLAZO_PRESTAMO_DIAS);
+            try {
+                socio.agregarLibro(libro, vencimiento);
+            } catch (IllegalArgumentException ex) {
+                this.catalogo.devolver(isbn);
+                throw ex;
+            }
+            this.agregarPrestatario(libro.getIsbn(), socio);
+
+            // se registra la operacion en la bitacora
+            this.cambios.marcarSocio(socio.getNumeroDeSocio());
+            this.bitacora.registrar(Bitacora.Operacion.PRESTAMO, String.valueOf(socio.getNumeroDeSocio()),
+                    libro.getIsbn(), vencimiento.toString());
+        });
+    }
+
+    /**
+     * Metodo que recibe un libro de un Socio y lo deja disponible.
+     *
+     * @param socio que devuelve el libro.
+     * @param isbn  del libro a devolver.
+     * @throws IOException en caso de un error al registrar la devolucion.
+     */
+    void devolverLibro(final Socio socio, final String isbn) throws IOException {
+        this.ejecutar(MetricasSistema.Operacion.DEVOLUCION, isbn, this.candadoSocio(socio), () -> {
+
+            // el socio solo puede devolver un libro que tiene en prestamo.
+            Libro libro = this.buscarLibro(isbn);
+            if (libro == null || socio.devolverLibro(libro.getIsbn()) == null) {
+                throw new IllegalArgumentException("El socio no tiene en prestamo el libro con isbn " + isbn + ".");
+            }
 
-        // agrego el libro al socio.
-        this.socio.agregarLibro(libro);
+            // libero el ejemplar.
+            this.catalogo.devolver(libro.getIsbn());
+            this.quitarPrestatario(libro.getIsbn(), socio);
+
+            // se registra la operacion en la bitacora
+            this.cambios.marcarSocio(socio.getNumeroDeSocio());
+            this.bitacora.registrar(Bitacora.Operacion.DEVOLUCION, String.valueOf(socio.getNumeroDeSocio()),
+                    libro.getIsbn());
+        });
+    }
+
+    /**
+     * Metodo que renueva el prestamo de un libro por otro plazo a partir de hoy.
+     *
+     * @param socio que renueva el prestamo.
+     * @param isbn  del libro a renovar.
+     * @return el nuevo vencimiento del prestamo.
+     * @throws IOException en caso de un error al registrar la renovacion.
+     */
+    LocalDate renovarPrestamo(final Socio socio, final String isbn) throws IOException {
+        LocalDate vencimiento = LocalDate.now().plusDays(Socio.PLAZO_PRESTAMO_DIAS);
+        this.ejecutar(MetricasSistema.Operacion.RENOVACION, isbn, this.candadoSocio(socio), () -> {
 
+            Libro libro = this.buscarLibro(isbn);
+            if (libro == null || !socio.renovarLibro(libro.getIsbn(), vencimiento)) {
+                throw new IllegalArgumentException("El socio no tiene en prestamo el libro con isbn " + isbn + ".");
+            }
+
+            // se registra la operacion en la bitacora
+            this.cambios.marcarSocio(socio.getNumeroDeSocio());
+            this.bitacora.registrar(Bitacora.Operacion.RENOVACION, String.valueOf(socio.getNumeroDeSocio()),
+                    libro.getIsbn(), vencimiento.toString());
+        });
+        return vencimiento;
+    }
+
+    /**
+     * Obtiene los socios que tienen en prestamo un libro.
+     *
+     * @param isbn del libro.
+     * @return los socios (vacio si nadie tiene el libro).
+     */
+    public Socio[] obtenerPrestatarios(final String isbn) {
+        Socio[] socios = this.prestatarios.get(Catalogo.normalizarIsbn(isbn));
+        return socios == null ? new Socio[0] : socios.clone();
+    }
+
+    /**
+     * @param isbn  del libro prestado.
+     * @param socio que lo recibio.
+     */
+    private void agregarPrestatario(final String isbn, final Socio socio) {
+        this.prestatarios.merge(Catalogo.normalizarIsbn(isbn), new Socio[]{socio}, (actual, nuevo) -> {
+            Socio[] socios = Arrays.copyOf(actual, actual.length + 1);
+            socios[actual.length] = socio;
+            return socios;
+        });
+    }
 
-        // hago un ordenamiento de busqueda tipo burbuja para eliminar el libro de los disponibles
-        int n = 2; // tamaño inicial del arreglo
-        while (n > 1) {
-            int newN = 0;
-            for (int i = 1; i < n; i++) {
-                if (libros[i - 1].equals(libro)) { // busco el dato ISBN que quiero eliminar
-                    // intercambiar elementos
-                    Libro temp = libros[i - 1];
-                    libros[i - 1] = libros[i];
-                    libros[i] = temp;
-                    newN = i;
+    /**
+     * @param isbn  del libro devuelto.
+     * @param socio que lo devolvio.
+     */
+    private void quitarPrestatario(final String isbn, final Socio socio) {
+        this.prestatarios.computeIfPresent(Catalogo.normalizarIsbn(isbn), (llave, actual) -> {
+            Socio[] socios = new Socio[actual.length - 1];
+            int n = 0;
+            for (Socio otro : actual) {
+                if (otro != socio) {
+                    if (n == socios.length) {
+                        // el socio no estaba en la lista.
+                        return actual;
+                    }
+                    socios[n++] = otro;
                 }
             }
-            n = newN;
-        }
-        // disminuir el tamaño del arreglo a 1
-        libros = Arrays.copyOfRange(libros, 0, 1); // modifico el largo del arreglo
+            return socios.length == 0 ? null : socios;
+        });
+    }
 
+    /**
+     * Importa libros al catalogo desde un archivo CSV o JSON lines (ver {@link ImportadorLibros}). Cada lote se
+     * confirma en el catalogo de una vez y al terminar se espera una compactacion, para que los libros importados
+     * queden en libros.json.
+     *
+     * @param archivo a importar.
+     * @param reporte donde escribir las lineas rechazadas.
+     * @return el resultado de la importacion.
+     * @throws IOException en caso de algun error.
+     */
+    public ImportadorLibros.Resultado importarLibros(final Path archivo, final Path reporte) throws IOException {
+        // los libros repetidos se buscan en todo el catalogo.
+        this.cargarCatalogo();
+        ImportadorLibros.Resultado resultado = ImportadorLibros.importar(archivo, reporte, this.catalogo,
+                lote -> this.ejecutar(null, () -> {
+                    this.catalogo.agregarTodos(lote);
+                    for (Libro libro : lote) {
+                        this.indexar(libro);
+                        this.cambios.marcarLibro(libro.getIsbn());
+                    }
+                }));
 
-        // se actualiza la informacion de los archivos
-        this.guardarInformacion();
+        // los libros importados no pasan por la bitacora: se guardan de una vez.
+        this.persistencia.esperar();
+        return resultado;
+    }
 
+    /**
+     * Guarda libros.json y socios.json con todas las operaciones realizadas hasta ahora y espera a que queden en el
+     * disco (las operaciones ya estan a salvo en la bitacora; esto solo adelanta la compactacion).
+     *
+     * @throws IOException si no se pudo guardar la informacion.
+     */
+    public void esperarGuardado() throws IOException {
+        this.persistencia.esperar();
     }
 
     /**
      * Obtiene un String que representa el listado completo de libros disponibles.
      *
      * @return the String con la informacion de los libros disponibles.
+     * @throws IOException si el catalogo no se pudo cargar.
+     * @deprecated con un catalogo grande el String ocupa demasiada memoria; usar
+     * {@link #escribirCatalogo(Appendable, String, double, PaginadorCatalogo.Orden, int, int, boolean)}.
      */
-    public String obtegerCatalogoLibros() {
+    @Deprecated
+    public String obtegerCatalogoLibros() throws IOException {
+        return this.medir(MetricasSistema.Operacion.CATALOGO, () -> {
+            this.cargarCatalogo();
+            StringBuilder sb = new StringBuilder();
+            PaginadorCatalogo.escribir(this.catalogo, this.indiceCalificaciones, this.indiceAlfabetico, sb, null, 0.0,
+                    PaginadorCatalogo.Orden.INGRESO, 0, Integer.MAX_VALUE, false);
+            return sb.toString();
+        });
+    }
 
-        StringBuilder sb = new StringBuilder();
-        for (Libro libro : this.libros) {
-            sb.append("Titulo    : ").append(libro.getTitulo()).append("\n");
-            sb.append("Autor     : ").append(libro.getAutor()).append("\n");
-            sb.append("ISBN      : ").append(libro.getIsbn()).append("\n");
-            sb.append("Categoria : ").append(libro.getCategoria()).append("\n");
-            sb.append("Calificacion: ").append(libro.getCalificacion()).append("\n");
-            sb.append("\n");
+    /**
+     * Escribe una pagina del catalogo de libros disponibles, sin construir el listado completo.
+     *
+     * @param salida             donde escribir.
+     * @param categoria          de los libros (null para todas).
+     * @param calificacionMinima de los libros.
+     * @param orden              de los libros.
+     * @param pagina             a escribir (desde 0).
+     * @param tamanio            cantidad de libros por pagina.
+     * @param contar             si se deben contar los libros que cumplen los filtros (recorre todo el catalogo).
+     * @return la cantidad total de libros que cumplen los filtros, o -1 si hay filtros y no se pidio contarlos.
+     * @throws IOException en caso de un error al escribir.
+     */
+    public int escribirCatalogo(final Appendable salida, final String categoria, final double calificacionMinima,
+                                final PaginadorCatalogo.Orden orden, final int pagina, final int tamanio,
+                                final boolean contar) throws IOException {
+        return this.medir(MetricasSistema.Operacion.CATALOGO, () -> {
+            if (this.fragmentos != null && pagina == 0 && orden == PaginadorCatalogo.Orden.INGRESO
+                    && categoria == null && calificacionMinima <= 0.0) {
+                return this.escribirPrimeraPagina(salida, tamanio);
+            }
+            this.cargarCatalogo();
+            return PaginadorCatalogo.escribir(this.catalogo, this.indiceCalificaciones, this.indiceAlfabetico, salida,
+                    categoria, calificacionMinima, orden, pagina, tamanio, contar);
+        });
+    }
+
+    /**
+     * Escribe la primera pagina del catalogo en orden de ingreso cargando solo los primeros fragmentos, hasta que
+     * alcanzan para llenarla (al iniciar el programa no se lee todo el catalogo). El total suma los libros de los
+     * fragmentos sin cargar, segun sus cabeceras, menos los ejemplares de esos libros que estan prestados.
+     *
+     * @param salida  donde escribir.
+     * @param tamanio cantidad de libros por pagina.
+     * @return la cantidad total de libros disponibles.
+     * @throws IOException en caso de un error al leer un fragmento o al escribir.
+     */
+    private int escribirPrimeraPagina(final Appendable salida, final int tamanio) throws IOException {
+        for (int f = 0; f < this.fragmentos.getCantidad() && this.catalogo.getCantidadDisponibles() < tamanio; f++) {
+            this.fragmentos.asegurar(f);
         }
+        long sinCargar = this.fragmentos.contarSinCargar();
+        for (Map.Entry<String, Socio[]> prestamo : this.prestatarios.entrySet()) {
+            if (!this.fragmentos.estaCargado(this.fragmentos.fragmento(prestamo.getKey()))) {
+                sinCargar -= prestamo.getValue().length;
+            }
+        }
+        int cargados = PaginadorCatalogo.escribir(this.catalogo, this.indiceCalificaciones, this.indiceAlfabetico,
+                salida, null, 0.0, PaginadorCatalogo.Orden.INGRESO, 0, tamanio, false);
+        return (int) Math.min(Integer.MAX_VALUE, cargados + sinCargar);
+    }
 
-        return sb.toString();
+    /**
+     * Busca libros por su titulo, autor o categoria. Cada palabra de la consulta puede ser el comienzo de una
+     * palabra del libro y no importan las tildes ni las mayusculas.
+     *
+     * @param consulta a buscar.
+     * @param maximo   cantidad de resultados.
+     * @return los libros que contienen todas las palabras de la consulta, los mas relevantes primero.
+     * @throws IOException si el catalogo no se pudo cargar.
+     */
+    public Libro[] buscarLibros(final String consulta, final int maximo) throws IOException {
+        this.cargarCatalogo();
+        return this.indiceTexto.buscar(consulta, maximo);
+    }
+
+    /**
+     * Obtiene los libros mejor calificados, disponibles o no.
+     *
+     * @param categoria de los libros (null para todas).
+     * @param maximo    cantidad de libros.
+     * @return los libros, el mejor calificado primero.
+     * @throws IOException si el catalogo no se pudo cargar.
+     */
+    public Libro[] obtenerMejoresLibros(final String categoria, final int maximo) throws IOException {
+        this.cargarCatalogo();
+        return this.indiceCalificaciones.obtenerMejores(categoria, maximo);
+    }
+
+    /**
+     * @return las categorias de los libros del catalogo.
+     * @throws IOException si el catalogo no se pudo cargar.
+     */
+    public String[] obtenerCategorias() throws IOException {
+        this.cargarCatalogo();
+        return this.indiceCalificaciones.obtenerCategorias();
+    }
+
+    /**
+     * Agrega un libro del catalogo a los indices de texto, de calificaciones y alfabetico.
+     *
+     * @param libro a indexar.
+     */
+    private void indexar(final Libro libro) {
+        this.indiceTexto.agregar(libro);
+        this.indiceCalificaciones.agregar(libro);
+        this.indiceAlfabetico.agregar(libro);
     }
 
     /**
@@ -188,131 +671,726 @@ public final class Sistema {
      *
      * @param isbn a buscar.
      * @return el libro o null si no fue encontrado.
+     * @throws IOException si el fragmento del libro no se pudo leer.
+     */
+    private Libro buscarLibro(final String isbn) throws IOException {
+        this.asegurarFragmento(isbn);
+        // busqueda directa en el indice por ISBN.
+        return this.catalogo.buscar(isbn);
+    }
+
+    /**
+     * Carga el fragmento del catalogo de un libro, si el catalogo esta en fragmentos. Se debe llamar antes de tomar el
+     * candado de un socio: cargar un fragmento toma los candados de los socios que tienen sus libros.
+     *
+     * @param isbn del libro.
+     * @throws IOException si el fragmento no se pudo leer.
+     */
+    private void asegurarFragmento(final String isbn) throws IOException {
+        if (this.fragmentos != null && isbn != null) {
+            this.fragmentos.asegurar(isbn);
+        }
+    }
+
+    /**
+     * Carga todos los fragmentos del catalogo que faltan (en paralelo), antes de recorrerlo.
+     *
+     * @throws IOException si algun fragmento no se pudo leer.
      */
-    private Libro buscarLibro(final String isbn) {
-        // recorro el arreglo de libros.
-        for (Libro libro : this.libros) {
-            // si lo encontre, retorno el libro.
-            if (libro.getIsbn().equals(isbn)) {
-                return libro;
+    private void cargarCatalogo() throws IOException {
+        if (this.fragmentos != null) {
+            this.fragmentos.asegurarTodos();
+        }
+    }
+
+    /**
+     * Agrega al catalogo los libros de un fragmento recien leido: se indexan y los socios que los tienen en prestamo
+     * pasan a compartir la instancia del catalogo. Se puede llamar para fragmentos distintos desde varios hilos.
+     *
+     * @param libros del fragmento.
+     */
+    private void cargarFragmento(final Libro[] libros) {
+        this.catalogo.agregarTodos(libros);
+        for (Libro libro : libros) {
+            this.indexar(libro);
+            Socio[] socios = this.prestatarios.get(Catalogo.normalizarIsbn(libro.getIsbn()));
+            if (socios == null) {
+                continue;
+            }
+            for (Socio socio : socios) {
+                ReentrantLock candado = this.candadoSocio(socio);
+                candado.lock();
+                try {
+                    LocalDate vencimiento = socio.getVencimiento(libro.getIsbn());
+                    if (vencimiento != null) {
+                        socio.devolverLibro(libro.getIsbn());
+                        socio.agregarLibro(libro, vencimiento);
+                    }
+                } finally {
+                    candado.unlock();
+                }
+                this.catalogo.prestar(libro.getIsbn());
             }
         }
-        // no lo encontre, retorno null.
-        return null;
     }
 
     /**
-     * Lee los archivos libros.json y socios.json.
+     * Lee la informacion desde la instantanea binaria si es mas reciente que libros.json, o desde los archivos json de
+     * forma incremental en caso contrario, construyendo los indices a medida que se leen. La instantanea solo se
+     * reescribe cuando cambian los libros: si socios.json es mas reciente, los socios se leen desde ese archivo.
      *
      * @throws FileNotFoundException si alguno de los archivos no se encuentra.
+     * @throws IOException           en caso de algun error de lectura.
+     */
+    private void cargarInformacion() throws IOException {
+        if (this.fragmentos != null && this.fragmentos.existian()) {
+            this.cargarSocios();
+            return;
+        }
+        if (this.instantaneaVigente("libros.json")) {
+            try {
+                this.cargarInformacion(true);
+                return;
+            } catch (IOException ex) {
+                // instantanea corrupta: se usan los archivos json.
+            }
+        }
+        this.cargarInformacion(false);
+    }
+
+    /**
+     * Lee la informacion desde la instantanea binaria o desde libros.json y socios.json.
+     *
+     * @param desdeInstantanea true para leer la instantanea binaria.
+     * @throws IOException en caso de algun error de lectura.
+     */
+    private void cargarInformacion(final boolean desdeInstantanea) throws IOException {
+
+        ArregloDinamico<Socio> socios = new ArregloDinamico<>();
+        IndiceSocios indiceSocios = new IndiceSocios(0);
+        Catalogo catalogo = new Catalogo(new PoolCadenas());
+        Map<String, Socio[]> prestatarios = new ConcurrentHashMap<>();
+        Consumer<Socio> agregarSocio = socio -> {
+            indiceSocios.agregar(socio);
+            socios.agregar(socio);
+        };
+
+        if (desdeInstantanea) {
+            boolean sociosVigentes = this.instantaneaVigente("socios.json");
+            InstantaneaBinaria.leer(ARCHIVO_INSTANTANEA, catalogo::agregar, sociosVigentes ? agregarSocio : null);
+            this.metricas.leidos(tamanio(ARCHIVO_INSTANTANEA));
+            if (!sociosVigentes) {
+                LectorJson.leerSocios("socios.json", agregarSocio);
+                this.metricas.leidos(tamanio(Path.of("socios.json")));
+            }
+        } else {
+            LectorJson.leerSocios("socios.json", agregarSocio);
+            LectorJson.leerLibros("libros.json", catalogo::agregar);
+            this.metricas.leidos(tamanio(Path.of("socios.json")) + tamanio(Path.of("libros.json")));
+            // la instantanea no existe o es mas antigua que los json.
+            if (USAR_INSTANTANEA) {
+                this.cambios.marcarInstantanea();
+            }
+        }
+
+        this.socios = socios.aArreglo(new Socio[0]);
+        this.indiceSocios = indiceSocios;
+        this.catalogo = catalogo;
+        this.prestatarios = prestatarios;
+        this.indiceTexto = new IndiceTexto();
+        this.indiceCalificaciones = new IndiceCalificaciones(catalogo);
+        this.indiceAlfabetico = new IndiceAlfabetico(catalogo);
+
+        // los libros que tienen los socios no estan disponibles.
+        for (Socio socio : this.socios) {
+            for (Libro libro : socio.getLibrosEnPrestamo()) {
+                Libro enCatalogo = catalogo.buscar(libro.getIsbn());
+                if (enCatalogo == null) {
+                    // archivos antiguos: el libro prestado se eliminaba del catalogo.
+                    catalogo.agregar(libro);
+                    enCatalogo = libro;
+                    this.cambios.marcarLibro(libro.getIsbn());
+                } else if (enCatalogo != libro) {
+                    // el socio comparte la instancia del catalogo (y sus calificaciones).
+                    LocalDate vencimiento = socio.getVencimiento(libro.getIsbn());
+                    socio.devolverLibro(libro.getIsbn());
+                    socio.agregarLibro(enCatalogo, vencimiento);
+                }
+                catalogo.prestar(enCatalogo.getIsbn());
+                this.agregarPrestatario(enCatalogo.getIsbn(), socio);
+            }
+        }
+
+        // indexo los libros.
+        for (Libro libro : catalogo.obtenerLibros()) {
+            this.indexar(libro);
+        }
+    }
+
+    /**
+     * Lee solo los socios desde socios.json, con el catalogo vacio: los libros se agregan a medida que se cargan sus
+     * fragmentos ({@link #cargarFragmento(Libro[])}).
+     *
+     * @throws IOException en caso de algun error de lectura.
+     */
+    private void cargarSocios() throws IOException {
+        ArregloDinamico<Socio> socios = new ArregloDinamico<>();
+        IndiceSocios indiceSocios = new IndiceSocios(0);
+        LectorJson.leerSocios("socios.json", socio -> {
+            indiceSocios.agregar(socio);
+            socios.agregar(socio);
+        });
+        this.metricas.leidos(tamanio(Path.of("socios.json")));
+
+        this.socios = socios.aArreglo(new Socio[0]);
+        this.indiceSocios = indiceSocios;
+        this.catalogo = new Catalogo(new PoolCadenas());
+        this.prestatarios = new ConcurrentHashMap<>();
+        this.indiceTexto = new IndiceTexto();
+        this.indiceCalificaciones = new IndiceCalificaciones(this.catalogo);
+        this.indiceAlfabetico = new IndiceAlfabetico(this.catalogo);
+        for (Socio socio : this.socios) {
+            for (Libro libro : socio.getLibrosEnPrestamo()) {
+                this.agregarPrestatario(libro.getIsbn(), socio);
+            }
+        }
+    }
+
+    /**
+     * @param archivo json con la misma seccion de la instantanea (libros.json o socios.json).
+     * @return true si la instantanea binaria existe y no es mas antigua que el archivo.
+     * @throws IOException en caso de algun error.
      */
-    private void cargarInformacion() throws FileNotFoundException {
+    private boolean instantaneaVigente(final String archivo) throws IOException {
+        if (!USAR_INSTANTANEA || !Files.exists(ARCHIVO_INSTANTANEA)) {
+            return false;
+        }
+        Path json = Path.of(archivo);
+        return !Files.exists(json)
+                || Files.getLastModifiedTime(json).compareTo(Files.getLastModifiedTime(ARCHIVO_INSTANTANEA)) <= 0;
+    }
 
-        // trato de leer los socios y los libros desde el archivo.
-        this.socios = GSON.fromJson(new FileReader("socios.json"), Socio[].class);
-        this.libros = GSON.fromJson(new FileReader("libros.json"), Libro[].class);
+    /**
+     * @param archivo a medir.
+     * @return el tamanio del archivo en bytes (0 si no existe o no se puede leer: solo se usa en las metricas).
+     */
+    private static long tamanio(final Path archivo) {
+        try {
+            return Files.size(archivo);
+        } catch (IOException ex) {
+            return 0;
+        }
     }
 
     /**
-     * Guarda los arreglos libros y socios en los archivos libros.json y socios.json.
+     * Guarda los libros y socios en los archivos libros.json y socios.json (cada uno se reemplaza de forma atomica),
+     * solo si cambiaron, y la instantanea binaria. Con el catalogo en fragmentos, los libros se guardan solo en los
+     * fragmentos modificados.
      *
+     * @param libros     a guardar (ver {@link #librosAGuardar(RegistroCambios.Pendientes, boolean)}).
+     * @param socios     a guardar.
+     * @param pendientes cambios desde la ultima vez que se guardo.
      * @throws IOException en caso de algun error.
      */
-    private void guardarInformacion() throws IOException {
+    private void guardarInformacion(final Libro[] libros, final Socio[] socios,
+                                    final RegistroCambios.Pendientes pendientes) throws IOException {
+        this.medir(MetricasSistema.Operacion.GUARDADO, () -> this.escribirInformacion(libros, socios, pendientes));
+    }
 
+    /**
+     * Escribe los archivos de {@link #guardarInformacion(Libro[], Socio[], RegistroCambios.Pendientes)}.
+     *
+     * @param libros     a guardar.
+     * @param socios     a guardar.
+     * @param pendientes cambios desde la ultima vez que se guardo.
+     * @throws IOException en caso de algun error.
+     */
+    private void escribirInformacion(final Libro[] libros, final Socio[] socios,
+                                     final RegistroCambios.Pendientes pendientes) throws IOException {
         // guardo los socios.
-        try (FileWriter writer = new FileWriter("socios.json")) {
-            GSON.toJson(this.socios, writer);
+        if (pendientes.haySocios()) {
+            EscritorJson.escribirSocios("socios.json", socios);
+            this.metricas.escritos(tamanio(Path.of("socios.json")));
+        }
+
+        // con fragmentos no se usan libros.json ni la instantanea.
+        if (this.fragmentos != null) {
+            boolean[] modificados = this.fragmentosModificados(pendientes);
+            int[] cantidades = new int[modificados.length];
+            for (Libro libro : libros) {
+                cantidades[this.fragmentos.fragmento(libro.getIsbn())]++;
+            }
+            Libro[][] porFragmento = new Libro[modificados.length][];
+            for (int f = 0; f < modificados.length; f++) {
+                porFragmento[f] = new Libro[cantidades[f]];
+                cantidades[f] = 0;
+            }
+            for (Libro libro : libros) {
+                int f = this.fragmentos.fragmento(libro.getIsbn());
+                porFragmento[f][cantidades[f]++] = libro;
+            }
+            for (int f = 0; f < modificados.length; f++) {
+                if (modificados[f]) {
+                    this.fragmentos.escribir(f, porFragmento[f]);
+                }
+            }
+            return;
         }
 
         // guardo los libros.
-        try (FileWriter writer = new FileWriter("libros.json")) {
-            GSON.toJson(this.libros, writer);
+        if (pendientes.hayLibros()) {
+            EscritorJson.escribirLibros("libros.json", libros);
+            this.metricas.escritos(tamanio(Path.of("libros.json")));
         }
 
+        // guardo la instantanea binaria (despues de los json, para que sea la mas reciente) solo si cambiaron los
+        // libros: si cambiaron solo los socios, al cargar se leen desde socios.json.
+        if (USAR_INSTANTANEA && (pendientes.hayLibros() || pendientes.instantanea())) {
+            try {
+                InstantaneaBinaria.escribir(ARCHIVO_INSTANTANEA, libros, socios);
+                this.metricas.escritos(tamanio(ARCHIVO_INSTANTANEA));
+            } catch (IOException ex) {
+                // los json son la fuente de verdad: una instantanea que no se pudo escribir queda mas antigua
+                // que ellos y no se utiliza en la siguiente carga.
+            }
+        }
     }
 
     /**
-     * Obtiene los datos del socio que ha iniciado sesiony los despliega por pantalla
+     * Una modificacion del Sistema que se registra en la bitacora.
      */
-    public String obtenerDatosSocioLogeado() {
-        if (this.socio == null) {
-            throw new IllegalArgumentException("No hay un Socio logeado");
-        }
+    @FunctionalInterface
+    private interface Modificacion {
 
-        return "Nombre: " + this.socio.getNombreCompleto() + "\n"
-                + "Correo Electronico: " + this.socio.getCorreoElectronico();
+        /**
+         * @throws IOException en caso de un error al registrar la modificacion.
+         */
+        void ejecutar() throws IOException;
     }
 
     /**
-     * Cambia la contrasenia del socio logueado
+     * Una operacion del Sistema cuya latencia se registra en las metricas.
      *
-     * @param contrasenia nueva para el usuario
+     * @param <T> del resultado.
+     * @param <E> de la excepcion que puede lanzar.
      */
-    public void cambiarContrasenia(String contrasenia) {
-        this.socio.setContrasenia(contrasenia);
+    @FunctionalInterface
+    private interface Medicion<T, E extends Exception> {
 
+        /**
+         * @return el resultado de la operacion.
+         * @throws E en caso de algun error.
+         */
+        T ejecutar() throws E;
     }
 
     /**
-     * Cambia el corre del usuario logeado
+     * Ejecuta una operacion y registra su latencia (y si termino sin errores) en las metricas.
      *
-     * @param correo nuevo del usuario
+     * @param operacion a registrar.
+     * @param medicion  a ejecutar.
+     * @param <T>       del resultado.
+     * @param <E>       de la excepcion que puede lanzar.
+     * @return el resultado de la operacion.
+     * @throws E en caso de algun error.
+     */
+    private <T, E extends Exception> T medir(final MetricasSistema.Operacion operacion,
+                                             final Medicion<T, E> medicion) throws E {
+        long inicio = System.nanoTime();
+        boolean exito = false;
+        try {
+            T resultado = medicion.ejecutar();
+            exito = true;
+            return resultado;
+        } finally {
+            this.metricas.registrar(operacion, inicio, exito);
+        }
+    }
+
+    /**
+     * Ejecuta una operacion sin resultado y registra su latencia en las metricas.
+     *
+     * @param operacion a registrar.
+     * @param accion    a ejecutar.
+     * @throws IOException en caso de algun error.
      */
-    public void cambiarCorreo(String correo) {
-        this.socio.setCorreoElectronico(correo);
+    private void medir(final MetricasSistema.Operacion operacion, final Modificacion accion) throws IOException {
+        this.medir(operacion, () -> {
+            accion.ejecutar();
+            return null;
+        });
     }
 
     /**
-     * Califica el libro que ingrese el usuario mediante ISBN
+     * Ejecuta una modificacion como {@link #ejecutar(ReentrantLock, Modificacion)}, cargando antes el fragmento del
+     * libro, y registra su latencia en las metricas.
      *
-     * @param isbnString es el ISBN que ingresó el usuario
-     * @throws Exception por si no se encuentra el ISBN o la calificacion no es valida
+     * @param operacion    a registrar.
+     * @param isbn         del libro cuyo fragmento se carga antes de tomar los candados (puede ser null).
+     * @param candado      a tomar (puede ser null).
+     * @param modificacion a ejecutar.
+     * @throws IOException en caso de algun error.
      */
-    public void calificarLibro(String isbnString) throws Exception {
-        Libro isbn; // creo un ISBN tipo Libro para utilizar mas adelante
+    private void ejecutar(final MetricasSistema.Operacion operacion, final String isbn, final ReentrantLock candado,
+                          final Modificacion modificacion) throws IOException {
+        this.medir(operacion, () -> {
+            if (isbn != null) {
+                this.asegurarFragmento(isbn);
+            }
+            this.ejecutar(candado, modificacion);
+        });
+    }
 
-        // instancio el metodo buscar libro para que idfentifique cual libro calificar mediante ISBN
-        isbn = buscarLibro(isbnString);
-        // si no lo encontre retorno null y termina el metodo con un mensaje personalizado
-        if (isbn == null) {
-            System.out.println("ISBN no encontrado!");
-            return;
+    /**
+     * Ejecuta una modificacion tomando el candado indicado y luego compacta la bitacora si ya acumulo demasiadas
+     * operaciones.
+     *
+     * @param candado      a tomar (puede ser null).
+     * @param modificacion a ejecutar.
+     * @throws IOException en caso de algun error.
+     */
+    private void ejecutar(final ReentrantLock candado, final Modificacion modificacion) throws IOException {
+        this.candadoCompactacion.readLock().lock();
+        try {
+            if (candado != null) {
+                candado.lock();
+            }
+            try {
+                modificacion.ejecutar();
+            } finally {
+                if (candado != null) {
+                    candado.unlock();
+                }
+            }
+        } finally {
+            this.candadoCompactacion.readLock().unlock();
+        }
+
+        // la compactacion se hace en segundo plano: la operacion no espera al disco.
+        if (this.bitacora.getOperaciones() >= OPERACIONES_POR_COMPACTACION
+                && this.compactacionSolicitada.compareAndSet(false, true)) {
+            this.persistencia.solicitar();
         }
+    }
+
+    /**
+     * @param socio a proteger.
+     * @return el candado que protege al socio.
+     */
+    private ReentrantLock candadoSocio(final Socio socio) {
+        int h = socio.getNumeroDeSocio() * 0x9E3779B9;
+        return this.candadosSocios[(h ^ (h >>> 16)) & (CANDADOS - 1)];
+    }
 
-        boolean verificador = true; // para continuar con el while
+    /**
+     * Compacta la bitacora: con el candado exclusivo solo se toman los cambios pendientes y se traspasa la bitacora a
+     * {@link #ARCHIVO_BITACORA_ANTERIOR}; luego, mientras las sesiones siguen operando, se copian los libros y socios,
+     * se guardan los archivos que cambiaron y se elimina ese archivo. Si el programa se cae antes, las operaciones
+     * traspasadas se reproducen al cargar.
+     * <p>
+     * Las copias pueden incluir operaciones posteriores al traspaso: quedan tambien en la bitacora nueva y
+     * reproducirlas sobre archivos que ya las tienen no cambia nada (ver {@link #aplicar(Bitacora.Operacion,
+     * String[])}).
+     *
+     * @throws IOException en caso de algun error.
+     */
+    private void compactar() throws IOException {
+        RegistroCambios.Pendientes pendientes;
+        this.candadoCompactacion.writeLock().lock();
+        try {
+            pendientes = this.cambios.tomar();
+            if (pendientes.vacio()) {
+                // sin cambios (toda operacion registrada marca un cambio): la bitacora esta vacia.
+                this.compactacionSolicitada.set(false);
+                return;
+            }
+            this.bitacora.rotar(ARCHIVO_BITACORA_ANTERIOR);
+            this.compactacionSolicitada.set(false);
+        } finally {
+            this.candadoCompactacion.writeLock().unlock();
+        }
 
-        // si lo encontre continuo con la ejecucion del metodo
-        while (verificador) {
-            // solicito el dato desde pantalla
-            System.out.print("Ingresa un número del 1 al 5: ");
-            String numeroString = StdIn.readLine();
-            double numero;
-            // si el dato es correcto, entro al try
+        try {
+            Libro[] libros;
+            Socio[] socios;
+            this.candadoCompactacion.readLock().lock();
             try {
-                numero = Double.parseDouble(numeroString);
-                System.out.println("Gracias por darnos tu opinion");
-                verificador = false; // bollean falso para salir del while
-                // si el dato no es un valor numerico lanzo una excepsion
-            } catch (NumberFormatException e) {
-                throw new Exception("El valor \"" + numeroString + "\" no es un número válido.");
+                libros = this.librosAGuardar(pendientes, true);
+                socios = this.sociosAGuardar(pendientes);
+            } finally {
+                this.candadoCompactacion.readLock().unlock();
             }
-            // si el numero esta fuera del rango especificado, lanzo una excepsion
-            if (numero < 1.0 || numero > 5.0) {
-                throw new Exception("El número " + numero + " está fuera del rango de 1.0 y 5.0.");
+            this.guardarInformacion(libros, socios, pendientes);
+        } catch (IOException | RuntimeException ex) {
+            // se intentan guardar en la siguiente compactacion.
+            this.cambios.devolver(pendientes);
+            throw ex;
+        }
+        Files.deleteIfExists(ARCHIVO_BITACORA_ANTERIOR);
+    }
+
+    /**
+     * Copia los socios (cada uno con su candado, porque las sesiones siguen operando) si se van a guardar: si cambio
+     * alguno o si se va a escribir la instantanea, que tambien los contiene.
+     *
+     * @param pendientes cambios a guardar.
+     * @return las copias de los socios o ninguno si no se guardan.
+     */
+    private Socio[] sociosAGuardar(final RegistroCambios.Pendientes pendientes) {
+        boolean instantanea = USAR_INSTANTANEA && this.fragmentos == null
+                && (pendientes.hayLibros() || pendientes.instantanea());
+        if (!pendientes.haySocios() && !instantanea) {
+            return new Socio[0];
+        }
+        Socio[] socios = new Socio[this.socios.length];
+        for (int i = 0; i < socios.length; i++) {
+            ReentrantLock candado = this.candadoSocio(this.socios[i]);
+            candado.lock();
+            try {
+                socios[i] = this.socios[i].copiar();
+            } finally {
+                candado.unlock();
             }
+        }
+        return socios;
+    }
 
-            // recorro el largo de Libros[]
+    /**
+     * @param pendientes cambios a guardar.
+     * @param copiar     si se deben copiar los libros (para guardarlos sin candados).
+     * @return los libros a guardar: ninguno si no cambiaron los libros (ni se debe escribir la instantanea), todo el
+     * catalogo o, si esta en fragmentos, los libros de los fragmentos modificados (que ya estan cargados, porque se
+     * modifico alguno de sus libros).
+     */
+    private Libro[] librosAGuardar(final RegistroCambios.Pendientes pendientes, final boolean copiar) {
+        if (!pendientes.hayLibros() && !pendientes.instantanea()) {
+            return new Libro[0];
+        }
+        Libro[] libros = this.catalogo.obtenerLibros();
+        if (this.fragmentos != null) {
+            boolean[] modificados = this.fragmentosModificados(pendientes);
+            ArregloDinamico<Libro> enModificados = new ArregloDinamico<>();
+            for (Libro libro : libros) {
+                if (modificados[this.fragmentos.fragmento(libro.getIsbn())]) {
+                    enModificados.agregar(libro);
+                }
+            }
+            libros = enModificados.aArreglo(new Libro[0]);
+        }
+        if (copiar) {
             for (int i = 0; i < libros.length; i++) {
-                // si lo encontre modifico el dato en cuestion.
-                if (libros[i].equals(isbn)) {
-                    // seteo la calificacion
-                    isbn.setCalificacion(numero);
-                    // actualizo los datos del libro
-                    this.libros[i] = new Libro(isbn.getIsbn(), isbn.getTitulo(), isbn.getAutor(), isbn.getCategoria(),
-                            isbn.getCalificacion());
+                libros[i] = libros[i].copiar();
+            }
+        }
+        return libros;
+    }
+
+    /**
+     * @param pendientes cambios a guardar.
+     * @return si cada fragmento del catalogo tiene algun libro modificado.
+     */
+    private boolean[] fragmentosModificados(final RegistroCambios.Pendientes pendientes) {
+        boolean[] modificados = new boolean[this.fragmentos.getCantidad()];
+        for (String isbn : pendientes.libros()) {
+            modificados[this.fragmentos.fragmento(isbn)] = true;
+        }
+        return modificados;
+    }
+
+    /**
+     * Aplica una operacion leida desde la bitacora.
+     *
+     * @param operacion a aplicar.
+     * @param campos    de la operacion.
+     * @throws IOException si el fragmento de un libro no se pudo leer.
+     */
+    private void aplicar(final Bitacora.Operacion operacion, final String[] campos) throws IOException {
+        switch (operacion) {
+            case PRESTAMO -> {
+                Socio socio = this.indiceSocios.buscar(Integer.parseInt(campos[0]));
+                Libro libro = this.buscarLibro(campos[1]);
+                // si el socio ya tiene el libro, el prestamo ya estaba en los archivos.
+                if (socio != null && libro != null && !socio.tieneLibro(libro.getIsbn())
+                        && this.catalogo.prestar(libro.getIsbn())) {
+                    // bitacoras antiguas: sin vencimiento, el plazo comienza hoy.
+                    socio.agregarLibro(libro, campos.length > 2 ? LocalDate.parse(campos[2])
+                            : LocalDate.now().plusDays(Socio.PLAZO_PRESTAMO_DIAS));
+                    this.agregarPrestatario(libro.getIsbn(), socio);
+                    this.cambios.marcarSocio(socio.getNumeroDeSocio());
+                }
+            }
+            case DEVOLUCION -> {
+                Socio socio = this.indiceSocios.buscar(Integer.parseInt(campos[0]));
+                Libro libro = this.buscarLibro(campos[1]);
+                // si el socio ya no tiene el libro, la devolucion ya estaba en los archivos.
+                if (socio != null && libro != null && socio.devolverLibro(libro.getIsbn()) != null) {
+                    this.catalogo.devolver(libro.getIsbn());
+                    this.quitarPrestatario(libro.getIsbn(), socio);
+                    this.cambios.marcarSocio(socio.getNumeroDeSocio());
+                }
+            }
+            case RENOVACION -> {
+                Socio socio = this.indiceSocios.buscar(Integer.parseInt(campos[0]));
+                Libro libro = this.buscarLibro(campos[1]);
+                if (socio != null && libro != null
+                        && socio.renovarLibro(libro.getIsbn(), LocalDate.parse(campos[2]))) {
+                    this.cambios.marcarSocio(socio.getNumeroDeSocio());
+                }
+            }
+            case CALIFICACION -> {
+                Libro libro = this.buscarLibro(campos[0]);
+                if (libro != null) {
+                    libro.establecerCalificacion(Long.parseLong(campos[1]), Long.parseLong(campos[2]));
+                    this.indiceCalificaciones.actualizar(libro);
+                    this.cambios.marcarLibro(libro.getIsbn());
+                }
+            }
+            case CORREO -> {
+                Socio socio = this.indiceSocios.buscar(Integer.parseInt(campos[0]));
+                if (socio != null) {
+                    socio.setCorreoElectronico(campos[1]);
+                    this.cambios.marcarSocio(socio.getNumeroDeSocio());
+                }
+            }
+            case CONTRASENIA -> {
+                Socio socio = this.indiceSocios.buscar(Integer.parseInt(campos[0]));
+                if (socio != null) {
+                    socio.setContrasenia(campos[1]);
+                    this.verificador.olvidar(socio.getNumeroDeSocio());
+                    this.cambios.marcarSocio(socio.getNumeroDeSocio());
                 }
             }
+            default -> throw new IllegalStateException("Operacion desconocida: " + operacion);
         }
     }
+
+    /**
+     * @return las metricas de las verificaciones de contrasenia (costo del hash y aciertos del cache).
+     */
+    public VerificadorContrasenias.Metricas obtenerMetricasContrasenias() {
+        return this.verificador.getMetricas();
+    }
+
+    /**
+     * @return las metricas del Sistema: latencias de las operaciones, bytes leidos y escritos, y medidores del estado.
+     */
+    public MetricasSistema obtenerMetricas() {
+        return this.metricas;
+    }
+
+    /**
+     * Compacta la bitacora y la cierra; se debe llamar al terminar el programa. Con volcado de las metricas, las
+     * vuelca una ultima vez.
+     *
+     * @throws IOException en caso de algun error.
+     */
+    public void cerrar() throws IOException {
+        try {
+            this.persistencia.close();
+            this.compactar();
+            this.candadoCompactacion.writeLock().lock();
+            try {
+                this.bitacora.close();
+            } finally {
+                this.candadoCompactacion.writeLock().unlock();
+            }
+            if (SEGUNDOS_METRICAS > 0) {
+                this.metricas.volcar(ARCHIVO_METRICAS);
+            }
+        } finally {
+            this.metricas.close();
+        }
+    }
+
+    /**
+     * Obtiene los datos de un socio para desplegarlos por pantalla.
+     *
+     * @param socio a desplegar.
+     * @return los datos del socio.
+     */
+    String obtenerDatosSocio(final Socio socio) {
+        ReentrantLock candado = this.candadoSocio(socio);
+        candado.lock();
+        try {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Nombre: ").append(socio.getNombreCompleto()).append("\n");
+            sb.append("Correo Electronico: ").append(socio.getCorreoElectronico());
+            for (Libro libro : socio.getLibrosEnPrestamo()) {
+                sb.append("\n").append("Prestamo: ").append(libro.getTitulo()).append(" (").append(libro.getIsbn())
+                        .append("), vence el ").append(socio.getVencimiento(libro.getIsbn()));
+            }
+            return sb.toString();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    /**
+     * Cambia la contrasenia de un socio
+     *
+     * @param socio       a modificar
+     * @param contrasenia nueva para el usuario
+     * @throws IOException en caso de un error al registrar el cambio
+     */
+    void cambiarContrasenia(final Socio socio, final String contrasenia) throws IOException {
+        // solo el hash llega a la bitacora y a los archivos.
+        String hash = this.verificador.generar(contrasenia);
+        this.ejecutar(this.candadoSocio(socio), () -> {
+            socio.setContrasenia(hash);
+            this.verificador.olvidar(socio.getNumeroDeSocio());
+            this.cambios.marcarSocio(socio.getNumeroDeSocio());
+            this.bitacora.registrar(Bitacora.Operacion.CONTRASENIA, String.valueOf(socio.getNumeroDeSocio()),
+                    hash);
+        });
+    }
+
+    /**
+     * Cambia el correo de un socio
+     *
+     * @param socio  a modificar
+     * @param correo nuevo del usuario
+     * @throws IOException en caso de un error al registrar el cambio
+     */
+    void cambiarCorreo(final Socio socio, final String correo) throws IOException {
+        this.ejecutar(this.candadoSocio(socio), () -> {
+            socio.setCorreoElectronico(correo);
+            this.cambios.marcarSocio(socio.getNumeroDeSocio());
+            this.bitacora.registrar(Bitacora.Operacion.CORREO, String.valueOf(socio.getNumeroDeSocio()), correo);
+        });
+    }
+
+    /**
+     * Califica un libro mediante su ISBN
+     *
+     * @param isbnString   es el ISBN que ingresó el usuario
+     * @param calificacion entre 1.0 y 5.0, con hasta 2 decimales
+     * @throws IOException en caso de un error al registrar la calificacion
+     */
+    void calificarLibro(final String isbnString, final double calificacion) throws IOException {
+        // si el numero esta fuera del rango especificado, lanzo una excepsion
+        if (calificacion < 1.0 || calificacion > 5.0) {
+            throw new IllegalArgumentException("El número " + calificacion
+                    + " está fuera del rango de 1.0 y 5.0.");
+        }
+
+        // el fragmento del libro se carga antes de tomar el candado de compactacion.
+        this.ejecutar(MetricasSistema.Operacion.CALIFICACION, isbnString, null, () -> {
+            // busco el libro a calificar mediante ISBN (su fragmento ya esta cargado)
+            Libro isbn = this.buscarLibro(isbnString);
+            if (isbn == null) {
+                throw new IllegalArgumentException("ISBN no encontrado!");
+            }
+
+            // agrego la calificacion al acumulado del libro (sin candados ni copias del libro)
+            isbn.setCalificacion(calificacion);
+            this.indiceCalificaciones.actualizar(isbn);
+            this.cambios.marcarLibro(isbn.getIsbn());
+            // registro el acumulado resultante en la bitacora (suma y cantidad de una sola lectura)
+            this.bitacora.registrar(Bitacora.Operacion.CALIFICACION, () -> {
+                long acumulado = isbn.getAcumulado();
+                return new String[]{isbn.getIsbn(), String.valueOf(Libro.sumaCentesimas(acumulado)),
+                        String.valueOf(Libro.votos(acumulado))};
+            });
+        });
+    }
 }
@@ -4,10 +4,7 @@
 
 package cl.ucn.disc.pa.bibliotech.services;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 /**
  * Clase que reune los metodos utilitarios.
@@ -17,9 +14,9 @@ import java.util.regex.Pattern;
 public final class Utils {
 
     /**
-     * The Email validator.
+     * Largo maximo de la parte local de un correo.
      */
-    private static final Pattern EMAIL_PATTERN = Pattern.compile("^(?=.{1,64}@)[A-Za-z0-9_-]+(\\.[A-Za-z0-9_-]+)*@[^-][A-Za-z0-9-]+(\\.[A-Za-z0-9-]+)*(\\.[A-Za-z]{2,})$");
+    private static final int LARGO_MAXIMO_LOCAL = 64;
 
     /**
      * Constructor privado: nadie puede instanciar esta clase.
@@ -29,22 +26,23 @@ public final class Utils {
     }
 
     /**
-     * Add theObject to theStaticArray.
+     * Add theObject to theStaticArray, copying the array once: O(n) per call.
      *
      * @param theStaticArray the array.
      * @param theObject      the object to append.
      * @param <T>            generic to use.
      * @return the static array.
+     * @deprecated agregar n objetos asi cuesta O(n^2); usar {@link ArregloDinamico#agregar(Object)} (O(1)
+     * amortizado).
      */
+    @Deprecated
     public static <T> T[] append(T[] theStaticArray, T theObject) {
-        // new arraylist
-        List<T> theList = new ArrayList<>();
-        // copy all the items from [] to the list
-        Collections.addAll(theList, theStaticArray);
+        // copy all the items to a new array with one more slot
+        T[] theNewArray = Arrays.copyOf(theStaticArray, theStaticArray.length + 1);
         // add the object
-        theList.add(theObject);
+        theNewArray[theStaticArray.length] = theObject;
         // return the static array
-        return theList.toArray(theStaticArray);
+        return theNewArray;
     }
 
     /**
@@ -54,8 +52,98 @@ public final class Utils {
      */
     public static void validarEmail(final String email) {
         // el correo debe ser estructuralmente valido
-        if (!EMAIL_PATTERN.matcher(email).matches()) {
+        if (!esEmailValido(email)) {
             throw new IllegalArgumentException("Correo Electronico no valido: " + email);
         }
     }
+
+    /**
+     * Revisa un correo en una sola pasada, sin crear objetos ni retroceder. Acepta exactamente lo mismo que la
+     * expresion regular
+     * {@code ^(?=.{1,64}@)[A-Za-z0-9_-]+(\.[A-Za-z0-9_-]+)*@[^-][A-Za-z0-9-]+(\.[A-Za-z0-9-]+)*(\.[A-Za-z]{2,})$}:
+     * <ul>
+     *     <li>parte local de 1 a 64 caracteres: etiquetas de [A-Za-z0-9_-] separadas por un punto;</li>
+     *     <li>una @ y luego un caracter cualquiera que no sea '-' (incluso un punto o una @);</li>
+     *     <li>al menos dos etiquetas de [A-Za-z0-9-] separadas por un punto, la ultima de 2 o mas letras.</li>
+     * </ul>
+     * La expresion regular (la validacion original) solo se usa como referencia en las pruebas (UtilsTest).
+     *
+     * @param email a revisar.
+     * @return true si el correo es valido.
+     */
+    static boolean esEmailValido(final String email) {
+        int largo = email.length();
+
+        // parte local, hasta la primera @.
+        int i = 0;
+        boolean etiquetaVacia = true;
+        for (; i < largo; i++) {
+            char c = email.charAt(i);
+            if (c == '@') {
+                break;
+            }
+            if (c == '.') {
+                if (etiquetaVacia) {
+                    return false;
+                }
+                etiquetaVacia = true;
+            } else if (esLetra(c) || esDigito(c) || c == '_' || c == '-') {
+                etiquetaVacia = false;
+            } else {
+                return false;
+            }
+        }
+        if (i == largo || etiquetaVacia || i > LARGO_MAXIMO_LOCAL) {
+            return false;
+        }
+
+        // el primer caracter del dominio (un code point, como en la expresion regular).
+        i++;
+        if (i == largo) {
+            return false;
+        }
+        int primero = email.codePointAt(i);
+        if (primero == '-') {
+            return false;
+        }
+        i += Character.charCount(primero);
+
+        // etiquetas del dominio.
+        int puntos = 0;
+        int largoEtiqueta = 0;
+        boolean soloLetras = true;
+        for (; i < largo; i++) {
+            char c = email.charAt(i);
+            if (c == '.') {
+                if (largoEtiqueta == 0) {
+                    return false;
+                }
+                puntos++;
+                largoEtiqueta = 0;
+                soloLetras = true;
+            } else if (esLetra(c) || esDigito(c) || c == '-') {
+                largoEtiqueta++;
+                soloLetras &= esLetra(c);
+            } else {
+                return false;
+            }
+        }
+        return puntos > 0 && largoEtiqueta >= 2 && soloLetras;
+    }
+
+    /**
+     * @param c caracter a revisar.
+     * @return true si es una letra ASCII.
+     */
+    private static boolean esLetra(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * @param c caracter a revisar.
+     * @return true si es un digito ASCII.
+     */
+    private static boolean esDigito(final char c) {
+        return c >= '0' && c <= '9';
+    }
 }
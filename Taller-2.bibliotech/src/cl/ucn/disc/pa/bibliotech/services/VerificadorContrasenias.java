@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hash y verificacion de contrasenias con PBKDF2 (HMAC-SHA256), con sal aleatoria y costo (iteraciones) configurable.
+ * Cada hash guarda su costo, por lo que cambiar el costo solo afecta a los hash nuevos. Las comparaciones son de
+ * tiempo constante.
+ * <p>
+ * Derivar la clave es deliberadamente caro: las verificaciones exitosas recientes se recuerdan por un tiempo acotado
+ * (en un cache de capacidad acotada), para que los inicios de sesion repetidos de un socio no repitan la derivacion.
+ * El cache no guarda la contrasenia sino un HMAC con una clave aleatoria del proceso, y deja de servir en cuanto el
+ * hash almacenado del socio cambia. Las consultas al cache no toman candados: solo un fallo (que ya pago una
+ * derivacion) lo recorre para descartar verificaciones cuando se llena.
+ *
+ * @author Programacion Avanzada.
+ */
+public final class VerificadorContrasenias {
+
+    /**
+     * Metricas del verificador.
+     *
+     * @param derivaciones    cantidad de claves derivadas (hash y verificaciones sin cache).
+     * @param nanosDerivacion tiempo total de las derivaciones, en nanosegundos.
+     * @param aciertos        verificaciones resueltas con el cache.
+     * @param fallos          verificaciones que no estaban en el cache.
+     */
+    public record Metricas(long derivaciones, long nanosDerivacion, long aciertos, long fallos) {
+
+        /**
+         * @return el tiempo promedio de una derivacion, en milisegundos (0 si no hay derivaciones).
+         */
+        public double promedioMsDerivacion() {
+            return this.derivaciones == 0 ? 0.0 : this.nanosDerivacion / 1e6 / this.derivaciones;
+        }
+
+        /**
+         * @return la fraccion de verificaciones resueltas con el cache (0 si no hay verificaciones).
+         */
+        public double tasaAciertos() {
+            long total = this.aciertos + this.fallos;
+            return total == 0 ? 0.0 : (double) this.aciertos / total;
+        }
+    }
+
+    /**
+     * Una verificacion exitosa recordada.
+     *
+     * @param almacenada el hash del socio al verificar.
+     * @param huella     HMAC de la contrasenia verificada.
+     * @param vence      instante (System.nanoTime) en que deja de servir.
+     */
+    private record Verificacion(String almacenada, byte[] huella, long vence) {
+    }
+
+    /**
+     * Prefijo de los hash (los valores sin el prefijo son contrasenias en texto plano de archivos antiguos).
+     */
+    private static final String PREFIJO = "pbkdf2-sha256$";
+
+    /**
+     * Algoritmo de derivacion.
+     */
+    private static final String ALGORITMO = "PBKDF2WithHmacSHA256";
+
+    /**
+     * Algoritmo de las huellas del cache.
+     */
+    private static final String ALGORITMO_HUELLA = "HmacSHA256";
+
+    /**
+     * Largo de la sal, en bytes.
+     */
+    private static final int LARGO_SAL = 16;
+
+    /**
+     * Largo de la clave derivada, en bits.
+     */
+    private static final int LARGO_CLAVE = 256;
+
+    /**
+     * Generador de sales.
+     */
+    private static final SecureRandom ALEATORIO = new SecureRandom();
+
+    /**
+     * Iteraciones de los hash nuevos.
+     */
+    private final int iteraciones;
+
+    /**
+     * Duracion de una verificacion en el cache, en nanosegundos.
+     */
+    private final long vigencia;
+
+    /**
+     * Clave de las huellas del cache (aleatoria, solo existe en este proceso).
+     */
+    private final SecretKeySpec claveHuella;
+
+    /**
+     * Capacidad maxima del cache de verificaciones.
+     */
+    private final int capacidad;
+
+    /**
+     * Verificaciones exitosas por numero de socio.
+     */
+    private final Map<Integer, Verificacion> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Cantidad de claves derivadas.
+     */
+    private final LongAdder derivaciones = new LongAdder();
+
+    /**
+     * Tiempo total de las derivaciones, en nanosegundos.
+     */
+    private final LongAdder nanosDerivacion = new LongAdder();
+
+    /**
+     * Verificaciones resueltas con el cache.
+     */
+    private final LongAdder aciertos = new LongAdder();
+
+    /**
+     * Verificaciones que no estaban en el cache.
+     */
+    private final LongAdder fallos = new LongAdder();
+
+    /**
+     * The Constructor.
+     *
+     * @param iteraciones de PBKDF2 para los hash nuevos.
+     * @param capacidad   maxima del cache de verificaciones (0 = sin cache).
+     * @param vigencia    de una verificacion en el cache.
+     */
+    public VerificadorContrasenias(final int iteraciones, final int capacidad, final Duration vigencia) {
+        if (iteraciones <= 0) {
+            throw new IllegalArgumentException("Las iteraciones deben ser positivas!");
+        }
+        if (capacidad < 0) {
+            throw new IllegalArgumentException("La capacidad del cache no puede ser negativa!");
+        }
+        this.iteraciones = iteraciones;
+        this.capacidad = capacidad;
+        this.vigencia = vigencia.toNanos();
+        byte[] clave = new byte[32];
+        ALEATORIO.nextBytes(clave);
+        this.claveHuella = new SecretKeySpec(clave, ALGORITMO_HUELLA);
+    }
+
+    /**
+     * @param almacenada contrasenia almacenada de un socio.
+     * @return true si es un hash (false si es texto plano de un archivo antiguo).
+     */
+    public static boolean esHash(final String almacenada) {
+        return almacenada != null && almacenada.startsWith(PREFIJO);
+    }
+
+    /**
+     * Genera el hash de una contrasenia, con una sal nueva: pbkdf2-sha256$iteraciones$sal$clave (en base64).
+     *
+     * @param contrasenia a proteger.
+     * @return el hash a almacenar.
+     */
+    public String generar(final String contrasenia) {
+        byte[] sal = new byte[LARGO_SAL];
+        ALEATORIO.nextBytes(sal);
+        return this.generar(contrasenia, sal);
+    }
+
+    /**
+     * Genera el hash de una contrasenia con una sal dada (para generar datos reproducibles).
+     *
+     * @param contrasenia a proteger.
+     * @param sal         del hash.
+     * @return el hash a almacenar.
+     */
+    String generar(final String contrasenia, final byte[] sal) {
+        byte[] clave = this.derivar(contrasenia, sal, this.iteraciones);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIJO + this.iteraciones + "$" + base64.encodeToString(sal) + "$" + base64.encodeToString(clave);
+    }
+
+    /**
+     * Verifica una contrasenia contra la almacenada de un socio, usando el cache si la verifico recientemente.
+     *
+     * @param numeroDeSocio del socio.
+     * @param contrasenia   ingresada.
+     * @param almacenada    hash (o texto plano antiguo) del socio.
+     * @return true si la contrasenia corresponde.
+     */
+    public boolean verificar(final int numeroDeSocio, final String contrasenia, final String almacenada) {
+        if (contrasenia == null || almacenada == null) {
+            return false;
+        }
+
+        byte[] huella = this.huella(contrasenia);
+        long ahora = System.nanoTime();
+        Verificacion recordada = this.cache.get(numeroDeSocio);
+        if (recordada != null && recordada.almacenada().equals(almacenada) && ahora - recordada.vence() < 0
+                && MessageDigest.isEqual(recordada.huella(), huella)) {
+            this.aciertos.increment();
+            return true;
+        }
+        this.fallos.increment();
+
+        if (!this.coincide(contrasenia, almacenada)) {
+            return false;
+        }
+        this.recordar(numeroDeSocio, new Verificacion(almacenada, huella, ahora + this.vigencia));
+        return true;
+    }
+
+    /**
+     * Olvida la verificacion recordada de un socio (por ejemplo, al cambiar su contrasenia).
+     *
+     * @param numeroDeSocio del socio.
+     */
+    public void olvidar(final int numeroDeSocio) {
+        this.cache.remove(numeroDeSocio);
+    }
+
+    /**
+     * @return las metricas acumuladas.
+     */
+    public Metricas getMetricas() {
+        return new Metricas(this.derivaciones.sum(), this.nanosDerivacion.sum(), this.aciertos.sum(),
+                this.fallos.sum());
+    }
+
+    /**
+     * Recuerda una verificacion exitosa. Si el cache se pasa de su capacidad, descarta las verificaciones vencidas y,
+     * si no alcanza, las que vencen primero. Los hilos que recuerdan al mismo tiempo pueden pasarse de la capacidad
+     * por a lo mas una verificacion cada uno, hasta que alguno descarta.
+     *
+     * @param numeroDeSocio del socio.
+     * @param verificacion  a recordar.
+     */
+    private void recordar(final int numeroDeSocio, final Verificacion verificacion) {
+        if (this.capacidad == 0) {
+            return;
+        }
+        this.cache.put(numeroDeSocio, verificacion);
+        if (this.cache.size() <= this.capacidad) {
+            return;
+        }
+
+        // recorrer el cache cuesta mucho menos que la derivacion que se acaba de pagar.
+        long ahora = System.nanoTime();
+        this.cache.values().removeIf(recordada -> ahora - recordada.vence() >= 0);
+        while (this.cache.size() > this.capacidad) {
+            Map.Entry<Integer, Verificacion> primera = null;
+            for (Map.Entry<Integer, Verificacion> entrada : this.cache.entrySet()) {
+                if (primera == null || entrada.getValue().vence() - primera.getValue().vence() < 0) {
+                    primera = entrada;
+                }
+            }
+            if (primera == null) {
+                return;
+            }
+            this.cache.remove(primera.getKey(), primera.getValue());
+        }
+    }
+
+    /**
+     * Compara (en tiempo constante) una contrasenia con la almacenada, derivando la clave con la sal y las
+     * iteraciones del hash.
+     *
+     * @param contrasenia ingresada.
+     * @param almacenada  hash (o texto plano antiguo).
+     * @return true si corresponden.
+     */
+    private boolean coincide(final String contrasenia, final String almacenada) {
+        if (!esHash(almacenada)) {
+            return MessageDigest.isEqual(contrasenia.getBytes(StandardCharsets.UTF_8),
+                    almacenada.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] partes = almacenada.substring(PREFIJO.length()).split("\\$", -1);
+        if (partes.length != 3) {
+            return false;
+        }
+        try {
+            int iteraciones = Integer.parseInt(partes[0]);
+            byte[] sal = Base64.getDecoder().decode(partes[1]);
+            byte[] esperada = Base64.getDecoder().decode(partes[2]);
+            if (iteraciones <= 0 || esperada.length * 8 != LARGO_CLAVE) {
+                return false;
+            }
+            return MessageDigest.isEqual(this.derivar(contrasenia, sal, iteraciones), esperada);
+        } catch (IllegalArgumentException ex) {
+            // hash mal formado.
+            return false;
+        }
+    }
+
+    /**
+     * @param contrasenia a derivar.
+     * @param sal         del hash.
+     * @param iteraciones de PBKDF2.
+     * @return la clave derivada.
+     */
+    private byte[] derivar(final String contrasenia, final byte[] sal, final int iteraciones) {
+        long inicio = System.nanoTime();
+        char[] caracteres = contrasenia.toCharArray();
+        PBEKeySpec especificacion = new PBEKeySpec(caracteres, sal, iteraciones, LARGO_CLAVE);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITMO).generateSecret(especificacion).getEncoded();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("No se pudo derivar la clave con " + ALGORITMO, ex);
+        } finally {
+            especificacion.clearPassword();
+            Arrays.fill(caracteres, '\0');
+            this.derivaciones.increment();
+            this.nanosDerivacion.add(System.nanoTime() - inicio);
+        }
+    }
+
+    /**
+     * @param contrasenia ingresada.
+     * @return el HMAC de la contrasenia con la clave del proceso.
+     */
+    private byte[] huella(final String contrasenia) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO_HUELLA);
+            mac.init(this.claveHuella);
+            return mac.doFinal(contrasenia.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("No se pudo calcular la huella con " + ALGORITMO_HUELLA, ex);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas del acumulado de calificaciones y de las cadenas compartidas de {@link Libro}.
+ *
+ * @author Programacion Avanzada.
+ */
+final class LibroTest {
+
+    /**
+     * @return un libro sin calificaciones.
+     */
+    private static Libro libro() {
+        return new Libro("1491910772", "Effective Java", "Joshua Bloch", "Programming Languages", 0.0);
+    }
+
+    /**
+     * El promedio es exacto: la suma de las calificaciones dividida por su cantidad.
+     */
+    @Test
+    void promedioExacto() {
+        Libro libro = libro();
+        libro.setCalificacion(5.0);
+        libro.setCalificacion(1.0);
+        libro.setCalificacion(3.5);
+        assertEquals(3, libro.getVotos());
+        assertEquals(950, libro.getSumaCentesimas());
+        assertEquals(9.5 / 3, libro.getCalificacion());
+    }
+
+    /**
+     * Una calificacion con mas de 2 decimales se rechaza sin cambiar el acumulado.
+     */
+    @Test
+    void rechazaMasDeDosDecimales() {
+        Libro libro = libro();
+        libro.setCalificacion(3.14);
+        assertThrows(IllegalArgumentException.class, () -> libro.setCalificacion(3.125));
+        assertThrows(IllegalArgumentException.class, () -> libro.setCalificacion(Double.NaN));
+        assertEquals(1, libro.getVotos());
+        assertEquals(314, libro.getSumaCentesimas());
+    }
+
+    /**
+     * Al cargar un promedio antiguo con mas de 2 decimales (un solo voto), se redondea a centesimas.
+     */
+    @Test
+    void redondeaLosPromediosAntiguos() {
+        Libro libro = new Libro("1491910772", "Effective Java", "Joshua Bloch", "Programming Languages", 3.125);
+        assertEquals(1, libro.getVotos());
+        assertEquals(313, libro.getSumaCentesimas());
+    }
+
+    /**
+     * Al llegar a {@link Libro#MAXIMO_VOTOS} calificaciones (26 bits) el libro no acepta mas, sin desbordar la
+     * cantidad hacia la suma.
+     */
+    @Test
+    void desbordeDeVotos() {
+        Libro libro = libro();
+        libro.establecerCalificacion(500 * (Libro.MAXIMO_VOTOS - 1), Libro.MAXIMO_VOTOS - 1);
+        libro.setCalificacion(5.0);
+        assertEquals(Libro.MAXIMO_VOTOS, libro.getVotos());
+        assertEquals(500 * Libro.MAXIMO_VOTOS, libro.getSumaCentesimas());
+        assertEquals(5.0, libro.getCalificacion());
+
+        assertThrows(IllegalStateException.class, () -> libro.setCalificacion(1.0));
+        assertEquals(Libro.MAXIMO_VOTOS, libro.getVotos());
+        assertEquals(500 * Libro.MAXIMO_VOTOS, libro.getSumaCentesimas());
+        assertThrows(IllegalArgumentException.class,
+                () -> libro.establecerCalificacion(0, Libro.MAXIMO_VOTOS + 1));
+    }
+
+    /**
+     * Una calificacion que haria pasar la suma de {@link Libro#MAXIMA_SUMA_CENTESIMAS} se rechaza.
+     */
+    @Test
+    void desbordeDeLaSuma() {
+        Libro libro = libro();
+        libro.establecerCalificacion(Libro.MAXIMA_SUMA_CENTESIMAS - 499, 1);
+        assertThrows(IllegalStateException.class, () -> libro.setCalificacion(5.0));
+        libro.setCalificacion(4.99);
+        assertEquals(Libro.MAXIMA_SUMA_CENTESIMAS, libro.getSumaCentesimas());
+        assertEquals(2, libro.getVotos());
+    }
+
+    /**
+     * El autor y la categoria pasan a ser las instancias del pool; un pool que cambia los valores se rechaza.
+     */
+    @Test
+    void compartirCadenas() {
+        Map<String, String> pool = new HashMap<>();
+        Libro primero = libro();
+        Libro segundo = new Libro("1491910773", "Java Concurrency", new String("Joshua Bloch"),
+                new String("Programming Languages"), 0.0);
+        primero.compartirCadenas(cadena -> pool.computeIfAbsent(cadena, c -> c));
+        segundo.compartirCadenas(cadena -> pool.computeIfAbsent(cadena, c -> c));
+        assertSame(primero.getAutor(), segundo.getAutor());
+        assertSame(primero.getCategoria(), segundo.getCategoria());
+
+        assertThrows(IllegalArgumentException.class, () -> segundo.compartirCadenas(String::toUpperCase));
+        assertEquals("Joshua Bloch", segundo.getAutor());
+    }
+
+    /**
+     * Varios hilos califican el mismo libro a la vez sin perder calificaciones.
+     *
+     * @throws Exception en caso de algun error de los hilos.
+     */
+    @Test
+    void calificacionesConcurrentes() throws Exception {
+        Libro libro = libro();
+        int hilos = 8;
+        int calificaciones = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        try {
+            Future<?>[] tareas = new Future<?>[hilos];
+            for (int h = 0; h < hilos; h++) {
+                double calificacion = 1 + h % 5;
+                tareas[h] = executor.submit(() -> {
+                    for (int i = 0; i < calificaciones; i++) {
+                        libro.setCalificacion(calificacion);
+                    }
+                });
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        // calificaciones 1, 2, 3, 4, 5, 1, 2, 3: suma 21 por ronda.
+        assertEquals((long) hilos * calificaciones, libro.getVotos());
+        assertEquals(2100L * calificaciones, libro.getSumaCentesimas());
+        assertEquals(21.0 / hilos, libro.getCalificacion());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Pruebas de {@link Bitacora}.
+ *
+ * @author Programacion Avanzada.
+ */
+final class BitacoraTest {
+
+    /**
+     * Varios hilos registran operaciones a la vez (con group commit, por lotes y sin fsync): ninguna se pierde ni
+     * queda mezclada con otra.
+     *
+     * @param operacionesPorSincronizacion de la bitacora.
+     * @param directorio                   temporal.
+     * @throws Exception en caso de algun error de los hilos.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 16})
+    void registrosConcurrentes(final int operacionesPorSincronizacion, @TempDir final Path directorio)
+            throws Exception {
+        Path archivo = directorio.resolve("bitacora.log");
+        int hilos = 8;
+        int operaciones = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        try (Bitacora bitacora = new Bitacora(archivo, operacionesPorSincronizacion)) {
+            Future<?>[] tareas = new Future<?>[hilos];
+            for (int h = 0; h < hilos; h++) {
+                String socio = String.valueOf(h);
+                tareas[h] = executor.submit(() -> {
+                    for (int i = 0; i < operaciones; i++) {
+                        bitacora.registrar(Bitacora.Operacion.PRESTAMO, socio, String.valueOf(i));
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> tarea : tareas) {
+                tarea.get();
+            }
+            assertEquals(hilos * operaciones, bitacora.getOperaciones());
+        } finally {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+
+        Set<String> leidas = new HashSet<>();
+        int reproducidas = Bitacora.reproducir(archivo, (operacion, campos) -> {
+            assertEquals(Bitacora.Operacion.PRESTAMO, operacion);
+            assertTrue(leidas.add(campos[0] + "/" + campos[1]));
+        });
+        assertEquals(hilos * operaciones, reproducidas);
+    }
+
+    /**
+     * Sincronizar sin operaciones pendientes no falla, y cerrar deja la bitacora en el disco.
+     *
+     * @param operacionesPorSincronizacion de la bitacora.
+     * @param directorio                   temporal.
+     * @throws IOException en caso de algun error.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1})
+    void sincronizarYCerrar(final int operacionesPorSincronizacion, @TempDir final Path directorio)
+            throws IOException {
+        Path archivo = directorio.resolve("bitacora.log");
+        try (Bitacora bitacora = new Bitacora(archivo, operacionesPorSincronizacion)) {
+            bitacora.sincronizar();
+            bitacora.registrar(Bitacora.Operacion.CORREO, "1", "john.doe@ucn.cl");
+            bitacora.sincronizar();
+        }
+        assertEquals(1, Bitacora.reproducir(archivo, (operacion, campos) ->
+                assertEquals("john.doe@ucn.cl", campos[1])));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2023. Programacion Avanzada, DISC, UCN.
+ */
+
+package cl.ucn.disc.pa.bibliotech.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Pruebas de {@link Utils}: el validador de correos se compara con la expresion regular original
+ * ({@link #EMAIL_PATTERN}) en los casos borde y en correos aleatorios.
+ *
+ * @author Programacion Avanzada.
+ */
+final class UtilsTest {
+
+    /**
+     * The Email validator: la expresion regular original, referencia de {@link Utils#esEmailValido(String)} (tambien
+     * en EmailBenchmark).
+     */
+    static final Pattern EMAIL_PATTERN = Pattern.compile("^(?=.{1,64}@)[A-Za-z0-9_-]+(\\.[A-Za-z0-9_-]+)*@[^-]"
+            + "[A-Za-z0-9-]+(\\.[A-Za-z0-9-]+)*(\\.[A-Za-z]{2,})$");
+
+    /**
+     * Cantidad de correos aleatorios.
+     */
+    private static final int ALEATORIOS = 200_000;
+
+    /**
+     * Caracteres de los correos aleatorios (con los separadores repetidos para que aparezcan seguido).
+     */
+    private static final String[] PIEZAS = {
+        "a", "Z", "0", "9", "_", "-", ".", ".", "@", "@", "cl", "com", " ", "\n", "ñ", "😀", "\uD83D"
+    };
+
+    /**
+     * @return los casos borde: cada uno ejercita una regla de la expresion regular.
+     */
+    static String[] casosBorde() {
+        return new String[]{
+            // validos tipicos.
+            "john.doe@ucn.cl", "a@b.co", "a_b-c.d@alumnos.ucn.cl", "x@1.com", "x@a-b.c-d.org",
+            // parte local vacia, etiquetas vacias y largo 64/65.
+            "@ucn.cl", ".a@ucn.cl", "a.@ucn.cl", "a..b@ucn.cl", "a".repeat(64) + "@ucn.cl", "a".repeat(65) + "@ucn.cl",
+            // varias @ (el primer caracter del dominio puede ser una @, pero no las siguientes).
+            "a@@ucn.cl", "a@@@ucn.cl", "a@b@ucn.cl", "a@ucn@cl.cl",
+            // guion al comienzo del dominio, y otros primeros caracteres del dominio.
+            "a@-ucn.cl", "a@-.cl", "a@u-cn.cl", "a@.ucn.cl", "a@..cl", "a@_ucn.cl", "a@ ucn.cl", "a@\nucn.cl",
+            // dominio: etiquetas vacias o de un caracter.
+            "a@ucn..cl", "a@ucn.cl.", "a@u.cl", "a@uc", "a@u.c.cl",
+            // TLD de una letra, con digitos o guion.
+            "a@ucn.c", "a@ucn.c1", "a@ucn.1c", "a@ucn.c-l", "a@ucn.CL", "a@ucn.cl1",
+            // puntos de codigo fuera del BMP (pares sustitutos) y caracteres no ASCII.
+            "a@😀ucn.cl", "a@😀.cl", "😀@ucn.cl", "a@ucn.😀",
+            "a@\uD83Ducn.cl", "a@\uDE00ucn.cl", "a@ñucn.cl", "ñ@ucn.cl", "a@ucn.cñ",
+            // vacios y espacios.
+            "", "@", "a@", "a@.", " a@ucn.cl", "a@ucn.cl ", "a@ucn.cl\n"
+        };
+    }
+
+    /**
+     * El validador acepta y rechaza lo mismo que la expresion regular en los casos borde.
+     *
+     * @param correo a revisar.
+     */
+    @ParameterizedTest
+    @MethodSource("casosBorde")
+    void esEmailValidoCoincideEnLosCasosBorde(final String correo) {
+        assertEquals(EMAIL_PATTERN.matcher(correo).matches(), Utils.esEmailValido(correo), correo);
+    }
+
+    /**
+     * El validador acepta y rechaza lo mismo que la expresion regular en correos aleatorios con la forma
+     * local@dominio, con piezas cerca de cada regla.
+     */
+    @Test
+    void esEmailValidoCoincideEnCorreosAleatorios() {
+        SplittableRandom random = new SplittableRandom(22);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < ALEATORIOS; i++) {
+            sb.setLength(0);
+            int piezas = 1 + random.nextInt(12);
+            for (int p = 0; p < piezas; p++) {
+                sb.append(PIEZAS[random.nextInt(PIEZAS.length)]);
+            }
+            if (random.nextBoolean()) {
+                sb.append('@').append(random.nextInt(4) == 0 ? "-" : "").append("ucn");
+                sb.append(random.nextBoolean() ? ".cl" : "." + PIEZAS[random.nextInt(PIEZAS.length)]);
+            }
+            if (random.nextInt(50) == 0) {
+                sb.insert(0, "a".repeat(60 + random.nextInt(8)));
+            }
+            String correo = sb.toString();
+            assertEquals(EMAIL_PATTERN.matcher(correo).matches(), Utils.esEmailValido(correo), correo);
+        }
+    }
+
+    /**
+     * El validador recorre el correo una sola vez: un correo enorme se revisa en tiempo lineal.
+     */
+    @Test
+    void esEmailValidoEsLineal() {
+        String correo = "a.".repeat(31) + "a@" + "u-".repeat(1_000_000) + ".c1";
+        assertTimeoutPreemptively(Duration.ofSeconds(1), () -> assertFalse(Utils.esEmailValido(correo)));
+    }
+
+    /**
+     * validarEmail lanza IllegalArgumentException solo con los correos no validos.
+     */
+    @Test
+    void validarEmailRechazaLosCorreosNoValidos() {
+        assertDoesNotThrow(() -> Utils.validarEmail("john.doe@ucn.cl"));
+        assertThrows(IllegalArgumentException.class, () -> Utils.validarEmail("john.doe@ucn"));
+        assertThrows(IllegalArgumentException.class, () -> Utils.validarEmail("john..doe@ucn.cl"));
+    }
+}